@@ -2,6 +2,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -21,6 +22,33 @@ public class MaterialsJsonParser {
 
     private static final String MATERIALS_FILE_PATH = "materials.json";
 
+    // parsed catalog, shared by all buildings once it has been read
+    private static volatile List<Material> catalog;
+
+    /**
+     * Returns the materials catalog, parsing the JSON file only on the first call.
+     * Every Building used to re-read materials.json in its constructor; long-running callers such as the
+     * SimulationService keep this catalog hot instead.
+     *
+     * @return an unmodifiable list of Material instances parsed from the JSON file.
+     *
+     * Precondition: The JSON file at the specified path exists and is accessible on the first call.
+     * Postcondition: The same unmodifiable list is returned on every call.
+     */
+    public static List<Material> materials() {
+        List<Material> materials = catalog;
+        if (materials == null) {
+            synchronized (MaterialsJsonParser.class) {
+                materials = catalog;
+                if (materials == null) {
+                    materials = Collections.unmodifiableList(parseMaterials());
+                    catalog = materials;
+                }
+            }
+        }
+        return materials;
+    }
+
     /**
      * Parses the materials data from the JSON file and returns a list of Material instances.
      *
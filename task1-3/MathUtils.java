@@ -30,5 +30,22 @@ public interface MathUtils {
         if(Double.isNaN(mean) || Double.isNaN(stdDev)) { throw new IllegalArgumentException("The mean or standard deviation is not a number."); }
         return (int) (mean + (new Random()).nextGaussian() * stdDev);
     }
+
+    /**
+     * Returns whether all values are finite, i.e. neither NaN nor infinite.
+     *
+     * @param values the values to check
+     * @return true if every value is finite, false otherwise
+     *
+     * Precondition: values is not null.
+     */
+    static boolean isFinite(double[] values) {
+        for (double value : values) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
 
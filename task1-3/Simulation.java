@@ -459,23 +459,37 @@ public class Simulation {
      *
      * STYLE: Procedural Programming
      */
-    private double getSustainability() {
+    double getSustainability() {
+        double keyFact2avg = average(keyFact2());
+        double keyFact5avg = average(keyFact5());
+        return 0.25d * 1/keyFact1() + 0.15d * 1/keyFact2avg + 0.30d * 1/keyFact3() + 0.15d * 1/keyFact4() + 0.15d * 1/keyFact5avg;
+    }
 
-        double keyFact2avg = 0.0d;
-        List<Double> keyFact2List = keyFact2();
-        for(double value : keyFact2List) {
-            keyFact2avg += value;
-        }
-        keyFact2avg /= keyFact2List.size();
+    /**
+     * Returns the sustainability and the key facts of the simulation as numbers, in the order
+     * sustainability, key fact 1, average of key fact 2, key fact 3, key fact 4, average of key fact 5.
+     * Used by SurrogateModel to learn from finished simulations without parsing the result string.
+     *
+     * @return the sustainability and the key facts of the simulation
+     *
+     * Precondition: simulate() has been called.
+     */
+    double[] getKeyFactSummary() {
+        return new double[] {getSustainability(), keyFact1(), average(keyFact2()), keyFact3(), keyFact4(), average(keyFact5())};
+    }
 
-        double keyFact5avg = 0.0d;
-        List<Double> keyFact5List = keyFact5();
-        for(double value : keyFact5List) {
-            keyFact5avg += value;
+    /**
+     * Returns the average of the values per decade of a key fact, used by getSustainability and getKeyFactSummary.
+     *
+     * @param values the values per decade
+     * @return the average of the values
+     */
+    private static double average(List<Double> values) {
+        double sum = 0.0d;
+        for(double value : values) {
+            sum += value;
         }
-        keyFact5avg /= keyFact2List.size();
-
-        return 0.25d * 1/keyFact1() + 0.15d * 1/keyFact2avg + 0.30d * 1/keyFact3() + 0.15d * 1/keyFact4() + 0.15d * 1/keyFact5avg;
+        return sum / values.size();
     }
 
     public static void main(String[] args) {
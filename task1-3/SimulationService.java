@@ -0,0 +1,368 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * STYLE: Concurrent Programming (a bit Object-Oriented Programming)
+ *
+ * A long-lived local service that answers simulation jobs without starting a new JVM for every request.
+ * A job consists of a scenario, a ground type, a seed and a number of runs. The service keeps the JVM warm, keeps the
+ * materials catalog loaded (see MaterialsJsonParser.materials()), distributes the runs of all concurrent jobs onto one
+ * shared worker pool and caches finished results in a least-recently-used cache keyed by (scenario, ground, seed, runs).
+ * Identical jobs that arrive while the first one is still running wait for the same result instead of simulating twice.
+ *
+ * The simulation itself draws from Math.random(), so the seed does not reproduce a random stream. It identifies an
+ * independent Monte Carlo sample: the same seed returns the cached sample, a new seed forces a fresh one.
+ *
+ * Requests are served on http://127.0.0.1:port/simulate?scenario=...&ground=...&seed=...&runs=...
+ * where scenario is the name of one of the scenarios in Simulation (e.g. "Minimal Scenario" or just "minimal")
+ * and ground is one of Ground.GroundType.
+ */
+public class SimulationService {
+
+    private static final int buildingsPerSimulation = 5;
+    private static final int maxRunsPerJob = 10000;
+
+    private final ExecutorService workers;
+    private final Map<Job, String> cache;
+    private final ConcurrentHashMap<Job, CompletableFuture<String>> running = new ConcurrentHashMap<>();
+    private final AtomicInteger simulatedJobs = new AtomicInteger();
+    private HttpServer server;
+
+    /**
+     * A single request to the service. Two jobs are equal if all four parameters are equal.
+     */
+    public static final class Job {
+
+        private final Scenario scenario;
+        private final Ground.GroundType ground;
+        private final long seed;
+        private final int runs;
+
+        /**
+         * Constructs a job.
+         *
+         * @param scenario the scenario whose buildings are simulated
+         * @param ground the ground type the buildings stand on
+         * @param seed identifies the Monte Carlo sample
+         * @param runs how many simulations are averaged
+         *
+         * Precondition: scenario and ground are not null, 0 < runs <= 10000.
+         */
+        public Job(Scenario scenario, Ground.GroundType ground, long seed, int runs) {
+            if (scenario == null || ground == null) { throw new IllegalArgumentException("Scenario and ground must not be null."); }
+            if (runs <= 0 || runs > maxRunsPerJob) { throw new IllegalArgumentException("The number of runs must be between 1 and " + maxRunsPerJob + "."); }
+            this.scenario = scenario;
+            this.ground = ground;
+            this.seed = seed;
+            this.runs = runs;
+        }
+
+        public Scenario getScenario() { return scenario; }
+        public Ground.GroundType getGround() { return ground; }
+        public long getSeed() { return seed; }
+        public int getRuns() { return runs; }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            Job job = (Job) obj;
+            return scenario.getName().equals(job.scenario.getName()) && ground == job.ground
+                    && seed == job.seed && runs == job.runs;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(scenario.getName(), ground, seed, runs);
+        }
+
+        @Override
+        public String toString() {
+            return scenario.getName() + ", " + ground + ", seed " + seed + ", " + runs + " runs";
+        }
+    }
+
+    /**
+     * Constructs the service with a shared worker pool and an LRU result cache.
+     *
+     * @param workerThreads the number of threads that run simulations
+     * @param cacheSize the maximum number of cached results
+     *
+     * Precondition: workerThreads > 0, cacheSize >= 0.
+     * Postcondition: The materials catalog is loaded and the worker pool is ready; no socket is opened yet.
+     */
+    public SimulationService(int workerThreads, int cacheSize) {
+        if (workerThreads <= 0 || cacheSize < 0) { throw new IllegalArgumentException("Illegal pool or cache size."); }
+        this.workers = Executors.newFixedThreadPool(workerThreads);
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Job, String> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        MaterialsJsonParser.materials();
+    }
+
+    /**
+     * Returns the result of a job, either from the cache, from an identical job that is already running,
+     * or by distributing its runs onto the worker pool.
+     *
+     * @param job the job to answer
+     * @return a future that completes with the textual result of the job
+     *
+     * Precondition: job is not null.
+     * Postcondition: Once the future completes successfully, the result is cached.
+     */
+    public CompletableFuture<String> submit(Job job) {
+        if (job == null) { throw new IllegalArgumentException("The job is null."); }
+        String cached = cache.get(job);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> existing = running.putIfAbsent(job, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        // the job may have finished between the cache lookup and putIfAbsent
+        cached = cache.get(job);
+        if (cached != null) {
+            running.remove(job, created);
+            created.complete(cached);
+            return created;
+        }
+
+        simulatedJobs.incrementAndGet();
+        List<CompletableFuture<Double>> runs = new ArrayList<>(job.getRuns());
+        List<String> results = Collections.synchronizedList(new ArrayList<>(job.getRuns()));
+        for (int i = 0; i < job.getRuns(); i++) {
+            runs.add(CompletableFuture.supplyAsync(() -> runOnce(job, results), workers));
+        }
+
+        CompletableFuture.allOf(runs.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, failure) -> {
+            try {
+                if (failure != null) {
+                    created.completeExceptionally(failure);
+                    return;
+                }
+                double[] sustainabilities = new double[runs.size()];
+                for (int i = 0; i < sustainabilities.length; i++) {
+                    sustainabilities[i] = runs.get(i).join();
+                }
+                String result = report(job, sustainabilities, results);
+                cache.put(job, result);
+                created.complete(result);
+            } finally {
+                running.remove(job, created);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Returns how many jobs were simulated, i.e. answered neither from the cache nor by an identical running job.
+     *
+     * @return the number of simulated jobs
+     */
+    public int getSimulatedJobs() { return simulatedJobs.get(); }
+
+    /**
+     * Checks whether the result of a job is cached, without counting as a use of the cache entry.
+     *
+     * @param job the job
+     * @return true if the result of the job is cached
+     */
+    public boolean isCached(Job job) { return cache.containsKey(job); }
+
+    /**
+     * Runs one simulation of the job on the calling worker thread.
+     *
+     * @param job the job the run belongs to
+     * @param results the list collecting the result strings of the job
+     * @return the sustainability of the run
+     */
+    private double runOnce(Job job, List<String> results) {
+        List<Building> buildings = new ArrayList<>(buildingsPerSimulation);
+        for (int i = 0; i < buildingsPerSimulation; i++) {
+            buildings.add(new Building(job.getScenario()));
+        }
+        Simulation simulation = new Simulation(buildings, new Ground(job.getGround()));
+        String result = simulation.simulate();
+        double sustainability = simulation.getSustainability();
+        results.add(result);
+        return sustainability;
+    }
+
+    /**
+     * Summarizes the runs of a job: the average sustainability and the run closest to it.
+     *
+     * STYLE: Procedural Programming
+     *
+     * @param job the finished job
+     * @param sustainabilities the sustainability of every run
+     * @param results the result strings of all runs
+     * @return the textual result of the job
+     */
+    private static String report(Job job, double[] sustainabilities, List<String> results) {
+        double average = 0;
+        for (double sustainability : sustainabilities) {
+            average += sustainability;
+        }
+        average /= sustainabilities.length;
+
+        String closest = null;
+        double closestDifference = Double.MAX_VALUE;
+        synchronized (results) {
+            for (String result : results) {
+                int index = result.indexOf("sustainability: ");
+                String[] parts = result.substring(index + "sustainability: ".length()).trim().split("\\s+");
+                double difference = Math.abs(Double.parseDouble(parts[0]) - average);
+                if (difference < closestDifference) {
+                    closestDifference = difference;
+                    closest = result;
+                }
+            }
+        }
+
+        String report = "Job: " + job + "\naverage sustainability: " + average + "\n";
+        if (closest != null) {
+            report += closest.replace("SimulationResult", "AverageSimulationResult");
+        }
+        return report;
+    }
+
+    /**
+     * Looks up one of the scenarios defined in Simulation by its name, ignoring case and the word "Scenario".
+     *
+     * @param name the name of the scenario, e.g. "Minimal Scenario" or "minimal"
+     * @return the scenario with the given name
+     * @throws IllegalArgumentException if no scenario has this name
+     */
+    public static Scenario scenario(String name) {
+        if (name == null) { throw new IllegalArgumentException("The scenario name is null."); }
+        String wanted = name.toLowerCase().replace("scenario", "").replace(" ", "");
+        Scenario[] scenarios = {Simulation.minimalScenario, Simulation.ecologicalScenario, Simulation.highQualityScenario,
+                Simulation.modularScenario, Simulation.CatastropheSafeScenario, Simulation.highTechScenario};
+        for (Scenario scenario : scenarios) {
+            if (scenario.getName().toLowerCase().replace("scenario", "").replace(" ", "").equals(wanted)) {
+                return scenario;
+            }
+        }
+        throw new IllegalArgumentException("Unknown scenario: " + name);
+    }
+
+    /**
+     * Starts serving jobs over HTTP on the loopback interface.
+     *
+     * @param port the port to listen on, 0 chooses a free port
+     * @return the port the service listens on
+     * @throws IOException if the socket cannot be opened
+     *
+     * Precondition: The service has not been started yet.
+     */
+    public int start(int port) throws IOException {
+        if (server != null) { throw new IllegalStateException("The service is already running."); }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/simulate", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the HTTP server and the worker pool.
+     *
+     * Postcondition: No new jobs are accepted; running simulations are finished.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdown();
+            server = null;
+        }
+        workers.shutdown();
+    }
+
+    /**
+     * Answers one HTTP request. The exchange thread only waits; the runs are executed by the worker pool.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException if the response cannot be written
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            Job job = new Job(scenario(query.get("scenario")),
+                    Ground.GroundType.valueOf(query.getOrDefault("ground", "City")),
+                    Long.parseLong(query.getOrDefault("seed", "0")),
+                    Integer.parseInt(query.getOrDefault("runs", "10")));
+            body = submit(job).get();
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            body = e.getMessage() + "\n";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 503;
+            body = "Interrupted.\n";
+        } catch (ExecutionException e) {
+            status = 500;
+            body = "Simulation failed: " + e.getCause() + "\n";
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Splits a raw query string into its decoded key-value pairs.
+     *
+     * @param rawQuery the raw query string, may be null
+     * @return the parameters of the query
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int index = pair.indexOf('=');
+            if (index > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, index), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(index + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Starts the service. The first argument is the port (default 8080), the second the number of worker threads
+     * (default: number of processors), the third the cache size (default 256).
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int cacheSize = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+
+        SimulationService service = new SimulationService(threads, cacheSize);
+        int boundPort = service.start(port);
+        System.out.println("Simulation service listening on http://127.0.0.1:" + boundPort + "/simulate");
+    }
+}
@@ -0,0 +1,392 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * STYLE: Object-Oriented Programming (the numerics are Procedural Programming)
+ *
+ * A surrogate for the Monte Carlo simulation: a Gaussian process regression that learns from finished simulation
+ * results how the parameters of a Scenario and the GroundType map to the sustainability and the key facts.
+ * A trained model predicts these values together with a standard deviation in O(n) for the means and O(n^2) for
+ * the uncertainty, where n is the number of training samples, instead of running thousands of simulate() calls.
+ *
+ * The inputs are the nine numeric parameters of a scenario plus a one-hot encoding of the ground type, standardized
+ * over the training set. All outputs share one squared exponential kernel, so one Cholesky decomposition serves all
+ * of them. Length scale and noise are chosen by maximizing the log marginal likelihood over a small grid.
+ *
+ * The outputs are indexed like Simulation.getKeyFactSummary(): sustainability, key fact 1, average of key fact 2,
+ * key fact 3, key fact 4, average of key fact 5.
+ */
+public class SurrogateModel {
+
+    public static final int SUSTAINABILITY = 0;
+    public static final int OUTPUTS = 6;
+
+    private static final int FEATURES = 9 + Ground.GroundType.values().length;
+    private static final double[] LENGTH_SCALES = {0.5, 1.0, 2.0, 4.0, 8.0};
+    private static final double[] NOISES = {1e-4, 1e-3, 1e-2, 1e-1};
+
+    private final List<Sample> samples = new ArrayList<>();
+
+    // fitted state, all in standardized units
+    private double[][] inputs;
+    private double[] featureMean;
+    private double[] featureStd;
+    private double[] outputMean;
+    private double[] outputStd;
+    private double[][] cholesky;
+    private double[][] alpha;
+    private double lengthScale;
+    private double noise;
+
+    /**
+     * One training sample: the averaged outputs of several simulations of a scenario on a ground type.
+     */
+    public static final class Sample {
+
+        private final Scenario scenario;
+        private final Ground.GroundType ground;
+        private final double[] outputs;
+
+        /**
+         * Constructs a sample.
+         *
+         * @param scenario the simulated scenario
+         * @param ground the simulated ground type
+         * @param outputs the averaged outputs in the order of Simulation.getKeyFactSummary()
+         *
+         * Precondition: scenario and ground are not null, outputs has SurrogateModel.OUTPUTS finite values.
+         */
+        public Sample(Scenario scenario, Ground.GroundType ground, double[] outputs) {
+            if (scenario == null || ground == null) { throw new IllegalArgumentException("Scenario and ground must not be null."); }
+            if (outputs == null || outputs.length != OUTPUTS) { throw new IllegalArgumentException("A sample needs " + OUTPUTS + " outputs."); }
+            this.scenario = scenario;
+            this.ground = ground;
+            this.outputs = outputs.clone();
+        }
+
+        public Scenario getScenario() { return scenario; }
+        public Ground.GroundType getGround() { return ground; }
+        public double[] getOutputs() { return outputs.clone(); }
+    }
+
+    /**
+     * The prediction of the model for one scenario and ground type.
+     */
+    public static final class Prediction {
+
+        private final double[] mean;
+        private final double[] stdDev;
+
+        private Prediction(double[] mean, double[] stdDev) {
+            this.mean = mean;
+            this.stdDev = stdDev;
+        }
+
+        /**
+         * Returns the predicted value of an output.
+         *
+         * @param output the index of the output, e.g. SurrogateModel.SUSTAINABILITY
+         * @return the predicted value
+         */
+        public double mean(int output) { return mean[output]; }
+
+        /**
+         * Returns the standard deviation of the prediction of an output.
+         *
+         * @param output the index of the output, e.g. SurrogateModel.SUSTAINABILITY
+         * @return the standard deviation of the predicted value
+         */
+        public double stdDev(int output) { return stdDev[output]; }
+
+        @Override
+        public String toString() {
+            String result = "Prediction:";
+            for (int i = 0; i < mean.length; i++) {
+                result += " " + mean[i] + " (+-" + stdDev[i] + ")";
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Adds a sample to the training set. The model has to be fitted again to use it.
+     *
+     * @param sample the sample to add
+     *
+     * Precondition: sample is not null and its outputs are finite.
+     */
+    public void addSample(Sample sample) {
+        if (sample == null) { throw new IllegalArgumentException("The sample is null."); }
+        if (!MathUtils.isFinite(sample.outputs)) { throw new IllegalArgumentException("Outputs must be finite."); }
+        samples.add(sample);
+    }
+
+    /**
+     * Adds several samples, e.g. the results of an earlier sweep, to the training set.
+     *
+     * @param samples the samples to add
+     */
+    public void addSamples(Collection<Sample> samples) {
+        for (Sample sample : samples) {
+            addSample(sample);
+        }
+    }
+
+    /**
+     * Returns the number of training samples.
+     *
+     * @return the number of training samples
+     */
+    public int size() {
+        return samples.size();
+    }
+
+    /**
+     * Returns true if the model has been fitted and can predict.
+     *
+     * @return true if the model can predict, false otherwise
+     */
+    public boolean isFitted() {
+        return cholesky != null;
+    }
+
+    /**
+     * Fits the Gaussian process to all samples added so far.
+     *
+     * STYLE: Procedural Programming
+     *
+     * Precondition: At least two samples have been added.
+     * Postcondition: predict() uses all samples added so far. If fitting fails, the model keeps its previous fit.
+     */
+    public void fit() {
+        int n = samples.size();
+        if (n < 2) { throw new IllegalStateException("At least two samples are needed to fit the model."); }
+
+        double[][] raw = new double[n][];
+        double[][] targets = new double[n][OUTPUTS];
+        for (int i = 0; i < n; i++) {
+            raw[i] = features(samples.get(i).scenario, samples.get(i).ground);
+            targets[i] = samples.get(i).outputs;
+        }
+
+        // the new state is kept in locals and only replaces the fitted state if a decomposition succeeds
+        double[] newFeatureMean = new double[FEATURES];
+        double[] newFeatureStd = new double[FEATURES];
+        standardizeColumns(raw, newFeatureMean, newFeatureStd);
+        double[] newOutputMean = new double[OUTPUTS];
+        double[] newOutputStd = new double[OUTPUTS];
+        double[][] y = new double[n][];
+        for (int i = 0; i < n; i++) {
+            y[i] = targets[i].clone();
+        }
+        standardizeColumns(y, newOutputMean, newOutputStd);
+
+        // choose the hyperparameters with the best log marginal likelihood summed over all outputs
+        double bestLikelihood = Double.NEGATIVE_INFINITY;
+        double[][] bestCholesky = null;
+        double[][] bestAlpha = null;
+        double bestScale = 0;
+        double bestNoise = 0;
+        for (double scale : LENGTH_SCALES) {
+            for (double nugget : NOISES) {
+                double[][] l = decompose(raw, scale, nugget);
+                if (l == null) {
+                    continue;
+                }
+                double[][] a = solveAll(l, y);
+                double likelihood = 0;
+                for (int j = 0; j < OUTPUTS; j++) {
+                    for (int i = 0; i < n; i++) {
+                        likelihood -= 0.5 * y[i][j] * a[j][i];
+                    }
+                }
+                for (int i = 0; i < n; i++) {
+                    likelihood -= OUTPUTS * Math.log(l[i][i]);
+                }
+                if (likelihood > bestLikelihood) {
+                    bestLikelihood = likelihood;
+                    bestScale = scale;
+                    bestNoise = nugget;
+                    bestCholesky = l;
+                    bestAlpha = a;
+                }
+            }
+        }
+        if (bestCholesky == null) { throw new IllegalStateException("The kernel matrix is not positive definite."); }
+
+        inputs = raw;
+        featureMean = newFeatureMean;
+        featureStd = newFeatureStd;
+        outputMean = newOutputMean;
+        outputStd = newOutputStd;
+        lengthScale = bestScale;
+        noise = bestNoise;
+        cholesky = bestCholesky;
+        alpha = bestAlpha;
+    }
+
+    /**
+     * Predicts the outputs of the simulation for a scenario and a ground type.
+     *
+     * STYLE: Procedural Programming
+     *
+     * @param scenario the scenario
+     * @param ground the ground type
+     * @return the predicted outputs together with their standard deviations
+     *
+     * Precondition: The model has been fitted.
+     */
+    public Prediction predict(Scenario scenario, Ground.GroundType ground) {
+        if (!isFitted()) { throw new IllegalStateException("The model has not been fitted."); }
+        double[] x = features(scenario, ground);
+        for (int f = 0; f < FEATURES; f++) {
+            x[f] = (x[f] - featureMean[f]) / featureStd[f];
+        }
+
+        int n = inputs.length;
+        double[] k = new double[n];
+        for (int i = 0; i < n; i++) {
+            k[i] = kernel(x, inputs[i], lengthScale);
+        }
+
+        // variance of the standardized latent function: k(x, x) - |L^-1 k|^2
+        double[] v = k.clone();
+        forwardSubstitute(cholesky, v);
+        double variance = 1.0;
+        for (double value : v) {
+            variance -= value * value;
+        }
+        variance = Math.max(variance, 0.0) + noise;
+
+        double[] mean = new double[OUTPUTS];
+        double[] stdDev = new double[OUTPUTS];
+        for (int j = 0; j < OUTPUTS; j++) {
+            double standardized = 0;
+            for (int i = 0; i < n; i++) {
+                standardized += k[i] * alpha[j][i];
+            }
+            mean[j] = outputMean[j] + outputStd[j] * standardized;
+            stdDev[j] = outputStd[j] * Math.sqrt(variance);
+        }
+        return new Prediction(mean, stdDev);
+    }
+
+    /**
+     * Maps a scenario and a ground type to the unstandardized input vector of the model.
+     */
+    private static double[] features(Scenario scenario, Ground.GroundType ground) {
+        double[] x = new double[FEATURES];
+        x[0] = scenario.getAverageLifespan();
+        x[1] = scenario.getAverageRenovationInterval();
+        x[2] = scenario.getCostsPerYear();
+        x[3] = scenario.getRenovationCost();
+        x[4] = scenario.getMaterialQuantity();
+        x[5] = scenario.getMedianInitialResidentSatisfaction();
+        x[6] = scenario.getMaxMaterialPrice();
+        x[7] = scenario.getMinMaterialEcologicalCoefficient();
+        x[8] = scenario.getMinMaterialQuality();
+        x[9 + ground.ordinal()] = 1.0;
+        return x;
+    }
+
+    /**
+     * Standardizes every column of the matrix in place and stores mean and standard deviation of the columns.
+     * Constant columns get a standard deviation of 1.
+     */
+    private static void standardizeColumns(double[][] matrix, double[] mean, double[] std) {
+        int n = matrix.length;
+        for (int c = 0; c < mean.length; c++) {
+            double sum = 0;
+            for (double[] row : matrix) {
+                sum += row[c];
+            }
+            mean[c] = sum / n;
+            double squares = 0;
+            for (double[] row : matrix) {
+                squares += (row[c] - mean[c]) * (row[c] - mean[c]);
+            }
+            std[c] = squares > 0 ? Math.sqrt(squares / n) : 1.0;
+            for (double[] row : matrix) {
+                row[c] = (row[c] - mean[c]) / std[c];
+            }
+        }
+    }
+
+    /**
+     * Squared exponential kernel with unit signal variance.
+     */
+    private static double kernel(double[] a, double[] b, double lengthScale) {
+        double distance = 0;
+        for (int f = 0; f < a.length; f++) {
+            double d = a[f] - b[f];
+            distance += d * d;
+        }
+        return Math.exp(-0.5 * distance / (lengthScale * lengthScale));
+    }
+
+    /**
+     * Returns the lower Cholesky factor of the kernel matrix plus noise on the diagonal,
+     * or null if the matrix is not positive definite.
+     */
+    private static double[][] decompose(double[][] inputs, double scale, double nugget) {
+        int n = inputs.length;
+        double[][] l = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = kernel(inputs[i], inputs[j], scale) + (i == j ? nugget : 0.0);
+                for (int k = 0; k < j; k++) {
+                    sum -= l[i][k] * l[j][k];
+                }
+                if (i == j) {
+                    if (sum <= 0) {
+                        return null;
+                    }
+                    l[i][i] = Math.sqrt(sum);
+                } else {
+                    l[i][j] = sum / l[j][j];
+                }
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Solves (L L^T) a = y for every output column of y.
+     *
+     * @return one solution vector per output
+     */
+    private static double[][] solveAll(double[][] l, double[][] y) {
+        int n = l.length;
+        double[][] result = new double[OUTPUTS][n];
+        for (int j = 0; j < OUTPUTS; j++) {
+            double[] b = result[j];
+            for (int i = 0; i < n; i++) {
+                b[i] = y[i][j];
+            }
+            forwardSubstitute(l, b);
+            for (int i = n - 1; i >= 0; i--) {
+                double sum = b[i];
+                for (int k = i + 1; k < n; k++) {
+                    sum -= l[k][i] * b[k];
+                }
+                b[i] = sum / l[i][i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Solves L v = b in place.
+     */
+    private static void forwardSubstitute(double[][] l, double[] b) {
+        for (int i = 0; i < b.length; i++) {
+            double sum = b[i];
+            double[] row = l[i];
+            for (int k = 0; k < i; k++) {
+                sum -= row[k] * b[k];
+            }
+            b[i] = sum / row[i];
+        }
+    }
+}
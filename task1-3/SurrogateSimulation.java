@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * STYLE: Object-Oriented Programming
+ *
+ * Answers interactive scenario queries with the SurrogateModel and falls back to the full Monte Carlo simulation only
+ * when the prediction is too uncertain. Every fallback simulation becomes a new training sample, so the surrogate gets
+ * better in exactly the regions of the parameter space the planners are looking at.
+ *
+ * The uncertainty is measured as the standard deviation of the predicted sustainability relative to its predicted
+ * value. Queries with a relative standard deviation above the tolerance are simulated.
+ */
+public class SurrogateSimulation {
+
+    private static final int buildingsPerSimulation = 5;
+
+    private final SurrogateModel model;
+    private final int runsPerSample;
+    private final double tolerance;
+
+    private int predictions = 0;
+    private int simulations = 0;
+
+    /**
+     * The answer to a query: the outputs of the simulation and whether they were predicted or simulated.
+     */
+    public static final class Result {
+
+        private final double[] outputs;
+        private final double stdDev;
+        private final boolean simulated;
+
+        private Result(double[] outputs, double stdDev, boolean simulated) {
+            this.outputs = outputs;
+            this.stdDev = stdDev;
+            this.simulated = simulated;
+        }
+
+        /**
+         * Returns an output in the order of Simulation.getKeyFactSummary().
+         *
+         * @param output the index of the output, e.g. SurrogateModel.SUSTAINABILITY
+         * @return the value of the output
+         */
+        public double get(int output) { return outputs[output]; }
+
+        /**
+         * Returns the standard deviation of the sustainability: the prediction uncertainty if predicted,
+         * the standard error of the mean if simulated.
+         *
+         * @return the standard deviation of the sustainability
+         */
+        public double getStdDev() { return stdDev; }
+
+        /**
+         * Returns true if the full Monte Carlo simulation was run for this result.
+         *
+         * @return true if simulated, false if predicted
+         */
+        public boolean isSimulated() { return simulated; }
+
+        @Override
+        public String toString() {
+            return (simulated ? "simulated" : "predicted") + " sustainability: " + outputs[SurrogateModel.SUSTAINABILITY]
+                    + " (+-" + stdDev + ")";
+        }
+    }
+
+    /**
+     * Constructs the query front end.
+     *
+     * @param model the surrogate, possibly already trained with samples of earlier sweeps
+     * @param runsPerSample the number of simulations averaged for a fallback sample
+     * @param tolerance the largest accepted relative standard deviation of the predicted sustainability
+     *
+     * Precondition: model is not null, runsPerSample > 0, tolerance > 0.
+     */
+    public SurrogateSimulation(SurrogateModel model, int runsPerSample, double tolerance) {
+        if (model == null) { throw new IllegalArgumentException("The model is null."); }
+        if (runsPerSample <= 0 || tolerance <= 0) { throw new IllegalArgumentException("Runs and tolerance must be positive."); }
+        this.model = model;
+        this.runsPerSample = runsPerSample;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Answers a query for a scenario on a ground type.
+     *
+     * @param scenario the scenario
+     * @param ground the ground type
+     * @return the predicted result, or the simulated one if the prediction was too uncertain
+     *
+     * Postcondition: If the result was simulated, it has been added to the model and the model has been refitted.
+     */
+    public Result query(Scenario scenario, Ground.GroundType ground) {
+        if (model.isFitted()) {
+            SurrogateModel.Prediction prediction = model.predict(scenario, ground);
+            double mean = prediction.mean(SurrogateModel.SUSTAINABILITY);
+            double stdDev = prediction.stdDev(SurrogateModel.SUSTAINABILITY);
+            if (stdDev <= tolerance * Math.abs(mean)) {
+                predictions++;
+                double[] outputs = new double[SurrogateModel.OUTPUTS];
+                for (int i = 0; i < outputs.length; i++) {
+                    outputs[i] = prediction.mean(i);
+                }
+                return new Result(outputs, stdDev, false);
+            }
+        }
+        return simulate(scenario, ground);
+    }
+
+    /**
+     * Runs the full Monte Carlo simulation, records it as a sample and refits the model.
+     *
+     * @param scenario the scenario
+     * @param ground the ground type
+     * @return the simulated result
+     */
+    public Result simulate(Scenario scenario, Ground.GroundType ground) {
+        simulations++;
+        double[] sum = new double[SurrogateModel.OUTPUTS];
+        double[] sustainabilities = new double[runsPerSample];
+        int successful = 0;
+        for (int run = 0; run < runsPerSample; run++) {
+            List<Building> buildings = new ArrayList<>(buildingsPerSimulation);
+            for (int i = 0; i < buildingsPerSimulation; i++) {
+                buildings.add(new Building(scenario));
+            }
+            Simulation simulation = new Simulation(buildings, new Ground(ground));
+            simulation.simulate();
+            double[] outputs = simulation.getKeyFactSummary();
+            if (!simulation.isSuccessful() || !MathUtils.isFinite(outputs)) {
+                continue;
+            }
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += outputs[i];
+            }
+            sustainabilities[successful++] = outputs[SurrogateModel.SUSTAINABILITY];
+        }
+        if (successful == 0) { throw new IllegalStateException("No simulation of " + scenario.getName() + " was successful."); }
+
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] /= successful;
+        }
+        double squares = 0;
+        for (int i = 0; i < successful; i++) {
+            double d = sustainabilities[i] - sum[SurrogateModel.SUSTAINABILITY];
+            squares += d * d;
+        }
+        double standardError = successful > 1 ? Math.sqrt(squares / (successful - 1) / successful) : 0.0;
+
+        model.addSample(new SurrogateModel.Sample(scenario, ground, sum));
+        if (model.size() >= 2) {
+            model.fit();
+        }
+        return new Result(sum, standardError, true);
+    }
+
+    /**
+     * Returns how many queries were answered by the surrogate.
+     *
+     * @return the number of predicted answers
+     */
+    public int getPredictions() { return predictions; }
+
+    /**
+     * Returns how many queries needed the full simulation.
+     *
+     * @return the number of simulated answers
+     */
+    public int getSimulations() { return simulations; }
+}
@@ -0,0 +1,395 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * STYLE: Concurrent Programming
+ *
+ * Splits a lifecycle sweep into shards and runs them in separate worker JVMs (see SweepWorker), so a huge sweep is
+ * not limited by the heap and the garbage collector of a single JVM. Like task9/Test.launchSimulation, the workers
+ * are started with a ProcessBuilder on the class path of this JVM.
+ *
+ * At most a given number of workers run at the same time. Each worker streams compact binary records back over its
+ * standard output pipe. The records of a shard are accumulated separately and merged into the sweep statistics only
+ * if the shard finished completely; a shard whose worker crashed, exited with an error, sent a truncated stream or did
+ * not finish within the shard timeout is started again, up to a maximum number of attempts. A worker that is not needed
+ * any more, because it timed out or the sweep failed or was interrupted, is killed, so no worker JVM outlives the sweep.
+ *
+ * The statistics per cell (scenario, ground type) are count, mean and variance of every output, merged with the
+ * parallel variant of Welford's algorithm.
+ */
+public class SweepCoordinator {
+
+    public static final String CLASS_PATH = System.getProperty("java.class.path");
+    public static final long DEFAULT_SHARD_TIMEOUT_SECONDS = 600;
+
+    private final List<Scenario> scenarios;
+    private final List<Ground.GroundType> grounds;
+    private final int runsPerCell;
+    private final int maxAttempts;
+    private final long shardTimeoutSeconds;
+    private List<String> workerCommand = List.of("java", "-cp", CLASS_PATH, "SweepWorker");
+
+    // the running worker processes, guarded by their own lock; no worker is started once the sweep is cancelled
+    private final Set<Process> processes = new HashSet<>();
+    private boolean cancelled = false;
+
+    private final Statistics[] statistics;
+    private int failedRuns = 0;
+    private int retries = 0;
+
+    /**
+     * Count, mean and sum of squared deviations of every output of one cell.
+     */
+    public static final class Statistics {
+
+        private long count = 0;
+        private final double[] mean = new double[SurrogateModel.OUTPUTS];
+        private final double[] m2 = new double[SurrogateModel.OUTPUTS];
+
+        /**
+         * Adds the outputs of one run.
+         */
+        void add(double[] outputs) {
+            count++;
+            for (int i = 0; i < mean.length; i++) {
+                double delta = outputs[i] - mean[i];
+                mean[i] += delta / count;
+                m2[i] += delta * (outputs[i] - mean[i]);
+            }
+        }
+
+        /**
+         * Merges the statistics of another set of runs into this one.
+         */
+        void merge(Statistics other) {
+            if (other.count == 0) {
+                return;
+            }
+            long total = count + other.count;
+            for (int i = 0; i < mean.length; i++) {
+                double delta = other.mean[i] - mean[i];
+                mean[i] += delta * other.count / total;
+                m2[i] += other.m2[i] + delta * delta * count * other.count / total;
+            }
+            count = total;
+        }
+
+        public long getCount() { return count; }
+
+        public double getMean(int output) { return mean[output]; }
+
+        public double getStdDev(int output) { return count > 1 ? Math.sqrt(m2[output] / (count - 1)) : 0.0; }
+    }
+
+    /**
+     * Constructs a coordinator for the sweep over all combinations of the given scenarios and ground types, whose
+     * shards time out after DEFAULT_SHARD_TIMEOUT_SECONDS.
+     *
+     * @param scenarios the scenarios of the sweep, by name (see SimulationService.scenario(String))
+     * @param grounds the ground types of the sweep
+     * @param runsPerCell how often every combination is simulated
+     * @param maxAttempts how often a shard is started before the sweep fails
+     *
+     * Precondition: The lists are not empty, runsPerCell > 0, maxAttempts > 0.
+     */
+    public SweepCoordinator(List<String> scenarios, List<Ground.GroundType> grounds, int runsPerCell, int maxAttempts) {
+        this(scenarios, grounds, runsPerCell, maxAttempts, DEFAULT_SHARD_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Constructs a coordinator for the sweep over all combinations of the given scenarios and ground types.
+     *
+     * @param scenarios the scenarios of the sweep, by name (see SimulationService.scenario(String))
+     * @param grounds the ground types of the sweep
+     * @param runsPerCell how often every combination is simulated
+     * @param maxAttempts how often a shard is started before the sweep fails
+     * @param shardTimeoutSeconds how long a worker may take for its shard before it is killed and the attempt fails
+     *
+     * Precondition: The lists are not empty, runsPerCell > 0, maxAttempts > 0, shardTimeoutSeconds > 0.
+     */
+    public SweepCoordinator(List<String> scenarios, List<Ground.GroundType> grounds, int runsPerCell, int maxAttempts,
+                            long shardTimeoutSeconds) {
+        if (scenarios == null || scenarios.isEmpty() || grounds == null || grounds.isEmpty()) {
+            throw new IllegalArgumentException("A sweep needs at least one scenario and one ground type.");
+        }
+        if (runsPerCell <= 0 || maxAttempts <= 0) { throw new IllegalArgumentException("Runs and attempts must be positive."); }
+        if (shardTimeoutSeconds <= 0) { throw new IllegalArgumentException("The shard timeout must be positive."); }
+        this.scenarios = SweepWorker.parseScenarios(String.join(",", scenarios));
+        this.grounds = new ArrayList<>(grounds);
+        this.runsPerCell = runsPerCell;
+        this.maxAttempts = maxAttempts;
+        this.shardTimeoutSeconds = shardTimeoutSeconds;
+        this.statistics = new Statistics[this.scenarios.size() * this.grounds.size()];
+        for (int i = 0; i < statistics.length; i++) {
+            statistics[i] = new Statistics();
+        }
+    }
+
+    /**
+     * Sets the command that starts a worker JVM, without the arguments of the shard; tests use it to start workers
+     * that fail.
+     *
+     * @param workerCommand the command, e.g. java -cp CLASS_PATH SweepWorker
+     */
+    void setWorkerCommand(List<String> workerCommand) {
+        this.workerCommand = List.copyOf(workerCommand);
+    }
+
+    /**
+     * Runs the sweep in shards on at most the given number of worker JVMs at the same time.
+     *
+     * @param workers the maximum number of concurrently running worker JVMs
+     * @param shards the number of shards the sweep is split into
+     * @throws InterruptedException if the coordinator is interrupted while waiting for workers
+     * @throws IllegalStateException if a shard failed maxAttempts times
+     *
+     * Precondition: workers > 0, shards > 0.
+     * Postcondition: The statistics contain every successful run of the sweep exactly once; no worker JVM is running.
+     */
+    public void run(int workers, int shards) throws InterruptedException {
+        if (workers <= 0 || shards <= 0) { throw new IllegalArgumentException("Workers and shards must be positive."); }
+        int totalRuns = statistics.length * runsPerCell;
+        shards = Math.min(shards, totalRuns);
+        synchronized (processes) {
+            cancelled = false;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < shards; shard++) {
+                int from = (int) ((long) totalRuns * shard / shards);
+                int to = (int) ((long) totalRuns * (shard + 1) / shards);
+                futures.add(pool.submit(() -> {
+                    runShard(from, to, watchdog);
+                    return null;
+                }));
+            }
+            pool.shutdown();
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("The sweep failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // a thread reading from a worker cannot be interrupted, but killing the worker ends its stream
+            cancel();
+            pool.shutdownNow();
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * Kills all running workers and prevents new ones from being started.
+     */
+    private void cancel() {
+        synchronized (processes) {
+            cancelled = true;
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+            processes.clear();
+        }
+    }
+
+    /**
+     * Runs one shard, starting it again if its worker fails.
+     */
+    private void runShard(int from, int to, ScheduledExecutorService watchdog) throws InterruptedException {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                Statistics[] shardStatistics = launchWorker(from, to, watchdog);
+                merge(shardStatistics);
+                return;
+            } catch (IOException e) {
+                synchronized (processes) {
+                    if (cancelled) { throw new InterruptedException("The sweep was cancelled."); }
+                }
+                System.err.println("Shard [" + from + ", " + to + ") failed (attempt " + attempt + "): " + e.getMessage());
+                if (attempt < maxAttempts) { // the shard is started again
+                    synchronized (this) {
+                        retries++;
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("Shard [" + from + ", " + to + ") failed " + maxAttempts + " times.");
+    }
+
+    /**
+     * Launches a worker JVM for the shard and reads its records. The worker is killed if it does not finish within the
+     * shard timeout, and whenever this method does not return normally.
+     *
+     * @return the statistics of the shard, only if the worker delivered all runs and exited normally
+     * @throws IOException if the worker crashed, exited with an error code, sent an incomplete stream or timed out
+     * @throws InterruptedException if the sweep was cancelled or the thread was interrupted
+     */
+    private Statistics[] launchWorker(int from, int to, ScheduledExecutorService watchdog) throws IOException, InterruptedException {
+        List<String> names = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            names.add(scenario.getName());
+        }
+        List<String> groundNames = new ArrayList<>();
+        for (Ground.GroundType ground : grounds) {
+            groundNames.add(ground.name());
+        }
+
+        List<String> command = new ArrayList<>(workerCommand);
+        command.addAll(List.of(Integer.toString(from), Integer.toString(to), Integer.toString(runsPerCell),
+                String.join(",", names), String.join(",", groundNames)));
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process;
+        synchronized (processes) {
+            if (cancelled) { throw new InterruptedException("The sweep was cancelled."); }
+            process = processBuilder.start();
+            processes.add(process);
+        }
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+            timedOut.set(true);
+            process.destroyForcibly(); // ends the stream, so the reading thread notices the timeout
+        }, shardTimeoutSeconds, TimeUnit.SECONDS);
+        try {
+            return readWorker(process, from, to, timedOut);
+        } finally {
+            timeout.cancel(false);
+            process.destroyForcibly(); // has no effect on a worker that has exited
+            synchronized (processes) {
+                processes.remove(process);
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a worker and waits for it to exit.
+     */
+    private Statistics[] readWorker(Process process, int from, int to, AtomicBoolean timedOut) throws IOException, InterruptedException {
+        Statistics[] shardStatistics = new Statistics[statistics.length];
+        for (int i = 0; i < shardStatistics.length; i++) {
+            shardStatistics[i] = new Statistics();
+        }
+        int runs = 0;
+        int failed = 0;
+        double[] outputs = new double[SurrogateModel.OUTPUTS];
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+            while (true) {
+                byte tag = in.readByte();
+                if (tag == SweepWorker.END) {
+                    if (in.readInt() != runs || runs != to - from) {
+                        throw new IOException("the worker reported a wrong number of runs");
+                    }
+                    break;
+                }
+                int cell = in.readInt();
+                if (cell < 0 || cell >= shardStatistics.length) {
+                    throw new IOException("the worker sent an unknown cell " + cell);
+                }
+                if (tag == SweepWorker.RESULT) {
+                    for (int i = 0; i < outputs.length; i++) {
+                        outputs[i] = in.readDouble();
+                    }
+                    shardStatistics[cell].add(outputs);
+                } else if (tag == SweepWorker.FAILED) {
+                    failed++;
+                } else {
+                    throw new IOException("the worker sent an unknown record " + tag);
+                }
+                runs++;
+            }
+        } catch (IOException e) {
+            if (timedOut.get()) {
+                throw new IOException("the worker did not finish within " + shardTimeoutSeconds + " s");
+            }
+            if (e instanceof EOFException) {
+                throw new IOException("the worker stream ended after " + runs + " of " + (to - from) + " runs");
+            }
+            throw e;
+        }
+
+        int exitCode = process.waitFor();
+        if (timedOut.get()) {
+            throw new IOException("the worker did not finish within " + shardTimeoutSeconds + " s");
+        }
+        if (exitCode != 0) {
+            throw new IOException("the worker exited with code " + exitCode);
+        }
+        synchronized (this) {
+            failedRuns += failed;
+        }
+        return shardStatistics;
+    }
+
+    /**
+     * Merges the statistics of a finished shard into the statistics of the sweep.
+     */
+    private synchronized void merge(Statistics[] shardStatistics) {
+        for (int i = 0; i < statistics.length; i++) {
+            statistics[i].merge(shardStatistics[i]);
+        }
+    }
+
+    /**
+     * Returns the statistics of a cell.
+     *
+     * @param scenario the index of the scenario in the sweep
+     * @param ground the ground type
+     * @return the statistics of the runs of this scenario on this ground type
+     */
+    public synchronized Statistics getStatistics(int scenario, Ground.GroundType ground) {
+        return statistics[scenario * grounds.size() + grounds.indexOf(ground)];
+    }
+
+    /**
+     * Returns the number of runs whose simulation was not successful.
+     *
+     * @return the number of unsuccessful runs
+     */
+    public synchronized int getFailedRuns() { return failedRuns; }
+
+    /**
+     * Returns how often a shard had to be started again.
+     *
+     * @return the number of retried shards
+     */
+    public synchronized int getRetries() { return retries; }
+
+    /**
+     * Runs a sweep over all scenarios of Simulation and all ground types.
+     * Arguments: number of concurrent workers (default: processors), runs per cell (default 10),
+     * number of shards (default: 4 per worker).
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int runsPerCell = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int shards = args.length > 2 ? Integer.parseInt(args[2]) : 4 * workers;
+
+        List<String> scenarios = List.of(Simulation.minimalScenario.getName(), Simulation.ecologicalScenario.getName(),
+                Simulation.highQualityScenario.getName(), Simulation.modularScenario.getName(),
+                Simulation.CatastropheSafeScenario.getName(), Simulation.highTechScenario.getName());
+        List<Ground.GroundType> grounds = List.of(Ground.GroundType.values());
+
+        SweepCoordinator coordinator = new SweepCoordinator(scenarios, grounds, runsPerCell, 3);
+        coordinator.run(workers, shards);
+
+        for (int s = 0; s < scenarios.size(); s++) {
+            for (Ground.GroundType ground : grounds) {
+                Statistics statistics = coordinator.getStatistics(s, ground);
+                System.out.println(scenarios.get(s) + " on " + ground + ": " + statistics.getCount() + " runs, sustainability "
+                        + statistics.getMean(SurrogateModel.SUSTAINABILITY) + " (+-" + statistics.getStdDev(SurrogateModel.SUSTAINABILITY) + ")");
+            }
+        }
+        System.out.println("Unsuccessful runs: " + coordinator.getFailedRuns() + ", retried shards: " + coordinator.getRetries());
+    }
+}
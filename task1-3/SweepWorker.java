@@ -0,0 +1,100 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * STYLE: Procedural Programming
+ *
+ * A worker process of a sharded lifecycle sweep, launched by SweepCoordinator in its own JVM.
+ * A sweep is the list of all cells (scenario, ground type), each simulated runsPerCell times. The runs are numbered
+ * cell by cell, and a shard is the range [from, to) of these numbers.
+ *
+ * The worker writes one compact binary record per run to its standard output and a final end record with the number
+ * of runs, so the coordinator can tell a finished shard from a crashed one. Everything that would be printed to
+ * System.out while simulating goes to System.err instead, so it cannot corrupt the record stream.
+ *
+ * Record layout (big-endian, see DataOutputStream):
+ * - RESULT:  byte 1, int cell, SurrogateModel.OUTPUTS doubles in the order of Simulation.getKeyFactSummary()
+ * - FAILED:  byte 2, int cell (the simulation was not successful, e.g. NaN key facts)
+ * - END:     byte 0, int number of runs in the shard
+ *
+ * Arguments: from to runsPerCell scenarioNames groundTypes, where both lists are comma separated.
+ */
+public class SweepWorker {
+
+    static final byte END = 0;
+    static final byte RESULT = 1;
+    static final byte FAILED = 2;
+
+    private static final int buildingsPerSimulation = 5;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) { throw new IllegalArgumentException("Usage: SweepWorker from to runsPerCell scenarios grounds"); }
+        int from = Integer.parseInt(args[0]);
+        int to = Integer.parseInt(args[1]);
+        int runsPerCell = Integer.parseInt(args[2]);
+        List<Scenario> scenarios = parseScenarios(args[3]);
+        List<Ground.GroundType> grounds = parseGrounds(args[4]);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+
+        for (int run = from; run < to; run++) {
+            int cell = run / runsPerCell;
+            Scenario scenario = scenarios.get(cell / grounds.size());
+            Ground.GroundType ground = grounds.get(cell % grounds.size());
+
+            List<Building> buildings = new ArrayList<>(buildingsPerSimulation);
+            for (int i = 0; i < buildingsPerSimulation; i++) {
+                buildings.add(new Building(scenario));
+            }
+            Simulation simulation = new Simulation(buildings, new Ground(ground));
+            simulation.simulate();
+            double[] outputs = simulation.getKeyFactSummary();
+
+            if (simulation.isSuccessful() && MathUtils.isFinite(outputs)) {
+                out.writeByte(RESULT);
+                out.writeInt(cell);
+                for (double output : outputs) {
+                    out.writeDouble(output);
+                }
+            } else {
+                out.writeByte(FAILED);
+                out.writeInt(cell);
+            }
+        }
+        out.writeByte(END);
+        out.writeInt(to - from);
+        out.flush();
+
+        // the ground threads of the last simulations would otherwise keep the JVM alive for another second
+        System.exit(0);
+    }
+
+    /**
+     * Parses a comma separated list of scenario names, see SimulationService.scenario(String).
+     */
+    static List<Scenario> parseScenarios(String names) {
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String name : names.split(",")) {
+            scenarios.add(SimulationService.scenario(name.trim()));
+        }
+        return scenarios;
+    }
+
+    /**
+     * Parses a comma separated list of ground types.
+     */
+    static List<Ground.GroundType> parseGrounds(String names) {
+        List<Ground.GroundType> grounds = new ArrayList<>();
+        for (String name : names.split(",")) {
+            grounds.add(Ground.GroundType.valueOf(name.trim()));
+        }
+        return grounds;
+    }
+}
@@ -1,4 +1,11 @@
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * AB1:
@@ -86,5 +93,152 @@ public class Test {
                 }
             }
         }
+
+        testSurrogateModel(scenarios);
+        testSimulationService(scenarios);
+        testSweepCoordinator(scenarios);
+    }
+
+    /**
+     * Runs a small sweep whose worker fails on its first attempt and is retried, and a sweep whose worker hangs and is
+     * killed after the shard timeout until the sweep fails.
+     */
+    private static void testSweepCoordinator(Scenario[] scenarios) {
+        List<String> names = List.of(scenarios[0].getName());
+        List<Ground.GroundType> types = List.of(Ground.GroundType.City, Ground.GroundType.Forest);
+        boolean successful;
+        try {
+            Path marker = Files.createTempDirectory("sweep").resolve("failed");
+            SweepCoordinator retried = new SweepCoordinator(names, types, 2, 2);
+            retried.setWorkerCommand(List.of("java", "-cp", SweepCoordinator.CLASS_PATH, "-Dsweep.marker=" + marker,
+                    "Test$FailingOnceWorker"));
+            retried.run(1, 1);
+            long runs = 0;
+            for (Ground.GroundType type : types) {
+                runs += retried.getStatistics(0, type).getCount();
+            }
+            successful = retried.getRetries() == 1 && runs + retried.getFailedRuns() == 4;
+            Files.delete(marker);
+            Files.delete(marker.getParent());
+
+            SweepCoordinator hanging = new SweepCoordinator(names, types, 2, 2, 1);
+            hanging.setWorkerCommand(List.of("java", "-cp", SweepCoordinator.CLASS_PATH, "Test$HangingWorker"));
+            try {
+                hanging.run(1, 1);
+                successful = false;
+            } catch (IllegalStateException e) {
+                successful &= hanging.getRetries() == 1; // started twice, so restarted once
+            }
+        } catch (IOException | InterruptedException e) {
+            successful = false;
+        }
+
+        System.out.println(successful ? "Sweep coordinator test was successful." : "Sweep coordinator test was unsuccessful.");
+    }
+
+    /**
+     * A sweep worker that crashes the first time it is started and works like SweepWorker afterwards; the file given in
+     * the system property sweep.marker records the first start.
+     */
+    static class FailingOnceWorker {
+        public static void main(String[] args) throws IOException {
+            try {
+                Files.createFile(Path.of(System.getProperty("sweep.marker")));
+                System.exit(1);
+            } catch (FileAlreadyExistsException e) {
+                SweepWorker.main(args);
+            }
+        }
+    }
+
+    /**
+     * A sweep worker that never sends a record.
+     */
+    static class HangingWorker {
+        public static void main(String[] args) throws InterruptedException {
+            Thread.sleep(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Submits two identical jobs at once, which are simulated only once, and fills the LRU cache of the service past
+     * its capacity, which evicts the least recently used result.
+     */
+    private static void testSimulationService(Scenario[] scenarios) {
+        SimulationService service = new SimulationService(2, 2);
+        SimulationService.Job job = new SimulationService.Job(scenarios[0], Ground.GroundType.City, 1, 20);
+        SimulationService.Job other = new SimulationService.Job(scenarios[1], Ground.GroundType.City, 1, 1);
+        SimulationService.Job third = new SimulationService.Job(scenarios[2], Ground.GroundType.City, 1, 1);
+        boolean successful;
+        try {
+            CompletableFuture<String> first = service.submit(job);
+            CompletableFuture<String> second = service.submit(new SimulationService.Job(scenarios[0], Ground.GroundType.City, 1, 20));
+            successful = first.get().equals(second.get()) && service.getSimulatedJobs() == 1;
+
+            service.submit(other).get();
+            service.submit(job).get(); // answered from the cache, so other becomes the least recently used result
+            service.submit(third).get();
+            successful &= service.getSimulatedJobs() == 3 && service.isCached(job) && !service.isCached(other)
+                    && service.isCached(third);
+        } catch (InterruptedException | ExecutionException e) {
+            successful = false;
+        } finally {
+            service.stop();
+        }
+
+        System.out.println(successful ? "Simulation service test was successful." : "Simulation service test was unsuccessful.");
+    }
+
+    /**
+     * Fits the surrogate model on samples with known outputs, checks that it reproduces them at the training points,
+     * refits it with one more sample and answers queries through SurrogateSimulation.
+     */
+    private static void testSurrogateModel(Scenario[] scenarios) {
+        SurrogateModel model = new SurrogateModel();
+        Ground.GroundType[] types = {Ground.GroundType.City, Ground.GroundType.Forest};
+        for (int i = 0; i < 4; i++) {
+            model.addSample(new SurrogateModel.Sample(scenarios[i], types[i % 2], knownOutputs(scenarios[i], types[i % 2])));
+        }
+        model.fit();
+        boolean successful = reproduces(model, scenarios, types, 4);
+
+        // refit with one more sample, the predictions use all five samples
+        model.addSample(new SurrogateModel.Sample(scenarios[4], types[0], knownOutputs(scenarios[4], types[0])));
+        model.fit();
+        successful &= model.size() == 5 && reproduces(model, scenarios, types, 5);
+
+        // a generous tolerance is answered by the model, a full simulation adds a sample and refits
+        SurrogateSimulation surrogate = new SurrogateSimulation(model, 2, 1000.0);
+        surrogate.query(scenarios[0], types[0]);
+        SurrogateSimulation.Result simulated = surrogate.simulate(scenarios[5], types[1]);
+        successful &= surrogate.getPredictions() == 1 && surrogate.getSimulations() == 1 && simulated.isSimulated()
+                && model.size() == 6 && model.isFitted();
+
+        System.out.println(successful ? "Surrogate model test was successful." : "Surrogate model test was unsuccessful.");
+    }
+
+    /**
+     * Returns outputs that depend smoothly on the scenario and the ground type, so the expected values are known.
+     */
+    private static double[] knownOutputs(Scenario scenario, Ground.GroundType ground) {
+        double base = scenario.getAverageLifespan() + 10 * ground.ordinal();
+        return new double[] {base / 100, base, 2 * base, scenario.getMaterialQuantity(), 3 * base, base / 10};
+    }
+
+    /**
+     * Returns true if the predictions at the first count training points are within 1% of their known outputs.
+     */
+    private static boolean reproduces(SurrogateModel model, Scenario[] scenarios, Ground.GroundType[] types, int count) {
+        for (int i = 0; i < count; i++) {
+            Ground.GroundType ground = i < 4 ? types[i % 2] : types[0];
+            double[] expected = knownOutputs(scenarios[i], ground);
+            SurrogateModel.Prediction prediction = model.predict(scenarios[i], ground);
+            for (int j = 0; j < SurrogateModel.OUTPUTS; j++) {
+                if (Math.abs(prediction.mean(j) - expected[j]) > 0.01 * Math.max(1.0, Math.abs(expected[j]))) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,228 @@
+import java.util.*;
+
+/**
+ * BidirectionalSearch finds the shortest route between two given spaces, e.g. from a served space to a specific
+ * Exterior, over any connections including lifts (like HierarchicalRouting.distance). Instead of one breadth-first
+ * search from the start, which explores almost the whole graph of a large complex, a forward search from the start
+ * over the connections and a backward search from the destination over the reversed connections (see
+ * SpaceGraph.reverseOffsets()) meet in the middle; each step expands a whole level of the smaller frontier.
+ * When a level connects the two searches, the shortest route over all connections found in that level is taken.
+ *
+ * Visited spaces are marked with the number of the query (an epoch) instead of clearing boolean arrays, so a query
+ * allocates nothing except the returned path and touches only the spaces it visits. The arrays are reused by all
+ * queries, so a BidirectionalSearch is not thread-safe.
+ */
+public class BidirectionalSearch {
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final SpaceGraph graph;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] reverseOffsets;
+    private final int[] reverseTargets;
+
+    // a space was visited by the current query's search if its mark equals epoch
+    private int epoch = 0;
+    private final int[] forwardMark;
+    private final int[] backwardMark;
+    private final int[] forwardDistance;
+    private final int[] backwardDistance;
+    private final int[] forwardParent;  // previous space on the route from the start
+    private final int[] backwardParent; // next space on the route to the destination
+    private final int[] forwardQueue;
+    private final int[] backwardQueue;
+
+    // result of the last search
+    private int meetFrom = -1; // the route uses the connection meetFrom -> meetTo
+    private int meetTo = -1;
+    private int explored = 0;
+
+    /**
+     * Constructs the search over a compiled graph.
+     *
+     * @param graph the compiled graph, e.g. Building.compileGraph()
+     */
+    public BidirectionalSearch(SpaceGraph graph) {
+        if (graph == null) { throw new IllegalArgumentException("The graph is null."); }
+        this.graph = graph;
+        offsets = graph.offsets();
+        targets = graph.targets();
+        reverseOffsets = graph.reverseOffsets();
+        reverseTargets = graph.reverseTargets();
+        int n = graph.size();
+        forwardMark = new int[n];
+        backwardMark = new int[n];
+        forwardDistance = new int[n];
+        backwardDistance = new int[n];
+        forwardParent = new int[n];
+        backwardParent = new int[n];
+        forwardQueue = new int[n];
+        backwardQueue = new int[n];
+    }
+
+    /**
+     * Returns the number of steps of the shortest route between two spaces.
+     *
+     * @param from the index of the space the route starts at
+     * @param to the index of the destination
+     * @return the number of steps, or -1 if the destination cannot be reached
+     */
+    public int distance(int from, int to) {
+        int distance = search(from, to);
+        return distance == UNREACHABLE ? -1 : distance;
+    }
+
+    /**
+     * Returns the number of steps of the shortest route between two spaces, see distance(int, int).
+     *
+     * @param from the space the route starts at
+     * @param to the destination
+     * @return the number of steps, or -1 if the destination cannot be reached
+     *
+     * Precondition: Both spaces are part of the graph.
+     */
+    public int distance(Space from, Space to) {
+        return distance(indexOf(from), indexOf(to));
+    }
+
+    /**
+     * Returns the shortest route between two spaces.
+     *
+     * @param from the index of the space the route starts at
+     * @param to the index of the destination
+     * @return the indices of the spaces on the route from the start to the destination, or an empty array if the
+     *         destination cannot be reached
+     */
+    public int[] path(int from, int to) {
+        int distance = search(from, to);
+        if (distance == UNREACHABLE) {
+            return new int[0];
+        }
+        int[] path = new int[distance + 1];
+        if (distance == 0) {
+            path[0] = from;
+            return path;
+        }
+        int i = forwardDistance[meetFrom];
+        for (int v = meetFrom; i >= 0; v = forwardParent[v], i--) {
+            path[i] = v;
+        }
+        i = forwardDistance[meetFrom] + 1;
+        for (int v = meetTo; i <= distance; v = backwardParent[v], i++) {
+            path[i] = v;
+        }
+        return path;
+    }
+
+    /**
+     * Returns the shortest route between two spaces, see path(int, int).
+     *
+     * @param from the space the route starts at
+     * @param to the destination
+     * @return the spaces on the route from the start to the destination, empty if the destination cannot be reached
+     *
+     * Precondition: Both spaces are part of the graph.
+     */
+    public List<Space> route(Space from, Space to) {
+        int[] path = path(indexOf(from), indexOf(to));
+        List<Space> route = new ArrayList<>(path.length);
+        for (int v : path) {
+            route.add(graph.space(v));
+        }
+        return route;
+    }
+
+    /**
+     * Returns the number of spaces both searches of the last query visited together, to compare with the size of
+     * the graph a one-sided search would explore.
+     *
+     * @return the number of visited spaces
+     */
+    public int explored() {
+        return explored;
+    }
+
+    private int indexOf(Space space) {
+        int index = graph.indexOf(space);
+        if (index < 0) { throw new IllegalArgumentException("The space is not part of the graph."); }
+        return index;
+    }
+
+    /**
+     * Runs both searches until they meet and remembers the connection they meet at.
+     *
+     * @return the number of steps of the shortest route, or UNREACHABLE
+     */
+    private int search(int from, int to) {
+        if (from < 0 || from >= graph.size() || to < 0 || to >= graph.size()) {
+            throw new IllegalArgumentException("The space is not part of the graph.");
+        }
+        explored = 1;
+        if (from == to) {
+            return 0;
+        }
+        if (++epoch == Integer.MAX_VALUE) { // the marks of earlier queries could be mistaken for the new epoch
+            Arrays.fill(forwardMark, 0);
+            Arrays.fill(backwardMark, 0);
+            epoch = 1;
+        }
+        forwardMark[from] = epoch;
+        forwardDistance[from] = 0;
+        forwardQueue[0] = from;
+        int forwardHead = 0;
+        int forwardTail = 1;
+        backwardMark[to] = epoch;
+        backwardDistance[to] = 0;
+        backwardQueue[0] = to;
+        int backwardHead = 0;
+        int backwardTail = 1;
+        explored = 2;
+
+        int best = UNREACHABLE;
+        while (best == UNREACHABLE && forwardHead < forwardTail && backwardHead < backwardTail) {
+            if (forwardTail - forwardHead <= backwardTail - backwardHead) {
+                int end = forwardTail;
+                for (; forwardHead < end; forwardHead++) {
+                    int u = forwardQueue[forwardHead];
+                    for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                        int w = targets[e];
+                        if (backwardMark[w] == epoch && forwardDistance[u] + 1 + backwardDistance[w] < best) {
+                            best = forwardDistance[u] + 1 + backwardDistance[w];
+                            meetFrom = u;
+                            meetTo = w;
+                        }
+                        if (forwardMark[w] != epoch) {
+                            forwardMark[w] = epoch;
+                            forwardDistance[w] = forwardDistance[u] + 1;
+                            forwardParent[w] = u;
+                            forwardQueue[forwardTail++] = w;
+                        }
+                    }
+                }
+                explored += forwardTail - end;
+            } else {
+                int end = backwardTail;
+                for (; backwardHead < end; backwardHead++) {
+                    int u = backwardQueue[backwardHead];
+                    for (int e = reverseOffsets[u]; e < reverseOffsets[u + 1]; e++) {
+                        int w = reverseTargets[e]; // w is connected to u
+                        if (forwardMark[w] == epoch && forwardDistance[w] + 1 + backwardDistance[u] < best) {
+                            best = forwardDistance[w] + 1 + backwardDistance[u];
+                            meetFrom = w;
+                            meetTo = u;
+                        }
+                        if (backwardMark[w] != epoch) {
+                            backwardMark[w] = epoch;
+                            backwardDistance[w] = backwardDistance[u] + 1;
+                            backwardParent[w] = u;
+                            backwardQueue[backwardTail++] = w;
+                        }
+                    }
+                }
+                explored += backwardTail - end;
+            }
+        }
+        return best;
+    }
+}
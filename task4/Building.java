@@ -11,8 +11,21 @@ public class Building implements Entity {
 
     private List<Space> spaces;
 
+    // cached escape paths of all spaces, rebuilt when stale
+    private EscapeIndex escapeIndex;
+
+    // cached floor buckets and position grids of the rooms, rebuilt when stale
+    private SpatialIndex spatialIndex;
+
+    // counts of the spaces of the building, see EntityStatistics
+    private final EntityStatistics statistics;
+
+    // changes of the spaces of the building and their connections, see OwnedSpace
+    private final GraphVersion graphVersion = new GraphVersion();
+    private final GraphVersion positionVersion = new GraphVersion();
 
     private boolean hasPermit = true;
+    private Entity parent;
 
     // Constructors
 
@@ -22,6 +35,8 @@ public class Building implements Entity {
      */
     public Building() {
         spaces = new ArrayList<>();
+        statistics = new EntityStatistics();
+        statistics.countBuilding();
     }
 
     /**
@@ -32,6 +47,9 @@ public class Building implements Entity {
      */
     public Building(List<Space> spaces) {
         this.spaces = spaces;
+        EscapeIndex.register(this, spaces);
+        statistics = EntityStatistics.of(spaces);
+        statistics.countBuilding();
     }
 
     /**
@@ -41,6 +59,8 @@ public class Building implements Entity {
      */
     public void addSpace(List<Space> newSpaces) {
         spaces.addAll(newSpaces);
+        EscapeIndex.register(this, newSpaces);
+        EntityStatistics.apply(this, EntityStatistics.of(newSpaces), 1);
     }
 
     /**
@@ -50,6 +70,10 @@ public class Building implements Entity {
      */
     public void addSpace(Space space) {
         spaces.add(space);
+        EscapeIndex.register(this, space);
+        EntityStatistics change = new EntityStatistics();
+        change.count(space);
+        EntityStatistics.apply(this, change, 1);
     }
 
     /**
@@ -61,14 +85,81 @@ public class Building implements Entity {
         return spaces;
     }
 
+    /**
+     * Returns the version that counts the changes of the spaces of the building and of their connections.
+     *
+     * @return the version of the building
+     */
+    GraphVersion graphVersion() {
+        return graphVersion;
+    }
+
+    /**
+     * Returns the version that counts the changes of the positions of the rooms of the building.
+     *
+     * @return the position version of the building
+     */
+    GraphVersion positionVersion() {
+        return positionVersion;
+    }
+
+    /**
+     * Records a change of the spaces of the building or of their connections, in the version of the building and in
+     * the City containing it.
+     */
+    void graphChanged() {
+        graphVersion.increment();
+        City.graphChanged(this);
+    }
+
+    /**
+     * Compiles the spaces of the building and all spaces connected to them into a SpaceGraph,
+     * so that many escape paths can be searched without walking the Space objects again.
+     *
+     * @return the compiled graph of the building
+     */
+    public SpaceGraph compileGraph() {
+        return SpaceGraph.compile(this);
+    }
+
+    /**
+     * Returns the escape index of the building, which knows the escape paths of all its spaces.
+     * The index is built on the first call and kept until connections between spaces change.
+     *
+     * @return the up-to-date escape index of the building
+     */
+    public synchronized EscapeIndex escapeIndex() {
+        if (escapeIndex == null || escapeIndex.isStale()) {
+            escapeIndex = EscapeIndex.build(this);
+        }
+        return escapeIndex;
+    }
+
+    /**
+     * Returns the spatial index of the building, which finds rooms by floor and position.
+     * The index is built on the first call and kept until spaces, connections or positions change.
+     *
+     * @return the up-to-date spatial index of the building
+     */
+    public synchronized SpatialIndex spatialIndex() {
+        if (spatialIndex == null || spatialIndex.isStale()) {
+            spatialIndex = SpatialIndex.build(this);
+        }
+        return spatialIndex;
+    }
+
     /**
      * Adds a Building to this Building and transforms it into a Complex.
-     * Returns the new Complex with the two buildings.
+     * Returns the new Complex with the two buildings; the Complex takes the place of this Building in its parent.
+     * If this Building is already part of a Complex, no new Complex is created: the Building is added to that Complex,
+     * which is returned.
      * Throws an IllegalArgumentException if the building doesn't have a permit or the entity to be added is not a Building.
+     * The building must not be contained in another entity yet, otherwise an IllegalArgumentException is thrown and
+     * nothing is changed.
      *
      * @param entity the Building to be added
-     * @throws IllegalArgumentException if the entity is not a Building
-     * @return new complex after the building is added
+     * @throws IllegalArgumentException if the entity is not a Building, is this Building or is already contained in an entity
+     * @return new complex after the building is added, or the Complex this Building is part of
      */
     @Override
     public Entity addEntity(Entity entity) {
@@ -76,12 +167,16 @@ public class Building implements Entity {
         // if the entity is a building and the building has a permit
         if(entity instanceof Building && entity.hasPermit()) {
 
-            // create a new complex with the two buildings and no exterior spaces
-            List<Building> buildings = new ArrayList<>();
-            buildings.add(this);
-            buildings.add((Building) entity);
+            if (parent instanceof Complex complex) {
+                return complex.addEntity(entity);
+            }
+            EntityRegistry.checkAddable(this, entity); // before anything is changed
 
-            Complex complex = new Complex(new ArrayList<>(buildings), new ArrayList<>());
+            // create a new complex with the two buildings and no exterior spaces
+            Complex complex = new Complex();
+            EntityRegistry.replaceInParent(this, complex);
+            complex.buildings().add(this);
+            complex.buildings().add((Building) entity);
 
             return complex; // return the new complex
         }
@@ -120,6 +215,33 @@ public class Building implements Entity {
         hasPermit = false;
     }
 
+    /**
+     * Returns the entity this entity is contained in.
+     *
+     * @return the containing entity, or null if the entity is not contained in another entity
+     */
+    @Override
+    public Entity parent() {
+        return parent;
+    }
+
+    /**
+     * Returns the counters of the spaces of the building.
+     *
+     * @return the statistics of the building
+     */
+    @Override
+    public EntityStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets the containing entity; only called by EntityRegistry.
+     */
+    void setParent(Entity parent) {
+        this.parent = parent;
+    }
+
     /**
      * Grants a permit to the building.
      */
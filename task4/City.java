@@ -1,5 +1,7 @@
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A city is an Entity and a large human settlement with Public roads and Entities. It doesn't need a permit to exist,
@@ -8,13 +10,28 @@ import java.util.List;
 
 public class City implements Entity {
 
-    private List<Entity> entities;
+    private final EntityRegistry<Entity> entities = new EntityRegistry<>(this);
+    private final EntityStatistics statistics = new EntityStatistics();
     private List<PublicRoad> roads;
 
+    // road connectivity of all spaces, built on first use and kept up to date by the methods of City
+    private CityConnectivity connectivity;
+    // changes of the spaces, connections and entities of the City that the index has not seen (see graphChanged)
+    private final GraphVersion graphVersion = new GraphVersion();
+    private long connectivityVersion;
+    // versions of the indexed spaces that are not counted in graphVersion: free spaces and spaces of other cities
+    private final Map<GraphVersion, Long> externalVersions = new IdentityHashMap<>();
+
     public City() {
-        entities = new ArrayList<>();
+        roads = new ArrayList<>();
     }
 
+    /**
+     * Returns the entities of the City, in the order they were added.
+     * The list supports contains and remove in O(1).
+     *
+     * @return the entities of the City
+     */
     public List<Entity> entities() {
         return entities;
     }
@@ -28,9 +45,158 @@ public class City implements Entity {
     public Entity addRoad(PublicRoad road) {
 
         roads.add(road);
+        if (connectivity != null) {
+            add(road);
+        }
         return this;
     }
 
+    /**
+     * Returns the public roads of the City.
+     *
+     * @return the public roads
+     */
+    public List<PublicRoad> roads() {
+        return roads;
+    }
+
+    /**
+     * Connects a space to another space of the City, like from.addConnectedSpace(to),
+     * and records the connection in the connectivity index.
+     *
+     * @param from the space the connection starts at
+     * @param to the space to connect
+     */
+    public void connect(Circulation from, Space to) {
+        boolean current = connectivity != null && connectivityVersion == graphVersion.value()
+                && isCurrent(from) && isCurrent(to);
+        from.addConnectedSpace(to);
+        if (current) {
+            int indexed = connectivity.size();
+            connectivity.connect(from, to);
+            record(indexed);
+            absorb(from);
+            absorb(to);
+            connectivityVersion = graphVersion.value();
+        }
+    }
+
+    /**
+     * Returns the index that tells which spaces and buildings of the City are connected to a public road.
+     * The index is updated when entities, roads or connections are added through the City. It is built again only
+     * if spaces, connections or entities of the City, or connected spaces outside of it, were changed in any other
+     * way since the last call.
+     *
+     * @return the up-to-date connectivity index of the City
+     */
+    public CityConnectivity connectivity() {
+        if (!isConnectivityCurrent()) {
+            connectivity = new CityConnectivity();
+            externalVersions.clear();
+            connectivity.add(this);
+            for (PublicRoad road : roads) {
+                connectivity.add(road);
+            }
+            record(0);
+            connectivityVersion = graphVersion.value();
+        }
+        return connectivity;
+    }
+
+    /**
+     * Records that spaces, connections or entities below the entity changed, so the connectivity index of the City
+     * containing the entity, if any, is built again on its next use. The ancestors are followed like for the
+     * statistics (see EntityStatistics.apply).
+     *
+     * @param entity the changed entity
+     */
+    static void graphChanged(Entity entity) {
+        for (Entity e = entity; e != null; e = e.parent()) {
+            if (e instanceof City city) {
+                city.graphVersion.increment();
+            }
+        }
+    }
+
+    private boolean isConnectivityCurrent() {
+        if (connectivity == null || connectivityVersion != graphVersion.value()) {
+            return false;
+        }
+        for (Map.Entry<GraphVersion, Long> entry : externalVersions.entrySet()) {
+            if (entry.getKey().value() != entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the spaces of the entity to the index, like connect, so that it is not built again.
+     * Whether the index is still current is decided by the caller.
+     */
+    private void add(Entity entity) {
+        int indexed = connectivity.size();
+        connectivity.add(entity);
+        record(indexed);
+    }
+
+    /**
+     * Adds the road and the spaces connected to it to the index, like add(Entity).
+     */
+    private void add(Space space) {
+        int indexed = connectivity.size();
+        connectivity.add(space);
+        record(indexed);
+    }
+
+    /**
+     * Remembers the versions of the spaces indexed from the given id on that are not counted in graphVersion.
+     * A version seen before keeps its old value, so a change the index has missed is still noticed.
+     */
+    private void record(int from) {
+        for (int id = from; id < connectivity.size(); id++) {
+            GraphVersion version = externalVersion(connectivity.space(id));
+            if (version != null) {
+                externalVersions.putIfAbsent(version, version.value());
+            }
+        }
+    }
+
+    /**
+     * @return false if the space is counted in a version that changed since the index has seen it
+     */
+    private boolean isCurrent(Space space) {
+        GraphVersion version = externalVersion(space);
+        Long seen = version == null ? null : externalVersions.get(version);
+        return seen == null || seen == version.value();
+    }
+
+    /**
+     * Takes the current value of the version of a space whose change was just applied to the index.
+     */
+    private void absorb(Space space) {
+        GraphVersion version = externalVersion(space);
+        if (version != null) {
+            externalVersions.put(version, version.value());
+        }
+    }
+
+    /**
+     * @return the version the changes of the space are counted in, or null if they are counted in graphVersion or
+     * the connections of the space cannot change
+     */
+    private GraphVersion externalVersion(Space space) {
+        if (!(space instanceof OwnedSpace owned)) {
+            return null;
+        }
+        for (Entity e = owned.owner(); e != null; e = e.parent()) {
+            if (e == this) {
+                return null;
+            }
+        }
+        return owned.version();
+    }
+
     /**
      * Adds an entity to the City.
      * If the entity is a Building, Complex, Ensemble and has a permit, it is added to the list of entities in the City.
@@ -47,7 +213,12 @@ public class City implements Entity {
         if (entity instanceof City) throw new IllegalArgumentException("Cannot add a city to a city.");
         if (entity.hasPermit()) {
 
-            entities.add(entity);
+            boolean current = connectivity != null && connectivityVersion == graphVersion.value();
+            entities.add(entity); // changes graphVersion, since the entity is registered below the City
+            if (current) {
+                add(entity);
+                connectivityVersion = graphVersion.value(); // the index has seen the change
+            }
             return this;
         }
         throw new IllegalArgumentException("Cannot add an entity without a permit to a city.");
@@ -69,6 +240,7 @@ public class City implements Entity {
 
             entities.remove(entity);
             entity.deletePermit();
+            connectivity = null; // connections cannot be removed from the index
             return this;
         }
         throw new IllegalArgumentException("Cannot remove an entity that is not in the city.");
@@ -92,6 +264,26 @@ public class City implements Entity {
         return;
     }
 
+    /**
+     * A city is not contained in another entity.
+     *
+     * @return null
+     */
+    @Override
+    public Entity parent() {
+        return null;
+    }
+
+    /**
+     * Returns the counters of all entities of the City, in O(1).
+     *
+     * @return the statistics of the City
+     */
+    @Override
+    public EntityStatistics statistics() {
+        return statistics;
+    }
+
     /**
      * A city doesn't need a permit to exit, thus does nothing.
      */
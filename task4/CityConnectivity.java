@@ -0,0 +1,228 @@
+import java.util.*;
+
+/**
+ * CityConnectivity answers whether a space or a building is connected to a public road at all, without searching the
+ * graph: all spaces and roads of a city are kept in a disjoint-set forest, and two spaces are in the same set if
+ * there is a path of connections between them (in either direction). Every set knows whether it contains a road.
+ *
+ * The forest is stored in int arrays (parent and size per space) and uses union by size and path halving, so adding
+ * a connection and answering a query take nearly constant time. Connections can only be added; after connections
+ * were removed, e.g. with Exterior.remove(), or changed without the City, the index has to be built again (see
+ * City.connectivity()).
+ */
+public class CityConnectivity {
+
+    private final IdentityHashMap<Space, Integer> ids = new IdentityHashMap<>();
+    private Space[] spaces = new Space[64];
+    private int[] parent = new int[64];
+    private int[] size = new int[64];
+    private final BitSet roads = new BitSet(); // per root: the set contains a road
+    private int count = 0;
+    private int sets = 0;
+
+    /**
+     * Adds all spaces of the entity and everything connected to them.
+     *
+     * @param entity a City, Ensemble, Complex or Building
+     */
+    public void add(Entity entity) {
+        if (entity instanceof Building building) {
+            for (Space space : building.spaces()) {
+                add(space);
+            }
+        } else if (entity instanceof Complex complex) {
+            for (Building building : complex.buildings()) {
+                add(building);
+            }
+            for (Exterior exterior : complex.spaces()) {
+                add(exterior);
+            }
+        } else if (entity instanceof Ensemble ensemble) {
+            for (Entity part : ensemble.entities()) {
+                add(part);
+            }
+        } else if (entity instanceof City city) {
+            for (Entity part : city.entities()) {
+                add(part);
+            }
+        }
+    }
+
+    /**
+     * Adds the space, all spaces reachable from it and their connections.
+     *
+     * @param space the space
+     */
+    public void add(Space space) {
+        if (space == null || ids.containsKey(space)) {
+            return;
+        }
+        List<Space> added = new ArrayList<>();
+        added.add(space);
+        id(space);
+        for (int i = 0; i < added.size(); i++) { // added grows while new spaces are discovered
+            Space current = added.get(i);
+            List<Space> connected = current instanceof Circulation circulation ? circulation.getConnectedSpaces() : null;
+            if (connected == null) {
+                continue;
+            }
+            for (Space neighbor : connected) {
+                if (neighbor == null) {
+                    continue;
+                }
+                if (!ids.containsKey(neighbor)) {
+                    added.add(neighbor);
+                }
+                union(id(current), id(neighbor));
+            }
+        }
+    }
+
+    /**
+     * Records a connection between two spaces; spaces that are not part of the index yet are added.
+     *
+     * @param from the space the connection starts at
+     * @param to the connected space
+     */
+    public void connect(Space from, Space to) {
+        if (from == null || to == null) { throw new IllegalArgumentException("Spaces must not be null."); }
+        add(from);
+        add(to);
+        union(ids.get(from), ids.get(to));
+    }
+
+    /**
+     * Returns true if there is a path of connections between the space and a public road.
+     *
+     * @param space the space
+     * @return true if the space is connected to a road, false if not or if the space is unknown
+     */
+    public boolean isConnectedToRoad(Space space) {
+        Integer id = ids.get(space);
+        return id != null && roads.get(find(id));
+    }
+
+    /**
+     * Returns true if at least one space of the building that is not itself a road is connected to a public road.
+     *
+     * @param building the building
+     * @return true if the building is connected to a road
+     */
+    public boolean isConnectedToRoad(Building building) {
+        for (Space space : building.spaces()) {
+            if (!(space instanceof PublicRoad) && isConnectedToRoad(space)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if there is a path of connections between the two spaces.
+     *
+     * @param a a space
+     * @param b another space
+     * @return true if both spaces are known and in the same set
+     */
+    public boolean isConnected(Space a, Space b) {
+        Integer x = ids.get(a);
+        Integer y = ids.get(b);
+        return x != null && y != null && find(x) == find(y);
+    }
+
+    /**
+     * @return the number of spaces and roads in the index
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns a space of the index; ids are given in the order the spaces were added, from 0 to size() - 1.
+     *
+     * @param id the id of the space
+     * @return the space
+     */
+    Space space(int id) {
+        return spaces[id];
+    }
+
+    /**
+     * @return the number of connected sets, with or without a road
+     */
+    public int components() {
+        return sets;
+    }
+
+    /**
+     * Returns the islands of the city: the sets of connected spaces without any public road,
+     * found in one pass over all spaces.
+     *
+     * @return the islands, each with its spaces in the order they were added
+     */
+    public List<List<Space>> islands() {
+        int[] island = new int[count]; // island index + 1 per root, 0 if not seen yet
+        List<List<Space>> islands = new ArrayList<>();
+        for (int v = 0; v < count; v++) {
+            int root = find(v);
+            if (roads.get(root)) {
+                continue;
+            }
+            if (island[root] == 0) {
+                islands.add(new ArrayList<>());
+                island[root] = islands.size();
+            }
+            islands.get(island[root] - 1).add(spaces[v]);
+        }
+        return islands;
+    }
+
+    private int id(Space space) {
+        Integer id = ids.get(space);
+        if (id != null) {
+            return id;
+        }
+        if (count == parent.length) {
+            spaces = Arrays.copyOf(spaces, 2 * count);
+            parent = Arrays.copyOf(parent, 2 * count);
+            size = Arrays.copyOf(size, 2 * count);
+        }
+        int v = count++;
+        ids.put(space, v);
+        spaces[v] = space;
+        parent[v] = v;
+        size[v] = 1;
+        sets++;
+        if (space instanceof PublicRoad) {
+            roads.set(v);
+        }
+        return v;
+    }
+
+    private int find(int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]]; // path halving
+            v = parent[v];
+        }
+        return v;
+    }
+
+    private void union(int a, int b) {
+        int x = find(a);
+        int y = find(b);
+        if (x == y) {
+            return;
+        }
+        if (size[x] < size[y]) {
+            int swap = x;
+            x = y;
+            y = swap;
+        }
+        parent[y] = x;
+        size[x] += size[y];
+        if (roads.get(y)) {
+            roads.set(x);
+        }
+        sets--;
+    }
+}
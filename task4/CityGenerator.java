@@ -0,0 +1,156 @@
+import java.util.*;
+
+/**
+ * A CityGenerator creates synthetic cities for tests and benchmarks. All random choices come from one seeded Random,
+ * so the same seed always creates the same city.
+ *
+ * The generator is rejection-free: the quality parameters of the rooms are sampled from ranges that always pass the
+ * checks of ServedSpace and ServantSpace, and lifts are only created between rooms on different floors, so no
+ * constructor ever throws and no attempt is repeated. Nothing is printed, so cities with millions of spaces are
+ * generated in time proportional to their size.
+ *
+ * Every building has 1 to MAX_FLOORS floors. Each floor has a staircase (a servant space) that is connected in both
+ * directions to the served rooms of the floor and to the staircases above and below; the staircase of the ground
+ * floor is connected to a public road, so every room has an escape of less than 10 spaces. The ground floor also has
+ * an entrance (an exterior exit) on the road, and buildings with more than one floor get a lift between the lowest and
+ * the highest staircase.
+ * Some buildings are grouped into complexes with a courtyard.
+ */
+public class CityGenerator {
+
+    public static final int MAX_FLOORS = 8;         // so every escape is shorter than EscapeCoverage.MAX_LENGTH
+    public static final int MIN_ROOMS = 5;          // served rooms per building
+    public static final int MAX_ROOMS = 9;
+    public static final int BUILDINGS_PER_ROAD = 4;
+    public static final double COMPLEX_SHARE = 0.1; // share of the buildings that are part of a complex
+
+    private static final double ROOM_SPACING = 6.0; // metres between the positions of neighboring rooms
+
+    private final Random random;
+
+    /**
+     * Constructs a generator.
+     *
+     * @param seed the seed of all random choices
+     */
+    public CityGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Generates a city with the given number of buildings and one public road per BUILDINGS_PER_ROAD buildings.
+     *
+     * @param buildings the number of buildings, >= 0
+     * @return the new city
+     */
+    public City city(int buildings) {
+        if (buildings < 0) { throw new IllegalArgumentException("The number of buildings is negative."); }
+        City city = new City();
+        List<PublicRoad> roads = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, buildings / BUILDINGS_PER_ROAD); i++) {
+            PublicRoad road = new PublicRoad();
+            roads.add(road);
+            city.addRoad(road);
+        }
+
+        int built = 0;
+        while (built < buildings) {
+            PublicRoad road = roads.get(random.nextInt(roads.size()));
+            int group = random.nextDouble() < COMPLEX_SHARE ? Math.min(2 + random.nextInt(3), buildings - built) : 1;
+            if (group < 2) {
+                city.addEntity(building(road));
+                built++;
+                continue;
+            }
+            List<Building> members = new ArrayList<>();
+            for (int i = 0; i < group; i++) {
+                members.add(building(road));
+            }
+            Complex complex = new Complex(members, new ArrayList<>());
+            Exterior courtyard = new Exterior(complex);
+            courtyard.addConnection(road);
+            complex.addSpace(courtyard);
+            city.addEntity(complex);
+            built += group;
+        }
+        return city;
+    }
+
+    /**
+     * Generates a building whose ground floor is connected to the given road.
+     *
+     * @param road the road in front of the building
+     * @return the new building
+     */
+    public Building building(PublicRoad road) {
+        Building building = new Building();
+        int floors = 1 + random.nextInt(MAX_FLOORS);
+        int rooms = MIN_ROOMS + random.nextInt(MAX_ROOMS - MIN_ROOMS + 1);
+        List<Space> spaces = new ArrayList<>(rooms + floors + 2);
+
+        ServantSpace[] staircases = new ServantSpace[floors];
+        for (int floor = 0; floor < floors; floor++) {
+            staircases[floor] = servantSpace(random, floor);
+            staircases[floor].setPosition(new Vec2(0.0, 0.0));
+            if (floor > 0) {
+                staircases[floor].addConnectedSpace(staircases[floor - 1]);
+                staircases[floor - 1].addConnectedSpace(staircases[floor]);
+            }
+            spaces.add(staircases[floor]);
+        }
+        for (int i = 0; i < rooms; i++) {
+            int floor = i % floors;
+            ServedSpace room = servedSpace(random, floor);
+            room.setPosition(new Vec2(ROOM_SPACING * (i / floors + 1), 0.0));
+            room.addConnectedSpace(staircases[floor]);
+            staircases[floor].addConnectedSpace(room);
+            spaces.add(room);
+        }
+
+        staircases[0].addConnectedSpace(road);
+        Exterior entrance = new Exterior(building, true);
+        staircases[0].addConnectedSpace(entrance);
+        entrance.addConnection(road);
+        spaces.add(entrance);
+
+        if (floors > 1) {
+            Lift lift = new Lift(new ArrayList<>(List.of(staircases[0], staircases[floors - 1])));
+            staircases[0].addConnectedSpace(lift);
+            staircases[floors - 1].addConnectedSpace(lift);
+            spaces.add(lift);
+        }
+        building.addSpace(spaces);
+        return building;
+    }
+
+    /**
+     * Samples a served space whose quality parameters always meet the requirements of ServedSpace:
+     * natural lighting in [5, 10), ventilation in [3, 5), heating in [2, 5), minimum height in [2.5, 3.5),
+     * a movement area of 10 to 30 metres per side and a window of at least 1.1 by 1.1 metres.
+     *
+     * @param random the source of the random choices
+     * @param floor the floor of the space
+     * @return the new served space
+     */
+    public static ServedSpace servedSpace(Random random, int floor) {
+        return new ServedSpace(floor, random.nextBoolean(),
+                5.0 + 5.0 * random.nextDouble(),
+                3.0 + 2.0 * random.nextDouble(),
+                2.0 + 3.0 * random.nextDouble(),
+                2.5 + random.nextDouble(),
+                new Vec2(10.0 + 20.0 * random.nextDouble(), 10.0 + 20.0 * random.nextDouble()),
+                new Vec2(1.1 + random.nextDouble(), 1.1 + random.nextDouble()));
+    }
+
+    /**
+     * Samples a servant space with a window of at least 1.1 by 1.1 metres, which always meets the requirements of
+     * ServantSpace.
+     *
+     * @param random the source of the random choices
+     * @param floor the floor of the space
+     * @return the new servant space
+     */
+    public static ServantSpace servantSpace(Random random, int floor) {
+        return new ServantSpace(floor, new Vec2(1.1 + random.nextDouble(), 1.1 + random.nextDouble()));
+    }
+}
@@ -9,22 +9,25 @@ import java.util.List;
  */
 public class Complex implements Entity {
 
-    private List<Building> buildings;
+    private final EntityRegistry<Building> buildings = new EntityRegistry<>(this);
     private List<Exterior> exteriorSpaces;
+    private final EntityStatistics statistics = new EntityStatistics();
     private boolean hasPermit = true;
+    private Entity parent;
 
     // Constructors
     public Complex() {
-        buildings = new ArrayList<>();
         exteriorSpaces = new ArrayList<>();
     }
     public Complex(List<Building> buildings, List<Exterior> exteriorSpaces) {
-        this.buildings = buildings;
+        this.buildings.addAll(buildings);
         this.exteriorSpaces = exteriorSpaces;
+        EntityStatistics.apply(this, EntityStatistics.of(exteriorSpaces), 1);
     }
 
     /**
      * Returns the list of buildings in the complex.
+     * The list supports contains and remove in O(1).
      *
      * @return the list of buildings in the complex
      */
@@ -43,6 +46,20 @@ public class Complex implements Entity {
         return exteriorSpaces;
     }
 
+    /**
+     * Adds an exterior space, e.g. a courtyard, to the complex.
+     * Exterior spaces should be added this way instead of through spaces(), so they are counted in the statistics.
+     *
+     * @param exterior the exterior space to be added
+     */
+    public void addSpace(Exterior exterior) {
+        exteriorSpaces.add(exterior);
+        EntityStatistics change = new EntityStatistics();
+        change.count(exterior);
+        EntityStatistics.apply(this, change, 1);
+        City.graphChanged(this);
+    }
+
     /**
      * Adds a Building to this Complex.
      * If the entity is a Building and has a permit, it is added to the list of buildings in the Complex.
@@ -89,12 +106,14 @@ public class Complex implements Entity {
 
                 Building myBuilding = buildings.get(0);
 
-                // add exterior spaces to the building
+                // add exterior spaces to the building, where they are counted instead
+                EntityStatistics.apply(this, EntityStatistics.of(exteriorSpaces), -1);
                 for (Exterior exteriorSpace : exteriorSpaces) {
                     myBuilding.addSpace(exteriorSpace);
                 }
                 buildings.clear();
                 exteriorSpaces.clear();
+                EntityRegistry.replaceInParent(this, myBuilding); // the building takes the place of the complex
 
                 return myBuilding; // complex is transformed in building, return building
             }
@@ -125,6 +144,33 @@ public class Complex implements Entity {
         hasPermit = false;
     }
 
+    /**
+     * Returns the entity this entity is contained in.
+     *
+     * @return the containing entity, or null if the entity is not contained in another entity
+     */
+    @Override
+    public Entity parent() {
+        return parent;
+    }
+
+    /**
+     * Returns the counters of the buildings and exterior spaces of the complex.
+     *
+     * @return the statistics of the complex
+     */
+    @Override
+    public EntityStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets the containing entity; only called by EntityRegistry.
+     */
+    void setParent(Entity parent) {
+        this.parent = parent;
+    }
+
     /**
      * Grants a permit to the Complex.
      */
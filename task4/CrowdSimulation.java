@@ -0,0 +1,283 @@
+import java.util.*;
+
+/**
+ * A CrowdSimulation estimates how long it takes to evacuate a building or complex, by moving the occupants along the
+ * escape paths in time steps (ticks) of TICK_SECONDS.
+ *
+ * Every space has a number of occupants, a holding capacity and an outflow rate. In every tick, the occupants of a
+ * space move on to the next space of its escape path (see EscapeIndex, so lifts are never used), limited by the
+ * outflow rate of the space and the free room of the next space; the occupants of an exit leave the building.
+ * Outflow rates follow EvacuationCapacity (persons per minute and metre of width); fractions of a person are carried
+ * over to the next tick. Occupants of spaces without escape are stranded and never move.
+ *
+ * The spaces are processed in ascending escape distance, so room freed near the exits is used in the same tick and
+ * every occupant moves at most one space per tick. Only spaces with occupants are visited: for every distance there is
+ * an active list, all stored as segments of a single int array.
+ */
+public class CrowdSimulation {
+
+    public static final double TICK_SECONDS = 1.0;
+    public static final double MAX_DENSITY = 2.0;   // persons per square metre of movement area
+    public static final int DEFAULT_HOLDING = 20;   // persons in a space without movement area
+
+    private final SpaceGraph graph;
+    private final int[] distance;
+    private final int[] next;
+
+    private final int[] occupants;
+    private final int[] holding;
+    private final double[] rate;   // persons per tick that can leave the space
+    private final double[] credit; // fraction of a person that may leave in the next tick
+
+    // active spaces of distance d: activeSpaces[levelStart[d]] to activeSpaces[levelStart[d] + activeCount[d] - 1]
+    private final int[] levelStart;
+    private final int[] activeCount;
+    private final int[] activeSpaces;
+    private final boolean[] active;
+
+    private long ticks = 0;
+    private long evacuated = 0;
+    private long inside = 0; // occupants of spaces with escape
+
+    /**
+     * Prepares the simulation of all spaces of the graph. Served spaces are occupied with one person per
+     * EvacuationCapacity.AREA_PER_OCCUPANT square metres of movement area, all other spaces are empty.
+     *
+     * @param graph the compiled graph
+     */
+    public CrowdSimulation(SpaceGraph graph) {
+        if (graph == null) { throw new IllegalArgumentException("The graph is null."); }
+        this.graph = graph;
+        int n = graph.size();
+        EscapeIndex index = EscapeIndex.build(graph);
+        distance = new int[n];
+        next = new int[n];
+        occupants = new int[n];
+        holding = new int[n];
+        rate = new double[n];
+        credit = new double[n];
+        active = new boolean[n];
+
+        int levels = 0;
+        for (int v = 0; v < n; v++) {
+            distance[v] = index.distance(v);
+            next[v] = index.next(v);
+            levels = Math.max(levels, distance[v] + 1);
+
+            Space space = graph.space(v);
+            double area = graph.movementArea(v);
+            holding[v] = space instanceof Exterior ? Integer.MAX_VALUE
+                    : area > 0 ? Math.max(1, (int) (area * MAX_DENSITY)) : DEFAULT_HOLDING;
+            double width = EvacuationCapacity.width(space);
+            rate[v] = width < 0 ? 0.0 : width == Double.POSITIVE_INFINITY ? Double.POSITIVE_INFINITY
+                    : EvacuationCapacity.capacity(width) * TICK_SECONDS / 60.0;
+            if (space instanceof ServedSpace) {
+                occupants[v] = (int) Math.ceil(area / EvacuationCapacity.AREA_PER_OCCUPANT);
+            }
+        }
+
+        levelStart = new int[levels + 1];
+        for (int v = 0; v < n; v++) {
+            if (distance[v] >= 0) {
+                levelStart[distance[v] + 1]++;
+            }
+        }
+        for (int d = 0; d < levels; d++) {
+            levelStart[d + 1] += levelStart[d];
+        }
+        activeCount = new int[levels];
+        activeSpaces = new int[levelStart[levels]];
+        for (int v = 0; v < n; v++) {
+            activate(v);
+            if (distance[v] >= 0) {
+                inside += occupants[v];
+            }
+        }
+    }
+
+    /**
+     * Prepares the simulation of a building.
+     *
+     * @param building the building
+     * @return the simulation
+     */
+    public static CrowdSimulation of(Building building) {
+        return new CrowdSimulation(building.compileGraph());
+    }
+
+    /**
+     * Prepares the simulation of a complex: the spaces of all its buildings and its exterior spaces.
+     *
+     * @param complex the complex
+     * @return the simulation
+     */
+    public static CrowdSimulation of(Complex complex) {
+        List<Space> spaces = new ArrayList<>();
+        for (Building building : complex.buildings()) {
+            spaces.addAll(building.spaces());
+        }
+        spaces.addAll(complex.spaces());
+        return new CrowdSimulation(SpaceGraph.compile(spaces));
+    }
+
+    /**
+     * Sets the number of occupants of a space, e.g. for a fully occupied lecture hall.
+     *
+     * @param space the space
+     * @param count the number of occupants
+     *
+     * Precondition: The space is part of the simulation, count >= 0, the simulation has not started yet.
+     */
+    public void setOccupants(Space space, int count) {
+        int v = graph.indexOf(space);
+        if (v < 0 || count < 0) { throw new IllegalArgumentException("Unknown space or negative number of occupants."); }
+        if (ticks > 0) { throw new IllegalStateException("The simulation has already started."); }
+        if (distance[v] >= 0) {
+            inside += count - occupants[v];
+        }
+        occupants[v] = count;
+        activate(v);
+    }
+
+    /**
+     * Returns the current number of occupants of a space.
+     *
+     * @param space the space
+     * @return the number of occupants, 0 if the space is not part of the simulation
+     */
+    public int occupants(Space space) {
+        int v = graph.indexOf(space);
+        return v < 0 ? 0 : occupants[v];
+    }
+
+    /**
+     * Simulates one tick.
+     *
+     * @return the number of persons that moved or left the building
+     */
+    public long step() {
+        ticks++;
+        long moved = 0;
+        for (int d = 0; d < activeCount.length; d++) {
+            int start = levelStart[d];
+            // moving only activates spaces of distance d - 1, which have been processed already
+            for (int i = start; i < start + activeCount[d]; i++) {
+                moved += move(activeSpaces[i]);
+            }
+            // keep only the spaces that still have occupants
+            int kept = start;
+            for (int i = start; i < start + activeCount[d]; i++) {
+                int v = activeSpaces[i];
+                if (occupants[v] > 0) {
+                    activeSpaces[kept++] = v;
+                } else {
+                    active[v] = false;
+                    credit[v] = 0.0;
+                }
+            }
+            activeCount[d] = kept - start;
+        }
+        return moved;
+    }
+
+    /**
+     * Moves the occupants of one space to the next space of its escape path, or out of the building.
+     */
+    private int move(int v) {
+        credit[v] = Math.min(credit[v] + rate[v], Math.max(rate[v], 1.0));
+        int count = credit[v] == Double.POSITIVE_INFINITY ? occupants[v] : (int) Math.min(occupants[v], credit[v]);
+        int target = next[v];
+        if (target >= 0) {
+            count = Math.min(count, holding[target] - occupants[target]);
+        }
+        if (count <= 0) {
+            return 0;
+        }
+        occupants[v] -= count;
+        if (credit[v] != Double.POSITIVE_INFINITY) {
+            credit[v] -= count;
+        }
+        if (target >= 0) {
+            occupants[target] += count;
+            activate(target);
+        } else {
+            evacuated += count;
+            inside -= count;
+        }
+        return count;
+    }
+
+    private void activate(int v) {
+        if (occupants[v] > 0 && !active[v] && distance[v] >= 0) {
+            active[v] = true;
+            int d = distance[v];
+            activeSpaces[levelStart[d] + activeCount[d]++] = v;
+        }
+    }
+
+    /**
+     * Runs the simulation until everybody who can escape has left the building.
+     *
+     * @param maxTicks the maximum number of ticks to simulate
+     * @return the result
+     */
+    public Result run(long maxTicks) {
+        while (ticks < maxTicks && inside > 0) {
+            step();
+        }
+        return new Result(ticks, evacuated, inside, stranded());
+    }
+
+    private long stranded() {
+        long stranded = 0;
+        for (int v = 0; v < occupants.length; v++) {
+            if (distance[v] < 0) {
+                stranded += occupants[v];
+            }
+        }
+        return stranded;
+    }
+
+    /**
+     * The result of a simulation run.
+     */
+    public static final class Result {
+
+        private final long ticks;
+        private final long evacuated;
+        private final long remaining;
+        private final long stranded;
+
+        private Result(long ticks, long evacuated, long remaining, long stranded) {
+            this.ticks = ticks;
+            this.evacuated = evacuated;
+            this.remaining = remaining;
+            this.stranded = stranded;
+        }
+
+        /**
+         * @return the simulated time in seconds, the evacuation time if remaining() is 0
+         */
+        public double seconds() { return ticks * TICK_SECONDS; }
+
+        /**
+         * @return the number of persons that left the building
+         */
+        public long evacuated() { return evacuated; }
+
+        /**
+         * @return the number of persons that could escape but were still inside when the run stopped
+         */
+        public long remaining() { return remaining; }
+
+        /**
+         * @return the number of persons in spaces without escape
+         */
+        public long stranded() { return stranded; }
+
+        @Override
+        public String toString() {
+            return evacuated + " evacuated in " + seconds() + " s, " + remaining + " remaining, " + stranded + " stranded";
+        }
+    }
+}
@@ -0,0 +1,421 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * DisjointEscapes finds up to k escape paths of a space that have no space in common except the space itself, so a
+ * fire or a blocked door in one of them does not block the others. Regulations require a second independent escape;
+ * Interior.alternativeEscape() only reports the window area, this class checks the escape paths themselves.
+ *
+ * The paths are found with the successive shortest paths method (the generalization of Suurballe's algorithm to k
+ * paths) on the compiled SpaceGraph: every space v is split into an entry v_in and a leaving v_out joined by a
+ * connection of capacity 1, so at most one path may pass through a space. A connection u -> w of the graph becomes
+ * u_out -> w_in with cost 1, every exit v gets v_out -> sink with cost 0. Each round finds the shortest path in the
+ * residual network from start_out to the sink (a queue-based Bellman-Ford search, because the reversed connections of
+ * earlier paths have cost -1) and adds it to the flow; a later path may reroute an earlier one. The k paths found
+ * together have the smallest possible total length, so they are not always the k shortest paths: the first path may
+ * be longer than the shortest escape if that is needed for a second path to exist.
+ * Like in Escape, the start may be any space, all following spaces must be escape routes (rooms, but no lifts).
+ *
+ * The network is built once in the constructor; a search only touches the connections of the spaces it visits and
+ * resets them afterwards, so one DisjointEscapes answers many queries with memory proportional to the graph. It is
+ * not thread-safe; audit() creates one per building.
+ */
+public class DisjointEscapes {
+
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    // buildings evaluated by one audit task without splitting further
+    private static final int THRESHOLD = 8;
+
+    private final SpaceGraph graph;
+    private final int sink;
+    // residual network in CSR form; connection e and e ^ 1 are the two directions of one connection
+    private final int[] first;       // first[x] is the first connection leaving network node x, -1 if none
+    private final int[] nextEdge;    // next connection leaving the same node, -1 at the end
+    private final int[] head;        // node the connection leads to
+    private final int[] cost;
+    private final int[] capacity;    // residual capacity, restored after every query
+
+    // search state, reset after every search
+    private final int[] distance;
+    private final int[] parentEdge;
+    private final boolean[] queued;
+    private final int[] queue;
+    private final int[] touched;
+    private int touchedCount = 0;
+    private int[] used = new int[16]; // connections whose capacity a query changed
+    private int usedCount = 0;
+
+    /**
+     * Constructs the search over a compiled graph.
+     *
+     * @param graph the compiled graph, e.g. Building.compileGraph()
+     */
+    public DisjointEscapes(SpaceGraph graph) {
+        if (graph == null) { throw new IllegalArgumentException("The graph is null."); }
+        this.graph = graph;
+        int n = graph.size();
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+
+        int connections = 0;
+        for (int v = 0; v < n; v++) {
+            connections += 1 + (graph.isExit(v) ? 1 : 0);
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                connections += graph.isEscapeRoute(targets[e]) ? 1 : 0;
+            }
+        }
+        sink = 2 * n;
+        first = new int[2 * n + 1];
+        Arrays.fill(first, -1);
+        nextEdge = new int[2 * connections];
+        head = new int[2 * connections];
+        cost = new int[2 * connections];
+        capacity = new int[2 * connections];
+
+        int e = 0;
+        for (int v = 0; v < n; v++) {
+            e = connect(e, 2 * v, 2 * v + 1, graph.isEscapeRoute(v) ? 1 : 0, 0);
+            if (graph.isExit(v)) {
+                e = connect(e, 2 * v + 1, sink, 1, 0);
+            }
+            for (int c = offsets[v]; c < offsets[v + 1]; c++) {
+                if (graph.isEscapeRoute(targets[c])) {
+                    e = connect(e, 2 * v + 1, 2 * targets[c], 1, 1);
+                }
+            }
+        }
+
+        distance = new int[2 * n + 1];
+        parentEdge = new int[2 * n + 1];
+        queued = new boolean[2 * n + 1];
+        queue = new int[2 * n + 1];
+        touched = new int[2 * n + 1];
+        Arrays.fill(distance, INFINITE);
+        Arrays.fill(parentEdge, -1);
+    }
+
+    /**
+     * Adds the connection from -> to and its reverse connection, and returns the index of the next free connection.
+     */
+    private int connect(int e, int from, int to, int capacity, int cost) {
+        head[e] = to;
+        this.capacity[e] = capacity;
+        this.cost[e] = cost;
+        nextEdge[e] = first[from];
+        first[from] = e;
+        head[e + 1] = from;
+        this.capacity[e + 1] = 0;
+        this.cost[e + 1] = -cost;
+        nextEdge[e + 1] = first[to];
+        first[to] = e + 1;
+        return e + 2;
+    }
+
+    /**
+     * Returns the graph the escapes are searched in.
+     *
+     * @return the compiled graph
+     */
+    public SpaceGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Finds up to k escapes of the space that have no space in common except the space itself.
+     *
+     * @param space the space to escape from
+     * @param k the maximal number of escapes, >= 1
+     * @return the escapes ordered by length, empty if the space has no escape or is not part of the graph
+     */
+    public List<Escape> escapes(Space space, int k) {
+        if (k < 1) { throw new IllegalArgumentException("k must be at least 1."); }
+        int start = graph.indexOf(space);
+        List<Escape> escapes = new ArrayList<>();
+        if (start < 0) {
+            return escapes;
+        }
+        for (int[] path : escapePaths(start, k)) {
+            ArrayList<Space> spaces = new ArrayList<>(path.length);
+            for (int v : path) {
+                spaces.add(graph.space(v));
+            }
+            escapes.add(new Escape(space, spaces));
+        }
+        return escapes;
+    }
+
+    /**
+     * Finds up to k escape paths from the space with the given index that have no space in common except the start.
+     *
+     * @param start the index of the first space of the paths
+     * @param k the maximal number of paths, >= 1
+     * @return the indices of the spaces on the paths from start to their exits, ordered by length
+     */
+    public int[][] escapePaths(int start, int k) {
+        if (k < 1) { throw new IllegalArgumentException("k must be at least 1."); }
+        if (start < 0 || start >= graph.size()) { throw new IllegalArgumentException("The start is not part of the graph."); }
+        int paths = 0;
+        while (paths < k && augment(start)) {
+            paths++;
+        }
+        int[][] result = new int[paths][];
+        int e = first[2 * start + 1];
+        for (int p = 0; p < paths; p++) {
+            // every path leaves start_out over one connection whose capacity was used
+            while (e % 2 != 0 || capacity[e] != 0) {
+                e = nextEdge[e];
+            }
+            result[p] = follow(start, e);
+            e = nextEdge[e];
+        }
+        for (int i = 0; i < usedCount; i++) {
+            capacity[used[i]] = used[i] % 2 == 0 ? 1 : 0;
+        }
+        usedCount = 0;
+        Arrays.sort(result, Comparator.comparingInt(path -> path.length));
+        return result;
+    }
+
+    /**
+     * Reads the path that leaves start_out over the connection e: from every space the flow continues over the only
+     * used connection leaving its out node.
+     */
+    private int[] follow(int start, int e) {
+        int[] path = new int[8];
+        int length = 0;
+        path[length++] = start;
+        while (head[e] != sink) {
+            int v = head[e] / 2; // head[e] is v_in, the flow continues from v_out
+            if (length == path.length) {
+                path = Arrays.copyOf(path, 2 * length);
+            }
+            path[length++] = v;
+            e = first[2 * v + 1];
+            while (e % 2 != 0 || capacity[e] != 0) {
+                e = nextEdge[e];
+            }
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    /**
+     * Searches the shortest path from start_out to the sink in the residual network and adds it to the flow.
+     * The entry of the start is never entered, so no path returns to it.
+     *
+     * @return false if there is no further path
+     */
+    private boolean augment(int start) {
+        int source = 2 * start + 1;
+        int blocked = 2 * start;
+        distance[source] = 0;
+        touched[touchedCount++] = source;
+        int headIndex = 0;
+        int size = 1;
+        queue[0] = source;
+        queued[source] = true;
+        while (size > 0) { // circular queue, a node is at most once in it
+            int x = queue[headIndex];
+            headIndex = headIndex + 1 == queue.length ? 0 : headIndex + 1;
+            size--;
+            queued[x] = false;
+            for (int e = first[x]; e >= 0; e = nextEdge[e]) {
+                int y = head[e];
+                if (capacity[e] == 0 || y == blocked || distance[x] + cost[e] >= distance[y]) {
+                    continue;
+                }
+                if (distance[y] == INFINITE) {
+                    touched[touchedCount++] = y;
+                }
+                distance[y] = distance[x] + cost[e];
+                parentEdge[y] = e;
+                if (!queued[y] && y != sink) {
+                    queued[y] = true;
+                    int tail = headIndex + size;
+                    queue[tail >= queue.length ? tail - queue.length : tail] = y;
+                    size++;
+                }
+            }
+        }
+
+        boolean found = distance[sink] != INFINITE;
+        if (found) {
+            for (int y = sink; y != source; y = head[parentEdge[y] ^ 1]) {
+                int e = parentEdge[y];
+                capacity[e]--;
+                capacity[e ^ 1]++;
+                use(e);
+                use(e ^ 1);
+            }
+        }
+        for (int i = 0; i < touchedCount; i++) {
+            distance[touched[i]] = INFINITE;
+            parentEdge[touched[i]] = -1;
+        }
+        touchedCount = 0;
+        return found;
+    }
+
+    private void use(int e) {
+        if (usedCount == used.length) {
+            used = Arrays.copyOf(used, 2 * usedCount);
+        }
+        used[usedCount++] = e;
+    }
+
+    /**
+     * The result of a redundancy audit. Reports of parts of a city are merged into the report of the city.
+     */
+    public static final class Report {
+
+        private final int k;
+        private int rooms = 0;
+        private final List<Room> roomsWithoutSecondEscape = new ArrayList<>();
+        // histogram[c] is the number of rooms with c disjoint escapes shorter than EscapeCoverage.MAX_LENGTH
+        private final int[] histogram;
+
+        private Report(int k) {
+            this.k = k;
+            histogram = new int[k + 1];
+        }
+
+        private void add(Room room, int escapes) {
+            rooms++;
+            if (escapes < 2) {
+                roomsWithoutSecondEscape.add(room);
+            }
+            histogram[escapes]++;
+        }
+
+        private Report merge(Report other) {
+            rooms += other.rooms;
+            roomsWithoutSecondEscape.addAll(other.roomsWithoutSecondEscape);
+            for (int i = 0; i <= k; i++) {
+                histogram[i] += other.histogram[i];
+            }
+            return this;
+        }
+
+        /**
+         * @return the number of audited rooms
+         */
+        public int rooms() {
+            return rooms;
+        }
+
+        /**
+         * Returns the rooms with less than two disjoint escapes shorter than EscapeCoverage.MAX_LENGTH.
+         *
+         * @return the rooms without a second independent escape, an unmodifiable list
+         */
+        public List<Room> roomsWithoutSecondEscape() {
+            return Collections.unmodifiableList(roomsWithoutSecondEscape);
+        }
+
+        /**
+         * Returns the number of rooms with the given number of disjoint escapes shorter than EscapeCoverage.MAX_LENGTH.
+         *
+         * @param escapes the number of escapes, 0 to k
+         * @return the number of rooms
+         */
+        public int count(int escapes) {
+            return escapes >= 0 && escapes <= k ? histogram[escapes] : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(rooms).append(" rooms, ").append(roomsWithoutSecondEscape.size()).append(" without second escape");
+            for (int escapes = 0; escapes <= k; escapes++) {
+                builder.append(escapes == 0 ? "\n" : ", ").append(escapes).append(" escapes: ").append(histogram[escapes]);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Audits a range of buildings, splitting it while it is larger than THRESHOLD.
+     */
+    private static final class BuildingTask extends RecursiveTask<Report> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Building[] buildings; // tasks are never serialized
+        private final int from;
+        private final int to;
+        private final int k;
+
+        BuildingTask(Building[] buildings, int from, int to, int k) {
+            this.buildings = buildings;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+        }
+
+        @Override
+        protected Report compute() {
+            if (to - from <= THRESHOLD) {
+                Report report = new Report(k);
+                for (int i = from; i < to; i++) {
+                    audit(buildings[i], k, report);
+                }
+                return report;
+            }
+            int middle = (from + to) >>> 1;
+            BuildingTask left = new BuildingTask(buildings, from, middle, k);
+            left.fork();
+            Report right = new BuildingTask(buildings, middle, to, k).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Counts the disjoint escapes of all rooms of the entity in parallel on the common ForkJoinPool.
+     *
+     * @param entity a City, Ensemble, Complex or Building
+     * @param k the maximal number of escapes per room, >= 2
+     * @return the redundancy report
+     */
+    public static Report audit(Entity entity, int k) {
+        return audit(List.of(entity), k, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Counts the disjoint escapes of all rooms of the entities in parallel on the given pool.
+     * Only escapes shorter than EscapeCoverage.MAX_LENGTH are counted.
+     *
+     * @param entities the entities, e.g. the entities of a City
+     * @param k the maximal number of escapes per room, >= 2
+     * @param pool the pool the buildings are evaluated on
+     * @return the redundancy report
+     *
+     * Precondition: entities and pool are not null.
+     */
+    public static Report audit(Collection<? extends Entity> entities, int k, ForkJoinPool pool) {
+        if (entities == null || pool == null) { throw new IllegalArgumentException("Entities and pool must not be null."); }
+        if (k < 2) { throw new IllegalArgumentException("k must be at least 2."); }
+        Set<Building> buildings = new LinkedHashSet<>(); // buildings have identity equality
+        for (Entity entity : entities) {
+            EscapeCoverage.collect(entity, buildings);
+        }
+        Building[] array = buildings.toArray(new Building[0]);
+        return pool.invoke(new BuildingTask(array, 0, array.length, k));
+    }
+
+    /**
+     * Adds the number of disjoint escapes of all rooms of the building to the report.
+     */
+    private static void audit(Building building, int k, Report report) {
+        DisjointEscapes search = new DisjointEscapes(building.compileGraph());
+        for (Space space : building.spaces()) {
+            if (space instanceof Room room && !(space instanceof Lift)) {
+                int escapes = 0;
+                for (int[] path : search.escapePaths(search.graph.indexOf(space), k)) {
+                    escapes += path.length < EscapeCoverage.MAX_LENGTH ? 1 : 0;
+                }
+                report.add(room, escapes);
+            }
+        }
+    }
+}
@@ -0,0 +1,493 @@
+import java.util.*;
+
+/**
+ * A DynamicEscapeIndex keeps the escape distances and next spaces of all spaces of a building up to date while
+ * connections are added and removed, repairing only the region of the graph whose distances actually change.
+ *
+ * Unlike EscapeIndex, which is rebuilt from scratch after every change, it works on its own copy of the connections,
+ * so planning tools can block and reopen corridors thousands of times without touching the spaces: connect,
+ * disconnect and isolate change only the copy. Changes made to the spaces afterwards are not seen by the copy.
+ *
+ * The distances follow the rules of Escape: an exit has distance 0, any other space has distance 1 + the smallest
+ * distance of the escape routes (rooms, but no lifts) it is connected to. Served and servant spaces are exits as long
+ * as they are connected to a PublicRoad, the exit flag of all other spaces is taken over when the index is built.
+ * - Adding a connection can only decrease distances. They are propagated backwards from the new connection in
+ *   breadth-first order, visiting only the spaces that get shorter.
+ * - Removing a connection (or an exit) can only increase distances. The spaces that lost their last neighbor one
+ *   level closer to an exit are collected level by level; only these are given new distances, with a search that
+ *   starts at their unaffected neighbors.
+ */
+public class DynamicEscapeIndex {
+
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    private final IdentityHashMap<Space, Integer> indices = new IdentityHashMap<>();
+    private Space[] spaces;
+    private int size = 0;
+
+    // dynamic adjacency lists in both directions; a connection that exists twice is stored twice
+    private int[][] out;
+    private int[] outSize;
+    private int[][] in;
+    private int[] inSize;
+
+    private final BitSet escapeRoutes = new BitSet();
+    private final BitSet interiors = new BitSet();   // spaces that are exits exactly when connected to a road
+    private final BitSet roads = new BitSet();
+    private final BitSet fixedExits = new BitSet();  // exits whose flag does not depend on connections
+    private int[] roadConnections;
+
+    private int[] distance;
+    private int[] next;
+
+    // work space of the repairs, reused between changes
+    private int[] queue;
+    private final BitSet affected = new BitSet();
+    private final BitSet queued = new BitSet();
+    private IndexedHeap heap;
+
+    /**
+     * Builds the index for the spaces of a building and all spaces connected to them.
+     *
+     * @param building the building
+     * @return the dynamic escape index of the building
+     */
+    public static DynamicEscapeIndex of(Building building) {
+        return new DynamicEscapeIndex(building.compileGraph());
+    }
+
+    /**
+     * Builds the index from a compiled graph, with one multi-source search like EscapeIndex.
+     *
+     * @param graph the compiled graph
+     */
+    public DynamicEscapeIndex(SpaceGraph graph) {
+        if (graph == null) { throw new IllegalArgumentException("The graph is null."); }
+        int n = graph.size();
+        int capacity = Math.max(n, 16);
+        spaces = new Space[capacity];
+        out = new int[capacity][];
+        outSize = new int[capacity];
+        in = new int[capacity][];
+        inSize = new int[capacity];
+        roadConnections = new int[capacity];
+        distance = new int[capacity];
+        next = new int[capacity];
+        queue = new int[capacity];
+
+        for (int v = 0; v < n; v++) {
+            add(graph.space(v));
+        }
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                link(v, targets[e]);
+            }
+        }
+
+        EscapeIndex index = EscapeIndex.build(graph);
+        for (int v = 0; v < n; v++) {
+            distance[v] = index.distance(v) < 0 ? INFINITE : index.distance(v);
+            next[v] = index.next(v);
+        }
+    }
+
+    /**
+     * Returns the number of spaces in the index.
+     *
+     * @return the number of spaces
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of steps from the space to the nearest exit, 0 for an exit.
+     *
+     * @param space the space
+     * @return the escape distance, or -1 if the space has no escape or is not part of the index
+     */
+    public int distance(Space space) {
+        Integer v = indices.get(space);
+        return v == null || distance[v] == INFINITE ? -1 : distance[v];
+    }
+
+    /**
+     * Adds the escape path of the space, starting with the space itself, to the given list.
+     * Nothing is added if the space has no escape or is not part of the index.
+     *
+     * @param space the space
+     * @param path the list the spaces of the path are added to
+     */
+    public void escapePath(Space space, List<Space> path) {
+        Integer start = indices.get(space);
+        if (start == null || distance[start] == INFINITE) {
+            return;
+        }
+        for (int v = start; v >= 0; v = next[v]) {
+            path.add(spaces[v]);
+        }
+    }
+
+    /**
+     * Returns the current escape of the space.
+     *
+     * @param space the space
+     * @return the escape, with length 0 if the space has no escape
+     */
+    public Escape escape(Space space) {
+        ArrayList<Space> path = new ArrayList<>();
+        escapePath(space, path);
+        return new Escape(space, path);
+    }
+
+    /**
+     * Adds a connection from one space to another, like from.addConnectedSpace(to) would.
+     * Spaces that are not part of the index yet are added, together with their own connections.
+     *
+     * @param from the space the connection starts at
+     * @param to the connected space
+     *
+     * Precondition: from is a Circulation, to is not null.
+     * Postcondition: All distances are those of the changed graph.
+     */
+    public void connect(Space from, Space to) {
+        if (!(from instanceof Circulation) || to == null) {
+            throw new IllegalArgumentException("Only circulations can be connected to a space.");
+        }
+        insert(indexOf(from), indexOf(to));
+    }
+
+    /**
+     * Removes one connection from one space to another.
+     *
+     * @param from the space the connection starts at
+     * @param to the connected space
+     * @return true if the connection existed
+     *
+     * Postcondition: All distances are those of the changed graph.
+     */
+    public boolean disconnect(Space from, Space to) {
+        Integer u = indices.get(from);
+        Integer w = indices.get(to);
+        if (u == null || w == null || !unlink(u, w)) {
+            return false;
+        }
+        removed(u, w);
+        return true;
+    }
+
+    /**
+     * Removes all connections from and to the space, e.g. to block it during a renovation.
+     * The space stays part of the index and can be connected again.
+     *
+     * @param space the space
+     *
+     * Postcondition: All distances are those of the changed graph.
+     */
+    public void isolate(Space space) {
+        Integer v = indices.get(space);
+        if (v == null) {
+            return;
+        }
+        while (outSize[v] > 0) {
+            int w = out[v][outSize[v] - 1];
+            unlink(v, w);
+            removed(v, w);
+        }
+        while (inSize[v] > 0) {
+            int u = in[v][inSize[v] - 1];
+            unlink(u, v);
+            removed(u, v);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // graph
+
+    /**
+     * Returns the index of the space. A new space is added together with all new spaces reachable from it,
+     * then their connections are inserted one by one.
+     */
+    private int indexOf(Space space) {
+        Integer index = indices.get(space);
+        if (index != null) {
+            return index;
+        }
+        List<Integer> added = new ArrayList<>();
+        List<List<Space>> connections = new ArrayList<>();
+        added.add(add(space));
+        for (int i = 0; i < added.size(); i++) { // added grows while new spaces are discovered
+            int v = added.get(i);
+            distance[v] = isExit(v) ? 0 : INFINITE;
+            next[v] = -1;
+            List<Space> connected = spaces[v] instanceof Circulation circulation ? circulation.getConnectedSpaces() : null;
+            connected = connected == null ? List.of() : connected;
+            for (Space neighbor : connected) {
+                if (neighbor != null && !indices.containsKey(neighbor)) {
+                    added.add(add(neighbor));
+                }
+            }
+            connections.add(connected);
+        }
+        for (int i = 0; i < added.size(); i++) {
+            for (Space neighbor : connections.get(i)) {
+                if (neighbor != null) {
+                    insert(added.get(i), indices.get(neighbor));
+                }
+            }
+        }
+        return added.get(0);
+    }
+
+    /**
+     * Adds a space without connections. The exit flag of a space that is not an interior is taken over
+     * only if the space has a list of connections, like in SpaceGraph.
+     */
+    private int add(Space space) {
+        if (size == spaces.length) {
+            grow();
+        }
+        int v = size++;
+        spaces[v] = space;
+        indices.put(space, v);
+        out[v] = new int[2];
+        in[v] = new int[2];
+        if (space instanceof Room && !(space instanceof Lift)) {
+            escapeRoutes.set(v);
+        }
+        if (space instanceof ServedSpace || space instanceof ServantSpace) {
+            interiors.set(v);
+        }
+        if (space instanceof PublicRoad) {
+            roads.set(v);
+        }
+        if (space instanceof Circulation circulation && !interiors.get(v)
+                && circulation.getConnectedSpaces() != null && circulation.isExit()) {
+            fixedExits.set(v);
+        }
+        return v;
+    }
+
+    private void grow() {
+        int capacity = 2 * spaces.length;
+        spaces = Arrays.copyOf(spaces, capacity);
+        out = Arrays.copyOf(out, capacity);
+        outSize = Arrays.copyOf(outSize, capacity);
+        in = Arrays.copyOf(in, capacity);
+        inSize = Arrays.copyOf(inSize, capacity);
+        roadConnections = Arrays.copyOf(roadConnections, capacity);
+        distance = Arrays.copyOf(distance, capacity);
+        next = Arrays.copyOf(next, capacity);
+        queue = new int[capacity];
+    }
+
+    private void link(int u, int w) {
+        if (outSize[u] == out[u].length) {
+            out[u] = Arrays.copyOf(out[u], 2 * out[u].length);
+        }
+        out[u][outSize[u]++] = w;
+        if (inSize[w] == in[w].length) {
+            in[w] = Arrays.copyOf(in[w], 2 * in[w].length);
+        }
+        in[w][inSize[w]++] = u;
+        if (roads.get(w)) {
+            roadConnections[u]++;
+        }
+    }
+
+    private boolean unlink(int u, int w) {
+        if (!removeOne(out[u], outSize[u], w)) {
+            return false;
+        }
+        outSize[u]--;
+        removeOne(in[w], inSize[w], u);
+        inSize[w]--;
+        if (roads.get(w)) {
+            roadConnections[u]--;
+        }
+        return true;
+    }
+
+    private static boolean removeOne(int[] list, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (list[i] == value) {
+                list[i] = list[length - 1];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExit(int v) {
+        return interiors.get(v) ? roadConnections[v] > 0 : fixedExits.get(v);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // repairs
+
+    /**
+     * Adds the connection u -> w and propagates the decreased distances.
+     */
+    private void insert(int u, int w) {
+        link(u, w);
+        if (distance[u] == 0) {
+            return;
+        }
+        if (isExit(u)) { // u was connected to a road
+            distance[u] = 0;
+            next[u] = -1;
+        } else if (escapeRoutes.get(w) && distance[w] != INFINITE && distance[w] + 1 < distance[u]) {
+            distance[u] = distance[w] + 1;
+            next[u] = w;
+        } else {
+            return;
+        }
+        decreased(u);
+    }
+
+    /**
+     * Propagates the decreased distance of v to the spaces connected to it, in breadth-first order.
+     */
+    private void decreased(int v) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = v;
+        while (head < tail) {
+            int x = queue[head++];
+            if (!escapeRoutes.get(x)) {
+                continue; // escapes do not lead through x
+            }
+            for (int i = 0; i < inSize[x]; i++) {
+                int p = in[x][i];
+                if (distance[x] + 1 < distance[p]) {
+                    distance[p] = distance[x] + 1;
+                    next[p] = x;
+                    queue[tail++] = p;
+                }
+            }
+        }
+    }
+
+    /**
+     * Repairs the distances after the connection u -> w has been removed.
+     */
+    private void removed(int u, int w) {
+        if (distance[u] == INFINITE) {
+            return;
+        }
+        if (distance[u] == 0 ? isExit(u) : next[u] != w) {
+            return; // u is still an exit or did not escape through w
+        }
+        if (collectAffected(u) > 0) {
+            reassign();
+        }
+    }
+
+    /**
+     * Returns true if v keeps its distance without the spaces in affected, and points next to such a neighbor.
+     */
+    private boolean supported(int v) {
+        if (isExit(v)) {
+            distance[v] = 0;
+            next[v] = -1;
+            return true;
+        }
+        if (next[v] >= 0 && !affected.get(next[v]) && escapeRoutes.get(next[v])
+                && distance[next[v]] == distance[v] - 1 && contains(out[v], outSize[v], next[v])) {
+            return true;
+        }
+        for (int i = 0; i < outSize[v]; i++) {
+            int y = out[v][i];
+            if (escapeRoutes.get(y) && !affected.get(y) && distance[y] == distance[v] - 1) {
+                next[v] = y;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the spaces whose distance increases, level by level starting at u. A space is affected if none of its
+     * neighbors one level closer to an exit is unaffected; only spaces that escaped through an affected space
+     * have to be checked.
+     *
+     * @return the number of affected spaces
+     */
+    private int collectAffected(int u) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = u;
+        queued.set(u);
+        int count = 0;
+        while (head < tail) {
+            int x = queue[head++]; // the levels are non-decreasing, so all supporters of x are already decided
+            if (supported(x)) {
+                continue;
+            }
+            affected.set(x);
+            count++;
+            if (!escapeRoutes.get(x)) {
+                continue;
+            }
+            for (int i = 0; i < inSize[x]; i++) {
+                int p = in[x][i];
+                if (!queued.get(p) && next[p] == x) {
+                    queued.set(p);
+                    queue[tail++] = p;
+                }
+            }
+        }
+        queued.clear();
+        return count;
+    }
+
+    /**
+     * Gives the affected spaces their new distances with a search that starts at their unaffected neighbors.
+     */
+    private void reassign() {
+        if (heap == null || heap.capacity() < spaces.length) {
+            heap = new IndexedHeap(spaces.length);
+        }
+        for (int v = affected.nextSetBit(0); v >= 0; v = affected.nextSetBit(v + 1)) {
+            distance[v] = INFINITE;
+            next[v] = -1;
+            for (int i = 0; i < outSize[v]; i++) {
+                int y = out[v][i];
+                if (escapeRoutes.get(y) && !affected.get(y) && distance[y] != INFINITE && distance[y] + 1 < distance[v]) {
+                    distance[v] = distance[y] + 1;
+                    next[v] = y;
+                }
+            }
+            if (distance[v] != INFINITE) {
+                heap.offer(v, distance[v]);
+            }
+        }
+        while (!heap.isEmpty()) {
+            int x = heap.poll();
+            affected.clear(x);
+            if (!escapeRoutes.get(x)) {
+                continue;
+            }
+            for (int i = 0; i < inSize[x]; i++) {
+                int p = in[x][i];
+                if (affected.get(p) && distance[x] + 1 < distance[p]) {
+                    distance[p] = distance[x] + 1;
+                    next[p] = x;
+                    heap.offer(p, distance[p]);
+                }
+            }
+        }
+        affected.clear(); // the remaining spaces have no escape any more
+    }
+
+    private static boolean contains(int[] list, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (list[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
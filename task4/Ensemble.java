@@ -1,4 +1,3 @@
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -9,14 +8,15 @@ import java.util.List;
 
 public class Ensemble implements Entity {
 
-    private List<Entity> entities;
+    private final EntityRegistry<Entity> entities = new EntityRegistry<>(this);
+    private final EntityStatistics statistics = new EntityStatistics();
     private boolean hasPermit = true;
+    private Entity parent;
 
     /**
      * Constructs an Ensemble with an empty list of entities. Entities are to be added using the addEntity method.
      */
     public Ensemble() {
-        entities = new ArrayList<>();
     }
 
     /**
@@ -80,6 +80,8 @@ public class Ensemble implements Entity {
             if(entities.size() == 1){ // if only one entity left
 
                 Entity myEntity = entities.get(0); // ensemble is transformed to Building or Complex
+                entities.clear();
+                EntityRegistry.replaceInParent(this, myEntity);
                 return myEntity;
             }
             return this; // entity removed
@@ -106,6 +108,33 @@ public class Ensemble implements Entity {
         hasPermit = false;
     }
 
+    /**
+     * Returns the entity this entity is contained in.
+     *
+     * @return the containing entity, or null if the entity is not contained in another entity
+     */
+    @Override
+    public Entity parent() {
+        return parent;
+    }
+
+    /**
+     * Returns the counters of the buildings and complexes of the ensemble.
+     *
+     * @return the statistics of the ensemble
+     */
+    @Override
+    public EntityStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets the containing entity; only called by EntityRegistry.
+     */
+    void setParent(Entity parent) {
+        this.parent = parent;
+    }
+
     /**
      * Gives a permit to the Ensemble.
      * This implementation does nothing as permits are not supported.
@@ -11,7 +11,8 @@ public interface Entity {
     /**
      * Adds an entity to this.
      * For example add a building to a complex, add a complex to an ensemble, etc.
-     * The Entity added has to be of the correct type and have a permit.
+     * The Entity added has to be of the correct type and have a permit, and must not be contained in another entity
+     * (see parent()); it is not moved out of its current parent.
      * The type of this can be changed after adding an entity. If a building is added to another Building, the building
      * is transformed into a Complex.
      *
@@ -19,7 +20,7 @@ public interface Entity {
      * Throws an IllegalArgumentException if the entity is not of the correct type or doesn't have a permit. (See implementation for details.
      *
      * @param entity the entity to be added
-     * @throws IllegalArgumentException if the entity is not of the correct type or doesn't have a permit
+     * @throws IllegalArgumentException if the entity is not of the correct type, doesn't have a permit or is already contained in an entity
      * @return the entity that was added or the entity that was created as a result of adding entity
      */
     Entity addEntity(Entity entity);
@@ -56,5 +57,20 @@ public interface Entity {
      */
     void givePermit();
 
+    /**
+     * Returns the entity this entity is contained in, e.g. the City or Complex containing a Building.
+     * The parent is maintained by the EntityRegistry of the containing entity.
+     *
+     * @return the containing entity, or null if the entity is not contained in another entity
+     */
+    Entity parent();
+
+    /**
+     * Returns the aggregate counters of the entity and everything it contains, kept up to date incrementally.
+     *
+     * @return the statistics of the entity
+     */
+    EntityStatistics statistics();
+
 
 }
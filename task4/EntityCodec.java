@@ -0,0 +1,545 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * EntityCodec saves an entity (usually a City) with all its entities and spaces to a compact binary file and loads it
+ * again, so that a large city has to be generated only once and analyses can share a prepared city.
+ *
+ * The file stores the graph in columns, all in little-endian order:
+ * - a header: MAGIC, FORMAT_VERSION, the number of spaces, entities, connections, child entities, member spaces
+ *   and stored values,
+ * - one type tag and one flag byte per space and per entity,
+ * - per space its floor and the entity of an exterior (-1 for none),
+ * - the connections of the spaces, the child entities and the member spaces of the entities, each in compressed
+ *   sparse row form (offsets and targets, see SpaceGraph); a null connection is stored as -1,
+ * - the double values of the spaces: quality attributes, movement area, window size and position of served spaces,
+ *   window size and position of servant spaces.
+ * Spaces and entities are referred to by their index; the root entity has index 0. The file is written and read
+ * through a memory-mapped FileChannel with bulk transfers, so the size of a file is limited to 2 GB.
+ *
+ * Everything reachable from the root is saved: the spaces of its entities, every space connected to them, and the
+ * entity of every exterior. The order of the entities, spaces and connections is preserved.
+ */
+public class EntityCodec {
+
+    public static final int MAGIC = 0x454E5431; // "ENT1"
+    public static final int FORMAT_VERSION = 1;
+
+    // space tags
+    private static final byte SERVED_SPACE = 1;
+    private static final byte SERVANT_SPACE = 2;
+    private static final byte PURE_CIRCULATION = 3;
+    private static final byte LIFT = 4;
+    private static final byte EXTERIOR = 5;
+    private static final byte PUBLIC_ROAD = 6;
+
+    // entity tags
+    private static final byte BUILDING = 1;
+    private static final byte COMPLEX = 2;
+    private static final byte ENSEMBLE = 3;
+    private static final byte CITY = 4;
+
+    // flags
+    private static final byte CONNECTED_TO_LIFT = 1;
+    private static final byte EXIT = 2;
+    private static final byte POSITION = 4;
+    private static final byte PERMIT = 1;
+
+    private static final int SERVED_VALUES = 10;
+    private static final int SERVANT_VALUES = 4;
+    private static final int HEADER_INTS = 8;
+
+    private final IdentityHashMap<Entity, Integer> entityIds = new IdentityHashMap<>();
+    private final List<Entity> entities = new ArrayList<>();
+    private final IdentityHashMap<Space, Integer> spaceIds = new IdentityHashMap<>();
+    private final List<Space> spaces = new ArrayList<>();
+
+    private EntityCodec() {
+    }
+
+    /**
+     * Saves the entity and everything reachable from it to a file; an existing file is overwritten.
+     *
+     * @param root the entity to save
+     * @param path the file
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if the graph contains an unknown kind of entity or space, or is too large
+     */
+    public static void save(Entity root, Path path) throws IOException {
+        if (root == null) { throw new IllegalArgumentException("The entity is null."); }
+        EntityCodec codec = new EntityCodec();
+        codec.collect(root);
+        codec.write(path);
+    }
+
+    /**
+     * Loads an entity saved with save().
+     *
+     * @param path the file
+     * @return the root entity
+     * @throws IOException if the file cannot be read or is not a valid entity file
+     */
+    public static Entity load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) { throw new IOException("The file is too large."); }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                return read(buffer);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException
+                     | ClassCastException | IllegalArgumentException | UnsupportedOperationException e) {
+                throw new IOException("The file is not a valid entity file.", e);
+            }
+        }
+    }
+
+    /**
+     * Numbers all entities and spaces reachable from the root, breadth-first.
+     */
+    private void collect(Entity root) {
+        add(root);
+        int entity = 0;
+        int space = 0;
+        while (entity < entities.size() || space < spaces.size()) { // both lists grow while collecting
+            for (; entity < entities.size(); entity++) {
+                for (Entity child : children(entities.get(entity))) {
+                    add(child);
+                }
+                for (Space member : members(entities.get(entity))) {
+                    add(member);
+                }
+            }
+            for (; space < spaces.size(); space++) {
+                Space current = spaces.get(space);
+                if (current instanceof Exterior exterior && exterior.associatedEntity() != null) {
+                    add(exterior.associatedEntity());
+                }
+                if (current instanceof Circulation circulation && circulation.getConnectedSpaces() != null) {
+                    for (Space neighbor : circulation.getConnectedSpaces()) {
+                        add(neighbor);
+                    }
+                }
+            }
+        }
+    }
+
+    private void add(Entity entity) {
+        if (entity != null && !entityIds.containsKey(entity)) {
+            entityIds.put(entity, entities.size());
+            entities.add(entity);
+        }
+    }
+
+    private void add(Space space) {
+        if (space != null && !spaceIds.containsKey(space)) {
+            spaceIds.put(space, spaces.size());
+            spaces.add(space);
+        }
+    }
+
+    private static List<? extends Entity> children(Entity entity) {
+        if (entity instanceof Building) {
+            return List.of();
+        } else if (entity instanceof Complex complex) {
+            return complex.buildings();
+        } else if (entity instanceof Ensemble ensemble) {
+            return ensemble.entities();
+        } else if (entity instanceof City city) {
+            return city.entities();
+        }
+        throw new IllegalArgumentException("Cannot save a " + entity.getClass().getSimpleName() + ".");
+    }
+
+    private static List<? extends Space> members(Entity entity) {
+        if (entity instanceof Building building) {
+            return building.spaces();
+        } else if (entity instanceof Complex complex) {
+            return complex.spaces();
+        } else if (entity instanceof City city) {
+            return city.roads();
+        }
+        return List.of();
+    }
+
+    private static byte tag(Space space) {
+        if (space instanceof ServedSpace) {
+            return SERVED_SPACE;
+        } else if (space instanceof ServantSpace) {
+            return SERVANT_SPACE;
+        } else if (space instanceof PureCirculation) {
+            return PURE_CIRCULATION;
+        } else if (space instanceof Lift) {
+            return LIFT;
+        } else if (space instanceof Exterior) {
+            return EXTERIOR;
+        } else if (space instanceof PublicRoad) {
+            return PUBLIC_ROAD;
+        }
+        throw new IllegalArgumentException("Cannot save a " + space.getClass().getSimpleName() + ".");
+    }
+
+    private static byte tag(Entity entity) {
+        if (entity instanceof Building) {
+            return BUILDING;
+        } else if (entity instanceof Complex) {
+            return COMPLEX;
+        } else if (entity instanceof Ensemble) {
+            return ENSEMBLE;
+        }
+        return CITY; // children() has rejected all other kinds
+    }
+
+    private static int values(byte tag) {
+        return tag == SERVED_SPACE ? SERVED_VALUES : tag == SERVANT_SPACE ? SERVANT_VALUES : 0;
+    }
+
+    private void write(Path path) throws IOException {
+        int s = spaces.size();
+        int n = entities.size();
+        byte[] spaceTags = new byte[s];
+        byte[] spaceFlags = new byte[s];
+        int[] floors = new int[s];
+        int[] owners = new int[s];
+        int[] spaceOffsets = new int[s + 1];
+        int[] spaceTargets = new int[16];
+        int valueCount = 0;
+        for (int v = 0; v < s; v++) {
+            Space space = spaces.get(v);
+            spaceTags[v] = tag(space);
+            valueCount += values(spaceTags[v]);
+            owners[v] = -1;
+            if (space instanceof Room room && !(space instanceof Lift)) {
+                floors[v] = room.getFloor();
+                spaceFlags[v] |= room.getPosition() != null ? POSITION : 0;
+            }
+            if (space instanceof Interior interior && Boolean.TRUE.equals(interior.isConnectedToLift())) {
+                spaceFlags[v] |= CONNECTED_TO_LIFT;
+            }
+            if (space instanceof Exterior exterior) {
+                spaceFlags[v] |= exterior.isExit() ? EXIT : 0;
+                owners[v] = exterior.associatedEntity() == null ? -1 : entityIds.get(exterior.associatedEntity());
+            }
+            List<Space> connected = space instanceof Circulation circulation ? circulation.getConnectedSpaces() : null;
+            int e = spaceOffsets[v];
+            if (connected != null) {
+                if (e + connected.size() > spaceTargets.length) {
+                    spaceTargets = Arrays.copyOf(spaceTargets, Math.max(2 * spaceTargets.length, e + connected.size()));
+                }
+                for (Space neighbor : connected) {
+                    spaceTargets[e++] = neighbor == null ? -1 : spaceIds.get(neighbor);
+                }
+            }
+            spaceOffsets[v + 1] = e;
+        }
+        spaceTargets = Arrays.copyOf(spaceTargets, spaceOffsets[s]);
+
+        double[] values = new double[valueCount];
+        int value = 0;
+        for (Space space : spaces) {
+            if (space instanceof ServedSpace served) {
+                values[value++] = served.getNaturalLighting();
+                values[value++] = served.getVentilation();
+                values[value++] = served.getHeating();
+                values[value++] = served.getMinimumHeight();
+                value = put(values, value, served.getMovementArea());
+                value = put(values, value, served.getWindowSize());
+                value = put(values, value, served.getPosition());
+            } else if (space instanceof ServantSpace servant) {
+                value = put(values, value, servant.getWindowSize());
+                value = put(values, value, servant.getPosition());
+            }
+        }
+
+        byte[] entityTags = new byte[n];
+        byte[] entityFlags = new byte[n];
+        int[] childOffsets = new int[n + 1];
+        int[] memberOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            Entity entity = entities.get(i);
+            entityTags[i] = tag(entity);
+            entityFlags[i] = entity.hasPermit() ? PERMIT : 0;
+            childOffsets[i + 1] = childOffsets[i] + children(entity).size();
+            memberOffsets[i + 1] = memberOffsets[i] + members(entity).size();
+        }
+        int[] children = new int[childOffsets[n]];
+        int[] members = new int[memberOffsets[n]];
+        for (int i = 0; i < n; i++) {
+            int c = childOffsets[i];
+            for (Entity child : children(entities.get(i))) {
+                children[c++] = entityIds.get(child);
+            }
+            int m = memberOffsets[i];
+            for (Space member : members(entities.get(i))) {
+                members[m++] = member == null ? -1 : spaceIds.get(member);
+            }
+        }
+
+        long ints = HEADER_INTS + 2L * s + (s + 1) + spaceTargets.length + 2L * (n + 1) + children.length + members.length;
+        long size = align(align(4L * HEADER_INTS + 2L * s + 2L * n, 4) + 4L * (ints - HEADER_INTS), 8) + 8L * valueCount;
+        if (size > Integer.MAX_VALUE) { throw new IllegalArgumentException("The graph is too large for one file."); }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            putInts(buffer, new int[] {MAGIC, FORMAT_VERSION, s, n, spaceTargets.length, children.length,
+                    members.length, valueCount});
+            buffer.put(spaceTags).put(spaceFlags).put(entityTags).put(entityFlags);
+            buffer.position(align(buffer.position(), 4));
+            putInts(buffer, floors);
+            putInts(buffer, owners);
+            putInts(buffer, spaceOffsets);
+            putInts(buffer, spaceTargets);
+            putInts(buffer, childOffsets);
+            putInts(buffer, children);
+            putInts(buffer, memberOffsets);
+            putInts(buffer, members);
+            buffer.position(align(buffer.position(), 8));
+            buffer.asDoubleBuffer().put(values);
+            buffer.force();
+        }
+    }
+
+    private static Entity read(ByteBuffer buffer) throws IOException {
+        int[] header = getInts(buffer, HEADER_INTS);
+        if (header[0] != MAGIC) { throw new IOException("The file is not an entity file."); }
+        if (header[1] != FORMAT_VERSION) { throw new IOException("Unsupported format version " + header[1] + "."); }
+        for (int i = 2; i < HEADER_INTS; i++) {
+            if (header[i] < 0) { throw new IOException("The file has a negative count in its header."); }
+        }
+        int s = header[2];
+        int n = header[3];
+        if (n == 0) { throw new IOException("The file contains no entity."); }
+        // every space and entity takes at least two bytes, so the counts are checked before s + 1 or n + 1 is used
+        checkRemaining(buffer, 2L * s + 2L * n);
+        byte[] spaceTags = getBytes(buffer, s);
+        byte[] spaceFlags = getBytes(buffer, s);
+        byte[] entityTags = getBytes(buffer, n);
+        byte[] entityFlags = getBytes(buffer, n);
+        buffer.position(align(buffer.position(), 4));
+        int[] floors = getInts(buffer, s);
+        int[] owners = getInts(buffer, s);
+        int[] spaceOffsets = getInts(buffer, s + 1);
+        int[] spaceTargets = getInts(buffer, header[4]);
+        int[] childOffsets = getInts(buffer, n + 1);
+        int[] children = getInts(buffer, header[5]);
+        int[] memberOffsets = getInts(buffer, n + 1);
+        int[] members = getInts(buffer, header[6]);
+        buffer.position(align(buffer.position(), 8));
+        checkRemaining(buffer, 8L * header[7]);
+        double[] values = new double[header[7]];
+        buffer.asDoubleBuffer().get(values);
+
+        // all references are checked before the graph is built, so no constructor sees an invalid value
+        checkOffsets(spaceOffsets, spaceTargets.length);
+        checkOffsets(childOffsets, children.length);
+        checkOffsets(memberOffsets, members.length);
+        checkReferences(spaceTargets, -1, s);
+        checkReferences(owners, -1, n);
+        checkReferences(children, 1, n); // the root cannot be contained in an entity
+        checkReferences(members, -1, s);
+        int valueCount = 0;
+        for (int v = 0; v < s; v++) {
+            valueCount += values(spaceTags[v]);
+        }
+        if (valueCount != values.length) { throw new IOException("The file has " + values.length + " values instead of " + valueCount + "."); }
+
+        Entity[] entities = new Entity[n];
+        for (int i = 0; i < n; i++) {
+            switch (entityTags[i]) {
+                case BUILDING -> entities[i] = new Building();
+                case COMPLEX -> entities[i] = new Complex();
+                case ENSEMBLE -> entities[i] = new Ensemble();
+                case CITY -> entities[i] = new City();
+                default -> throw new IOException("Unknown entity tag " + entityTags[i] + ".");
+            }
+        }
+
+        Space[] spaces = new Space[s];
+        int value = 0;
+        boolean lifts = false;
+        for (int v = 0; v < s; v++) {
+            boolean exit = (spaceFlags[v] & EXIT) != 0;
+            switch (spaceTags[v]) {
+                case SERVED_SPACE -> {
+                    ServedSpace served = new ServedSpace(floors[v], (spaceFlags[v] & CONNECTED_TO_LIFT) != 0,
+                            values[value], values[value + 1], values[value + 2], values[value + 3],
+                            vec2(values, value + 4), vec2(values, value + 6));
+                    if ((spaceFlags[v] & POSITION) != 0) {
+                        served.setPosition(vec2(values, value + 8));
+                    }
+                    spaces[v] = served;
+                }
+                case SERVANT_SPACE -> {
+                    ServantSpace servant = new ServantSpace(floors[v], vec2(values, value));
+                    if ((spaceFlags[v] & POSITION) != 0) {
+                        servant.setPosition(vec2(values, value + 2));
+                    }
+                    spaces[v] = servant;
+                }
+                case PURE_CIRCULATION -> spaces[v] = new PureCirculation(new ArrayList<>(spaceOffsets[v + 1] - spaceOffsets[v]));
+                case LIFT -> lifts = true;
+                case EXTERIOR -> spaces[v] = owners[v] < 0 ? new Exterior() : new Exterior(entities[owners[v]], exit);
+                case PUBLIC_ROAD -> spaces[v] = new PublicRoad();
+                default -> throw new IOException("Unknown space tag " + spaceTags[v] + ".");
+            }
+            value += values(spaceTags[v]);
+        }
+        if (lifts) {
+            createLifts(spaces, spaceTags, spaceOffsets, spaceTargets);
+        }
+
+        // connections are added to the lists directly; the spaces are new, so no escape index depends on them yet
+        for (int v = 0; v < s; v++) {
+            if (spaceTags[v] == LIFT || !(spaces[v] instanceof Circulation circulation)) {
+                continue;
+            }
+            ArrayList<Space> connected = circulation.getConnectedSpaces();
+            connected.ensureCapacity(spaceOffsets[v + 1] - spaceOffsets[v]);
+            for (int e = spaceOffsets[v]; e < spaceOffsets[v + 1]; e++) {
+                connected.add(spaceTargets[e] < 0 ? null : spaces[spaceTargets[e]]);
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            List<Space> memberSpaces = new ArrayList<>(memberOffsets[i + 1] - memberOffsets[i]);
+            for (int m = memberOffsets[i]; m < memberOffsets[i + 1]; m++) {
+                memberSpaces.add(members[m] < 0 ? null : spaces[members[m]]);
+            }
+            Entity entity = entities[i];
+            if (entity instanceof Building building) {
+                building.addSpace(memberSpaces);
+            } else if (entity instanceof Complex complex) {
+                for (Space member : memberSpaces) {
+                    complex.addSpace((Exterior) member);
+                }
+            } else if (entity instanceof City city) {
+                for (Space member : memberSpaces) {
+                    city.roads().add((PublicRoad) member);
+                }
+            }
+            for (int c = childOffsets[i]; c < childOffsets[i + 1]; c++) {
+                if (entity instanceof Complex complex) {
+                    complex.buildings().add((Building) entities[children[c]]);
+                } else if (entity instanceof Ensemble ensemble) {
+                    ensemble.entities().add(entities[children[c]]);
+                } else if (entity instanceof City city) {
+                    city.entities().add(entities[children[c]]);
+                } else {
+                    throw new IOException("A building cannot contain entities.");
+                }
+            }
+            if ((entityFlags[i] & PERMIT) == 0) {
+                entity.deletePermit();
+            }
+        }
+        return entities[0];
+    }
+
+    /**
+     * Creates the lifts once all rooms they connect exist; a lift can connect another lift that is created earlier.
+     */
+    private static void createLifts(Space[] spaces, byte[] tags, int[] offsets, int[] targets) throws IOException {
+        boolean created = true;
+        boolean missing = true;
+        while (created && missing) {
+            created = false;
+            missing = false;
+            for (int v = 0; v < spaces.length; v++) {
+                if (tags[v] != LIFT || spaces[v] != null) {
+                    continue;
+                }
+                ArrayList<Room> rooms = new ArrayList<>(offsets[v + 1] - offsets[v]);
+                for (int e = offsets[v]; e < offsets[v + 1] && rooms != null; e++) {
+                    if (targets[e] < 0) { throw new IOException("A lift of the file connects a missing room."); }
+                    Space room = spaces[targets[e]];
+                    if (room == null) {
+                        rooms = null; // not created yet
+                    } else if (room instanceof Room) {
+                        rooms.add((Room) room);
+                    } else {
+                        throw new IOException("A lift of the file connects a " + room.getClass().getSimpleName() + ".");
+                    }
+                }
+                if (rooms == null) {
+                    missing = true;
+                } else {
+                    spaces[v] = new Lift(rooms);
+                    created = true;
+                }
+            }
+        }
+        if (missing) { throw new IOException("The lifts of the file connect each other in a cycle."); }
+    }
+
+    private static int put(double[] values, int index, Vec2 vector) {
+        values[index] = vector == null ? 0.0 : vector.x();
+        values[index + 1] = vector == null ? 0.0 : vector.y();
+        return index + 2;
+    }
+
+    private static Vec2 vec2(double[] values, int index) {
+        return new Vec2(values[index], values[index + 1]);
+    }
+
+    private static int align(int position, int alignment) {
+        return (position + alignment - 1) / alignment * alignment;
+    }
+
+    private static long align(long position, int alignment) {
+        return (position + alignment - 1) / alignment * alignment;
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + 4 * values.length);
+    }
+
+    /**
+     * Checks that the offsets of a compressed sparse row start at 0, never decrease and end at the number of targets.
+     */
+    private static void checkOffsets(int[] offsets, int targets) throws IOException {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != targets) { throw new IOException("The file has invalid offsets."); }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) { throw new IOException("The file has invalid offsets."); }
+        }
+    }
+
+    /**
+     * Checks that every reference lies in [min, bound).
+     */
+    private static void checkReferences(int[] references, int min, int bound) throws IOException {
+        for (int reference : references) {
+            if (reference < min || reference >= bound) { throw new IOException("The file refers to a missing space or entity."); }
+        }
+    }
+
+    /**
+     * Checks that the buffer holds at least the given number of bytes more, before an array of that size is allocated.
+     */
+    private static void checkRemaining(ByteBuffer buffer, long bytes) throws IOException {
+        if (bytes < 0 || bytes > buffer.remaining()) { throw new IOException("The file is truncated."); }
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int count) throws IOException {
+        checkRemaining(buffer, 4L * count);
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer, int count) throws IOException {
+        checkRemaining(buffer, count);
+        byte[] values = new byte[count];
+        buffer.get(values);
+        return values;
+    }
+}
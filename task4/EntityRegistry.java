@@ -0,0 +1,320 @@
+import java.util.*;
+
+/**
+ * An EntityRegistry is the list of entities contained in a City, Complex or Ensemble.
+ * The entities are kept in a doubly linked list with a nil sentinel (insertion order) and in an identity hash map
+ * from each entity to its list node, so contains, add and remove take O(1) instead of the O(n) of an ArrayList.
+ * An entity can be contained only once.
+ *
+ * The registry also maintains the parent of its entities (see Entity.parent()): an added entity gets the owner of the
+ * registry as parent, a removed entity has no parent any more. An entity that is already contained in another entity
+ * cannot be added; it has to be removed from its parent first.
+ * Likewise the statistics of an added entity are added to those of the owner and its ancestors, and subtracted again
+ * when the entity is removed (see EntityStatistics), and every change is reported to the City above the owner, whose
+ * connectivity index does not know the spaces of the entity (see City.graphChanged).
+ */
+public class EntityRegistry<E extends Entity> extends AbstractSequentialList<E> {
+
+    private static final class Node<E> {
+        E value;
+        Node<E> previous;
+        Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    private final Entity owner;
+    private final Node<E> nil = new Node<>(null); // nil.next is the first, nil.previous the last node
+    private final IdentityHashMap<E, Node<E>> nodes = new IdentityHashMap<>();
+
+    /**
+     * Constructs an empty registry.
+     *
+     * @param owner the entity containing the registered entities
+     */
+    public EntityRegistry(Entity owner) {
+        this.owner = owner;
+        nil.previous = nil;
+        nil.next = nil;
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns true if the entity is registered (compared by identity), in O(1).
+     */
+    @Override
+    public boolean contains(Object entity) {
+        return nodes.containsKey(entity);
+    }
+
+    /**
+     * Appends the entity, in O(1).
+     *
+     * @throws IllegalArgumentException if the entity is null, already contained in an entity or an ancestor of the owner
+     */
+    @Override
+    public boolean add(E entity) {
+        linkBefore(entity, nil);
+        return true;
+    }
+
+    /**
+     * Removes the entity, in O(1).
+     *
+     * @return true if the entity was registered
+     */
+    @Override
+    public boolean remove(Object entity) {
+        Node<E> node = nodes.get(entity);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (Node<E> node = nil.next; node != nil; node = node.next) {
+            if (node.value.parent() == owner) {
+                setParent(node.value, null);
+            }
+            EntityStatistics.apply(owner, node.value.statistics(), -1);
+        }
+        City.graphChanged(owner);
+        nodes.clear();
+        nil.next = nil;
+        nil.previous = nil;
+        modCount++;
+    }
+
+    /**
+     * Puts the replacement at the position of the given entity, in O(1).
+     *
+     * @param entity the registered entity
+     * @param replacement the entity taking its place
+     * @return true if the entity was registered
+     */
+    public boolean replace(Entity entity, E replacement) {
+        Node<E> node = nodes.get(entity);
+        if (node == null) {
+            return false;
+        }
+        set(node, replacement);
+        return true;
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        if (index < 0 || index > size()) { throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size()); }
+        return new RegistryIterator(index);
+    }
+
+    private void linkBefore(E entity, Node<E> successor) {
+        checkAddable(owner, entity);
+        Node<E> node = new Node<>(entity);
+        node.next = successor;
+        node.previous = successor.previous;
+        successor.previous.next = node;
+        successor.previous = node;
+        nodes.put(entity, node);
+        setParent(entity, owner);
+        EntityStatistics.apply(owner, entity.statistics(), 1);
+        City.graphChanged(owner);
+        modCount++;
+    }
+
+    private void unlink(Node<E> node) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        nodes.remove(node.value);
+        if (node.value.parent() == owner) {
+            setParent(node.value, null);
+        }
+        EntityStatistics.apply(owner, node.value.statistics(), -1);
+        City.graphChanged(owner);
+        modCount++;
+    }
+
+    private E set(Node<E> node, E replacement) {
+        E old = node.value;
+        if (replacement == old) {
+            return old;
+        }
+        checkAddable(owner, replacement);
+        nodes.remove(old);
+        if (old.parent() == owner) {
+            setParent(old, null);
+        }
+        node.value = replacement;
+        nodes.put(replacement, node);
+        setParent(replacement, owner);
+        EntityStatistics.apply(owner, old.statistics(), -1);
+        EntityStatistics.apply(owner, replacement.statistics(), 1);
+        City.graphChanged(owner);
+        return old;
+    }
+
+    /**
+     * Checks that the entity can be contained in the given entity, without changing anything.
+     *
+     * @param owner the entity that is to contain the entity
+     * @param entity the entity to be contained
+     * @throws IllegalArgumentException if the entity is null, already contained in an entity, or the owner itself
+     * or one of its ancestors
+     */
+    static void checkAddable(Entity owner, Entity entity) {
+        if (entity == null) { throw new IllegalArgumentException("Cannot register null."); }
+        if (entity.parent() != null) { throw new IllegalArgumentException("The entity is already contained in an entity."); }
+        for (Entity e = owner; e != null; e = e.parent()) {
+            if (e == entity) { throw new IllegalArgumentException("An entity cannot contain itself."); }
+        }
+    }
+
+    /**
+     * Replaces an entity in the registry of its parent, e.g. a Complex that turned into a Building.
+     *
+     * @param entity the entity whose type changed
+     * @param replacement the entity that takes its place
+     */
+    static void replaceInParent(Entity entity, Entity replacement) {
+        Entity parent = entity.parent();
+        if (parent != null) {
+            registryOf(parent).replace(entity, replacement);
+        }
+    }
+
+    /**
+     * Returns the registry of the entities contained in the given entity.
+     */
+    @SuppressWarnings("unchecked")
+    private static EntityRegistry<Entity> registryOf(Entity parent) {
+        List<? extends Entity> entities;
+        if (parent instanceof City city) {
+            entities = city.entities();
+        } else if (parent instanceof Ensemble ensemble) {
+            entities = ensemble.entities();
+        } else if (parent instanceof Complex complex) {
+            entities = complex.buildings();
+        } else {
+            throw new IllegalStateException("A " + parent.getClass().getSimpleName() + " cannot contain entities.");
+        }
+        return (EntityRegistry<Entity>) entities;
+    }
+
+    private static void setParent(Entity entity, Entity parent) {
+        if (entity instanceof Building building) {
+            building.setParent(parent);
+        } else if (entity instanceof Complex complex) {
+            complex.setParent(parent);
+        } else if (entity instanceof Ensemble ensemble) {
+            ensemble.setParent(parent);
+        } else if (parent != null) {
+            throw new IllegalArgumentException("A " + entity.getClass().getSimpleName() + " cannot be contained in an entity.");
+        }
+    }
+
+    private final class RegistryIterator implements ListIterator<E> {
+
+        private Node<E> next;
+        private int nextIndex;
+        private Node<E> lastReturned = null;
+        private int expectedModCount = modCount;
+
+        RegistryIterator(int index) {
+            if (index < size() / 2) {
+                next = nil.next;
+                for (int i = 0; i < index; i++) {
+                    next = next.next;
+                }
+            } else {
+                next = nil;
+                for (int i = size(); i > index; i--) {
+                    next = next.previous;
+                }
+            }
+            nextIndex = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < size();
+        }
+
+        @Override
+        public E next() {
+            checkForComodification();
+            if (!hasNext()) { throw new NoSuchElementException(); }
+            lastReturned = next;
+            next = next.next;
+            nextIndex++;
+            return lastReturned.value;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return nextIndex > 0;
+        }
+
+        @Override
+        public E previous() {
+            checkForComodification();
+            if (!hasPrevious()) { throw new NoSuchElementException(); }
+            next = next.previous;
+            lastReturned = next;
+            nextIndex--;
+            return lastReturned.value;
+        }
+
+        @Override
+        public int nextIndex() {
+            return nextIndex;
+        }
+
+        @Override
+        public int previousIndex() {
+            return nextIndex - 1;
+        }
+
+        @Override
+        public void remove() {
+            checkForComodification();
+            if (lastReturned == null) { throw new IllegalStateException(); }
+            if (next == lastReturned) {
+                next = lastReturned.next; // after previous()
+            } else {
+                nextIndex--;
+            }
+            unlink(lastReturned);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public void set(E entity) {
+            checkForComodification();
+            if (lastReturned == null) { throw new IllegalStateException(); }
+            EntityRegistry.this.set(lastReturned, entity);
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public void add(E entity) {
+            checkForComodification();
+            lastReturned = null;
+            linkBefore(entity, next);
+            nextIndex++;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) { throw new ConcurrentModificationException(); }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * EntityStatistics are the aggregate counters of an Entity: how many buildings, spaces, rooms, lifts, exteriors and
+ * exits it contains, including everything contained in the entities it contains. Every entity keeps its own counters
+ * (see Entity.statistics()), so the totals of a City are read in O(1) instead of walking the entity tree.
+ *
+ * The counters are kept up to date incrementally: a change is applied to the entity it happens in and to all its
+ * ancestors by following Entity.parent(). EntityRegistry applies the counters of an entity when it is added to or
+ * removed from a City, Ensemble or Complex, Building.addSpace and Complex.addSpace apply the counters of new spaces,
+ * and a served or servant space that gets connected to a PublicRoad reports that it became an exit.
+ * Spaces added by modifying the lists returned by Building.spaces() or Complex.spaces() directly are not counted.
+ */
+public final class EntityStatistics {
+
+    private int buildings = 0;
+    private int spaces = 0;
+    private int servedRooms = 0;
+    private int servantRooms = 0;
+    private int lifts = 0;
+    private int exteriors = 0;
+    private int exits = 0;
+
+    EntityStatistics() {
+    }
+
+    /**
+     * Returns the counters of the given spaces.
+     *
+     * @param spaces the spaces to count
+     * @return the counters, with no buildings
+     */
+    static EntityStatistics of(Iterable<? extends Space> spaces) {
+        EntityStatistics statistics = new EntityStatistics();
+        for (Space space : spaces) {
+            statistics.count(space);
+        }
+        return statistics;
+    }
+
+    /**
+     * Adds one space to the counters.
+     */
+    void count(Space space) {
+        if (space == null) {
+            return;
+        }
+        spaces++;
+        if (space instanceof ServedSpace) {
+            servedRooms++;
+        } else if (space instanceof ServantSpace) {
+            servantRooms++;
+        } else if (space instanceof Lift) {
+            lifts++;
+        } else if (space instanceof Exterior) {
+            exteriors++;
+        }
+        if (space instanceof Circulation circulation && circulation.isExit()) {
+            exits++;
+        }
+    }
+
+    /**
+     * Counts one building more, for the statistics of a Building itself.
+     */
+    void countBuilding() {
+        buildings++;
+    }
+
+    /**
+     * Adds the counters of another entity (sign 1) or subtracts them (sign -1).
+     */
+    private void add(EntityStatistics other, int sign) {
+        buildings += sign * other.buildings;
+        spaces += sign * other.spaces;
+        servedRooms += sign * other.servedRooms;
+        servantRooms += sign * other.servantRooms;
+        lifts += sign * other.lifts;
+        exteriors += sign * other.exteriors;
+        exits += sign * other.exits;
+    }
+
+    /**
+     * Adds the counters (sign 1) or subtracts them (sign -1) from the entity and all entities containing it.
+     *
+     * @param entity the entity the change happened in
+     * @param change the counters of the added or removed part
+     * @param sign 1 if the part was added, -1 if it was removed
+     */
+    static void apply(Entity entity, EntityStatistics change, int sign) {
+        for (Entity e = entity; e != null; e = e.parent()) {
+            e.statistics().add(change, sign);
+        }
+    }
+
+    /**
+     * Records that a space became an exit, in the building it was added to and all entities containing it.
+     *
+     * @param space the space that was connected to a PublicRoad
+     */
+    static void exitAdded(Space space) {
+        Building building = EscapeIndex.owner(space);
+        for (Entity e = building; e != null; e = e.parent()) {
+            e.statistics().exits++;
+        }
+    }
+
+    /**
+     * @return the number of buildings, 1 for a Building itself
+     */
+    public int buildings() {
+        return buildings;
+    }
+
+    /**
+     * @return the number of spaces of all kinds
+     */
+    public int spaces() {
+        return spaces;
+    }
+
+    /**
+     * @return the number of served spaces
+     */
+    public int servedRooms() {
+        return servedRooms;
+    }
+
+    /**
+     * @return the number of servant spaces
+     */
+    public int servantRooms() {
+        return servantRooms;
+    }
+
+    /**
+     * @return the number of lifts
+     */
+    public int lifts() {
+        return lifts;
+    }
+
+    /**
+     * @return the number of exterior spaces, including the courtyards of complexes
+     */
+    public int exteriors() {
+        return exteriors;
+    }
+
+    /**
+     * @return the number of spaces whose isExit() is true
+     */
+    public int exits() {
+        return exits;
+    }
+
+    @Override
+    public String toString() {
+        return buildings + " buildings, " + spaces + " spaces (" + servedRooms + " served, " + servantRooms
+                + " servant, " + lifts + " lifts, " + exteriors + " exteriors), " + exits + " exits";
+    }
+}
@@ -1,48 +1,68 @@
 import java.util.*;
 
+/**
+ * An Escape describes the shortest escape path from a space to an exit, including the space itself.
+ * Escape paths never lead through lifts.
+ */
 public class Escape implements Iterable<Space> {
 
     Space space;
     ArrayList<Space> escapePath;
+    private final SpaceGraph graph;
 
     public Escape(Space space) {
         this.space = space;
+        this.graph = null;
         escapePath = new ArrayList<>();
         findEscapePath();
     }
 
     /**
-     * Find the escape path
+     * Constructs the escape path of a space using an already compiled graph, e.g. the graph of its building.
+     * If the space is not part of the graph, the spaces reachable from it are compiled.
+     *
+     * @param space the space to escape from
+     * @param graph the compiled graph containing the space
      */
-    public void findEscapePath() {
-        Circulation startRoom = (Circulation) space;
-        Queue<ArrayList<Circulation>> q = new LinkedList<>();
-        Set<Circulation> visited = new HashSet<>();
-        q.add(new ArrayList<>(Collections.singletonList(startRoom)));
-        visited.add(startRoom);
-        while(!q.isEmpty()) {
-            List<Circulation> path = q.poll();
-            Circulation current = path.getLast();
+    public Escape(Space space, SpaceGraph graph) {
+        this.space = space;
+        this.graph = graph;
+        escapePath = new ArrayList<>();
+        findEscapePath();
+    }
 
-            if(current.getConnectedSpaces() == null) {
-                continue;
-            }
+    /**
+     * Constructs an escape with a path that was already found, e.g. by WeightedEscape.
+     *
+     * @param space the space to escape from
+     * @param escapePath the spaces of the path from the space to the exit, empty if there is no escape
+     */
+    Escape(Space space, ArrayList<Space> escapePath) {
+        this.space = space;
+        this.graph = null;
+        this.escapePath = escapePath;
+    }
 
-            if (current.isExit()) {
-                escapePath.addAll(path);
+    /**
+     * Find the escape path.
+     * Without a given graph, the cached EscapeIndex of the building the space belongs to is used if there is one,
+     * so the path is read in time proportional to its length.
+     */
+    public void findEscapePath() {
+        escapePath.clear();
+        if (graph == null) {
+            EscapeIndex index = EscapeIndex.of(space);
+            if (index != null && index.contains(space)) {
+                index.escapePath(space, escapePath);
                 return;
             }
-
-            for (Space neighbor : current.getConnectedSpaces()) {
-                if(neighbor instanceof Room neighboorRoom && !(neighbor instanceof Lift)) {
-                    if (!visited.contains(neighbor)) {
-                        visited.add(neighboorRoom);
-                        ArrayList<Circulation> newPath = new ArrayList<>(path);
-                        newPath.add(neighboorRoom);
-                        q.add(newPath);
-                    }
-                }
-            }
+        }
+        SpaceGraph compiled = graph;
+        if (compiled == null || compiled.indexOf(space) < 0) {
+            compiled = SpaceGraph.compile(List.of(space));
+        }
+        for (int index : compiled.escapePath(compiled.indexOf(space))) {
+            escapePath.add(compiled.space(index));
         }
     }
 
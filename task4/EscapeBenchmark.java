@@ -0,0 +1,114 @@
+import java.util.*;
+import java.util.function.IntToLongFunction;
+
+/**
+ * EscapeBenchmark measures the escape searches and the city-wide analyses on cities created by CityGenerator,
+ * for several city sizes:
+ *     java EscapeBenchmark [buildings ...]     (default: 100 1000 10000)
+ *
+ * Every measurement runs WARMUP_ROUNDS rounds that are not counted, so the JIT compiler has optimized the code, and
+ * then MEASURED_ROUNDS rounds; the mean and the minimum time per operation are printed. The results of all operations
+ * are added to a sink, so the compiler cannot remove the work. The cities are generated with a fixed seed, so all
+ * runs measure the same cities.
+ */
+public class EscapeBenchmark {
+
+    public static final int WARMUP_ROUNDS = 5;
+    public static final int MEASURED_ROUNDS = 10;
+    public static final int SAMPLE = 10000; // spaces per round of the per-space measurements
+    public static final long SEED = 42;
+
+    private static long sink = 0;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[] {100, 1000, 10000} : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        for (int size : sizes) {
+            run(size);
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private static void run(int size) {
+        long start = System.nanoTime();
+        City city = new CityGenerator(SEED).city(size);
+        long generated = System.nanoTime() - start;
+
+        List<Building> buildings = new ArrayList<>();
+        for (Entity entity : city.entities()) {
+            if (entity instanceof Building building) {
+                buildings.add(building);
+            } else if (entity instanceof Complex complex) {
+                buildings.addAll(complex.buildings());
+            }
+        }
+        List<Room> rooms = new ArrayList<>();
+        List<Exterior> exteriors = new ArrayList<>();
+        Map<Room, SpaceGraph> graphs = new IdentityHashMap<>();
+        for (Building building : buildings) {
+            SpaceGraph graph = building.compileGraph();
+            for (Space space : building.spaces()) {
+                if (space instanceof Room room && !(space instanceof Lift)) {
+                    rooms.add(room);
+                    graphs.put(room, graph);
+                } else if (space instanceof Exterior exterior) {
+                    exteriors.add(exterior);
+                }
+            }
+        }
+        Random random = new Random(SEED);
+        Room[] roomSample = new Room[Math.min(SAMPLE, rooms.size())];
+        for (int i = 0; i < roomSample.length; i++) {
+            roomSample[i] = rooms.get(random.nextInt(rooms.size()));
+        }
+        Exterior[] exteriorSample = new Exterior[Math.min(SAMPLE, exteriors.size())];
+        for (int i = 0; i < exteriorSample.length; i++) {
+            exteriorSample[i] = exteriors.get(random.nextInt(exteriors.size()));
+        }
+
+        System.out.printf("%n%d buildings, %d rooms: generated in %.1f ms%n", buildings.size(), rooms.size(), generated / 1e6);
+        measure("new Escape(space), cached index", roomSample.length, i -> new Escape(roomSample[i]).length());
+        measure("new Escape(space, graph), search", roomSample.length,
+                i -> new Escape(roomSample[i], graphs.get(roomSample[i])).length());
+        measure("Circulation.escape() of exteriors", exteriorSample.length, i -> {
+            Escape escape = ((Circulation) exteriorSample[i]).escape();
+            return escape == null ? 0 : escape.length();
+        });
+        measure("EscapeCoverage.analyze(city)", 1, i -> EscapeCoverage.analyze(city).rooms());
+        measure("CityConnectivity of the city", 1, i -> {
+            CityConnectivity connectivity = new CityConnectivity();
+            connectivity.add(city);
+            return connectivity.components();
+        });
+        measure("EscapeIndex.build of all buildings", 1, i -> {
+            long distances = 0;
+            for (Building building : buildings) {
+                distances += EscapeIndex.build(building).graph().size();
+            }
+            return distances;
+        });
+    }
+
+    /**
+     * Runs the operation for the indices 0 to operations - 1 in every round and prints the time per operation.
+     */
+    private static void measure(String name, int operations, IntToLongFunction operation) {
+        if (operations == 0) {
+            System.out.printf("  %-40s no operations%n", name);
+            return;
+        }
+        double total = 0;
+        double best = Double.POSITIVE_INFINITY;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                sink += operation.applyAsLong(i);
+            }
+            double perOperation = (double) (System.nanoTime() - start) / operations;
+            if (round >= WARMUP_ROUNDS) {
+                total += perOperation;
+                best = Math.min(best, perOperation);
+            }
+        }
+        System.out.printf("  %-40s %12.1f ns/op (min %.1f)%n", name, total / MEASURED_ROUNDS, best);
+    }
+}
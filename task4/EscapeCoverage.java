@@ -0,0 +1,201 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * EscapeCoverage answers for a whole City (or any other Entity) which rooms have no escape of length < 10,
+ * the longest escape and how the escape lengths are distributed.
+ *
+ * The entity tree (City -> Complex/Ensemble -> Building -> Space) is walked once to collect the buildings; the
+ * buildings are then evaluated in parallel on a ForkJoinPool. Each building is evaluated with its EscapeIndex, so
+ * the escapes of all its rooms are found with a single search instead of one search per room.
+ * Lifts are not counted as rooms, because they never have an escape.
+ */
+public class EscapeCoverage {
+
+    // escapes must be shorter than this, see Circulation.escape()
+    public static final int MAX_LENGTH = 10;
+
+    // buildings evaluated by one task without splitting further
+    private static final int THRESHOLD = 8;
+
+    /**
+     * The result of an analysis. Reports of parts of a city are merged into the report of the city.
+     */
+    public static final class Report {
+
+        private int rooms = 0;
+        private final List<Room> roomsWithoutEscape = new ArrayList<>();
+        private int longestEscape = 0;
+        // histogram[l] is the number of rooms whose escape has length l, histogram[0] the rooms without any escape
+        private int[] histogram = new int[MAX_LENGTH];
+
+        private void add(Room room, int length) {
+            rooms++;
+            if (length == 0 || length >= MAX_LENGTH) {
+                roomsWithoutEscape.add(room);
+            }
+            if (length >= histogram.length) {
+                histogram = Arrays.copyOf(histogram, Math.max(length + 1, 2 * histogram.length));
+            }
+            histogram[length]++;
+            longestEscape = Math.max(longestEscape, length);
+        }
+
+        private Report merge(Report other) {
+            rooms += other.rooms;
+            roomsWithoutEscape.addAll(other.roomsWithoutEscape);
+            longestEscape = Math.max(longestEscape, other.longestEscape);
+            if (other.histogram.length > histogram.length) {
+                histogram = Arrays.copyOf(histogram, other.histogram.length);
+            }
+            for (int i = 0; i < other.histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+            return this;
+        }
+
+        /**
+         * @return the number of analyzed rooms
+         */
+        public int rooms() {
+            return rooms;
+        }
+
+        /**
+         * Returns the rooms without an escape of length < MAX_LENGTH, i.e. the rooms whose escape() would return null.
+         *
+         * @return the rooms without escape, an unmodifiable list
+         */
+        public List<Room> roomsWithoutEscape() {
+            return Collections.unmodifiableList(roomsWithoutEscape);
+        }
+
+        /**
+         * Returns the length of the longest escape of all rooms, including escapes of length >= MAX_LENGTH.
+         *
+         * @return the longest escape, 0 if no room has an escape
+         */
+        public int longestEscape() {
+            return longestEscape;
+        }
+
+        /**
+         * Returns the number of rooms whose shortest escape has the given length.
+         *
+         * @param length the number of spaces of the escape path, 0 for rooms without any escape
+         * @return the number of rooms
+         */
+        public int count(int length) {
+            return length >= 0 && length < histogram.length ? histogram[length] : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(rooms).append(" rooms, ").append(roomsWithoutEscape.size()).append(" without escape, longest escape ")
+                    .append(longestEscape).append("\nno escape: ").append(histogram[0]);
+            for (int length = 1; length <= longestEscape; length++) {
+                builder.append(", ").append(length).append(": ").append(histogram[length]);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Evaluates a range of buildings, splitting it while it is larger than THRESHOLD.
+     */
+    private static final class BuildingTask extends RecursiveTask<Report> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Building[] buildings; // tasks are never serialized
+        private final int from;
+        private final int to;
+
+        BuildingTask(Building[] buildings, int from, int to) {
+            this.buildings = buildings;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Report compute() {
+            if (to - from <= THRESHOLD) {
+                Report report = new Report();
+                for (int i = from; i < to; i++) {
+                    analyze(buildings[i], report);
+                }
+                return report;
+            }
+            int middle = (from + to) >>> 1;
+            BuildingTask left = new BuildingTask(buildings, from, middle);
+            left.fork();
+            Report right = new BuildingTask(buildings, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Analyzes all rooms of the entity in parallel on the common ForkJoinPool.
+     *
+     * @param entity a City, Ensemble, Complex or Building
+     * @return the coverage report
+     */
+    public static Report analyze(Entity entity) {
+        return analyze(List.of(entity), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Analyzes all rooms of the entities in parallel on the given pool.
+     *
+     * @param entities the entities, e.g. the entities of a City
+     * @param pool the pool the buildings are evaluated on
+     * @return the coverage report
+     *
+     * Precondition: entities and pool are not null.
+     */
+    public static Report analyze(Collection<? extends Entity> entities, ForkJoinPool pool) {
+        if (entities == null || pool == null) { throw new IllegalArgumentException("Entities and pool must not be null."); }
+        Set<Building> buildings = new LinkedHashSet<>(); // buildings have identity equality
+        for (Entity entity : entities) {
+            collect(entity, buildings);
+        }
+        Building[] array = buildings.toArray(new Building[0]);
+        return pool.invoke(new BuildingTask(array, 0, array.length));
+    }
+
+    /**
+     * Walks the entity tree and collects every building once.
+     */
+    static void collect(Entity entity, Set<Building> buildings) {
+        if (entity instanceof Building building) {
+            buildings.add(building);
+        } else if (entity instanceof Complex complex) {
+            for (Building building : complex.buildings()) {
+                collect(building, buildings);
+            }
+        } else if (entity instanceof Ensemble ensemble) {
+            for (Entity part : ensemble.entities()) {
+                collect(part, buildings);
+            }
+        } else if (entity instanceof City city) {
+            for (Entity part : city.entities()) {
+                collect(part, buildings);
+            }
+        }
+    }
+
+    /**
+     * Adds the escape lengths of all rooms of the building to the report.
+     */
+    private static void analyze(Building building, Report report) {
+        EscapeIndex index = building.escapeIndex();
+        for (Space space : building.spaces()) {
+            if (space instanceof Room room && !(space instanceof Lift)) {
+                int distance = index.distance(room);
+                report.add(room, distance < 0 ? 0 : distance + 1);
+            }
+        }
+    }
+}
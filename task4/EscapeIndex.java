@@ -0,0 +1,266 @@
+import java.util.*;
+
+/**
+ * An EscapeIndex stores the escape distance and the next space on the escape path for every space of a building.
+ * It is built with a single breadth-first search over the reversed graph that starts at all exits at once (rooms
+ * leading to a PublicRoad and exit Exteriors), instead of one search per room. Afterwards the escape path of a space
+ * is read by following the next spaces, in time proportional to the length of the path.
+ *
+ * Each Building keeps its index (see Building.escapeIndex()) until its part of the graph changes. The index remembers
+ * the GraphVersion of the building and of every other building or free space its graph reaches (see OwnedSpace);
+ * the space classes report changes through graphChanged(space) in addConnectedSpace, addConnection and remove(), and
+ * Building.addSpace through register. An index built before a change of one of its versions is stale and is rebuilt
+ * on the next access, while changes elsewhere in the city leave it valid. The index is shared, so it must not be
+ * modified.
+ */
+public class EscapeIndex {
+
+    private final SpaceGraph graph;
+    private final int[] distance;
+    private final int[] next;
+    // the versions the graph depends on and their values when it was built
+    private final GraphVersion[] sources;
+    private final long[] versions;
+
+    private EscapeIndex(SpaceGraph graph, int[] distance, int[] next, GraphVersion[] sources, long[] versions) {
+        this.graph = graph;
+        this.distance = distance;
+        this.next = next;
+        this.sources = sources;
+        this.versions = versions;
+    }
+
+    /**
+     * Builds the index of a building.
+     *
+     * @param building the building
+     * @return the escape index of all spaces of the building and the spaces connected to them
+     */
+    public static EscapeIndex build(Building building) {
+        return build(SpaceGraph.compile(building), building.graphVersion());
+    }
+
+    /**
+     * Builds the index of a compiled graph with a multi-source breadth-first search from all exits over the
+     * reversed connections. Every exit has distance 0; a space gets distance d + 1 from a space with distance d it
+     * is connected to. Only spaces escape paths may lead through (rooms, but no lifts) pass their distance on,
+     * because the search in Escape only enters such spaces after the start.
+     *
+     * @param graph the compiled graph
+     * @return the escape index of all spaces of the graph
+     */
+    static EscapeIndex build(SpaceGraph graph) {
+        return build(graph, null);
+    }
+
+    private static EscapeIndex build(SpaceGraph graph, GraphVersion building) {
+        int n = graph.size();
+        int[] distance = new int[n];
+        int[] next = new int[n];
+        int[] queue = new int[n];
+        Arrays.fill(distance, -1);
+        Arrays.fill(next, -1);
+
+        int head = 0;
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (graph.isExit(v)) {
+                distance[v] = 0;
+                if (graph.isEscapeRoute(v)) {
+                    queue[tail++] = v;
+                }
+            }
+        }
+
+        int[] offsets = graph.reverseOffsets();
+        int[] sources = graph.reverseTargets();
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int u = sources[e];
+                if (distance[u] < 0) {
+                    distance[u] = distance[v] + 1;
+                    next[u] = v;
+                    if (graph.isEscapeRoute(u)) {
+                        queue[tail++] = u;
+                    }
+                }
+            }
+        }
+
+        Set<GraphVersion> dependencies = dependencies(graph);
+        if (building != null) {
+            dependencies.add(building);
+        }
+        GraphVersion[] versionSources = dependencies.toArray(new GraphVersion[0]);
+        long[] versions = new long[versionSources.length];
+        for (int i = 0; i < versionSources.length; i++) {
+            versions[i] = versionSources[i].value();
+        }
+        return new EscapeIndex(graph, distance, next, versionSources, versions);
+    }
+
+    /**
+     * Returns the versions the changes of the spaces of a graph are counted in: the buildings the spaces belong to and
+     * the spaces that belong to no building. Spaces without connections, like public roads, cannot change.
+     *
+     * @param graph the compiled graph
+     * @return the distinct versions
+     */
+    static Set<GraphVersion> dependencies(SpaceGraph graph) {
+        Set<GraphVersion> dependencies = new LinkedHashSet<>(); // GraphVersion compares by identity
+        GraphVersion last = null;
+        for (int v = 0; v < graph.size(); v++) {
+            if (graph.space(v) instanceof OwnedSpace owned && owned.version() != last) {
+                last = owned.version();
+                dependencies.add(last);
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Returns true if the spaces or connections of a building or free space the graph of this index reaches changed
+     * after this index was built.
+     *
+     * @return true if the index has to be rebuilt
+     */
+    public boolean isStale() {
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i].value() != versions[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the compiled graph the index was built on.
+     *
+     * @return the compiled graph
+     */
+    public SpaceGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Returns true if the space is part of the index.
+     *
+     * @param space the space
+     * @return true if the index knows the escape path of the space
+     */
+    public boolean contains(Space space) {
+        return graph.indexOf(space) >= 0;
+    }
+
+    /**
+     * Returns the number of steps from the space to the nearest exit, 0 for an exit.
+     *
+     * @param space the space
+     * @return the escape distance, or -1 if the space has no escape or is not part of the index
+     */
+    public int distance(Space space) {
+        int v = graph.indexOf(space);
+        return v < 0 ? -1 : distance[v];
+    }
+
+    /**
+     * Returns the escape distance of the space with the given graph index, see distance(Space).
+     *
+     * @param index the index of the space in graph()
+     * @return the escape distance or -1
+     */
+    public int distance(int index) {
+        return distance[index];
+    }
+
+    /**
+     * Returns the graph index of the next space on the escape path of the space with the given graph index.
+     *
+     * @param index the index of the space in graph()
+     * @return the index of the next space, or -1 for exits and spaces without escape
+     */
+    public int next(int index) {
+        return next[index];
+    }
+
+    /**
+     * Adds the escape path of the space, starting with the space itself, to the given list.
+     * Nothing is added if the space has no escape.
+     *
+     * @param space the space, must be part of the index
+     * @param path the list the spaces of the path are added to
+     */
+    public void escapePath(Space space, List<Space> path) {
+        int v = graph.indexOf(space);
+        if (v < 0) { throw new IllegalArgumentException("The space is not part of this escape index."); }
+        if (distance[v] < 0) {
+            return;
+        }
+        for (; v >= 0; v = next[v]) {
+            path.add(graph.space(v));
+        }
+    }
+
+    /**
+     * Must be called whenever connections of a space are added or removed. The escape indices whose graph contains
+     * the space are stale afterwards.
+     *
+     * @param space the space whose connections changed
+     */
+    static void graphChanged(Space space) {
+        if (space instanceof OwnedSpace owned) {
+            owned.connectionsChanged();
+        }
+    }
+
+    /**
+     * Records that the space was added to the building, so that escapes of the space can use the building's index.
+     *
+     * @param building the building
+     * @param space the space added to the building
+     */
+    static void register(Building building, Space space) {
+        if (space instanceof OwnedSpace owned) {
+            owned.setOwner(building);
+        }
+        building.graphChanged();
+    }
+
+    /**
+     * Records that the spaces were added to the building, like register(building, space) for every space.
+     *
+     * @param building the building
+     * @param spaces the spaces added to the building
+     */
+    static void register(Building building, Collection<? extends Space> spaces) {
+        for (Space space : spaces) {
+            if (space instanceof OwnedSpace owned) {
+                owned.setOwner(building);
+            }
+        }
+        building.graphChanged();
+    }
+
+    /**
+     * Returns the building the space was added to last.
+     *
+     * @param space the space
+     * @return the building, or null if the space was never added to a building
+     */
+    static Building owner(Space space) {
+        return space instanceof OwnedSpace owned ? owned.owner() : null;
+    }
+
+    /**
+     * Returns the up-to-date escape index of the building the space was added to last,
+     * or null if the space was never added to a building.
+     *
+     * @param space the space
+     * @return the escape index containing the space or null
+     */
+    static EscapeIndex of(Space space) {
+        Building building = owner(space);
+        return building == null ? null : building.escapeIndex();
+    }
+}
@@ -0,0 +1,354 @@
+import java.util.*;
+
+/**
+ * EvacuationCapacity computes how many people per minute can leave a building, which the length of the escape paths
+ * does not tell: if the occupants of many served spaces share a single corridor, the corridor limits the evacuation.
+ *
+ * Every space that can be walked through gets a capacity of FLOW_PER_METRE persons per minute and metre of width:
+ * - ServedSpace: the smaller side of its movement area,
+ * - ServantSpace: SERVANT_WIDTH, PureCirculation and other circulations: CORRIDOR_WIDTH,
+ * - Exterior and PublicRoad: unlimited; lifts are never used.
+ * A door between two connected spaces is as wide as the narrower of the two spaces, but at most MAX_DOOR_WIDTH
+ * (between two unlimited spaces, e.g. an exterior and a road, there is no door).
+ * Unlike Escape, the flow may lead through any circulation that is not a lift (corridors and exteriors as well),
+ * because these are the spaces the crowd actually moves through.
+ *
+ * The maximum flow from all served spaces (the occupied rooms) to all public roads and exit exteriors is computed with
+ * Dinic's algorithm over the compiled SpaceGraph. Each space is split into an in- and an out-node joined by an edge
+ * with the capacity of the space, so spaces and doors can both be bottlenecks. The network is stored in primitive
+ * arrays and the blocking flows are found with an iterative search, so buildings with 10^5 spaces do not overflow
+ * the stack. The minimum cut - the spaces and doors that are used to capacity - is reported as the bottleneck.
+ */
+public class EvacuationCapacity {
+
+    public static final double FLOW_PER_METRE = 80.0;  // persons per minute and metre of width
+    public static final double SERVANT_WIDTH = 1.0;
+    public static final double CORRIDOR_WIDTH = 1.2;
+    public static final double MAX_DOOR_WIDTH = 2.0;
+    public static final double AREA_PER_OCCUPANT = 10.0; // square metres of movement area per occupant
+
+    private static final long UNLIMITED = Long.MAX_VALUE / 4;
+
+    /**
+     * A connection between two spaces that limits the evacuation.
+     */
+    public static final class Door {
+
+        private final Space from;
+        private final Space to;
+        private final long capacity;
+
+        private Door(Space from, Space to, long capacity) {
+            this.from = from;
+            this.to = to;
+            this.capacity = capacity;
+        }
+
+        public Space from() { return from; }
+
+        public Space to() { return to; }
+
+        /**
+         * @return the capacity of the door in persons per minute
+         */
+        public long capacity() { return capacity; }
+    }
+
+    /**
+     * The result of an analysis.
+     */
+    public static final class Report {
+
+        private final long capacity;
+        private final long occupants;
+        private final List<Space> bottleneckSpaces;
+        private final List<Door> bottleneckDoors;
+
+        private Report(long capacity, long occupants, List<Space> bottleneckSpaces, List<Door> bottleneckDoors) {
+            this.capacity = capacity;
+            this.occupants = occupants;
+            this.bottleneckSpaces = Collections.unmodifiableList(bottleneckSpaces);
+            this.bottleneckDoors = Collections.unmodifiableList(bottleneckDoors);
+        }
+
+        /**
+         * @return the number of persons per minute that can leave the building
+         */
+        public long capacity() { return capacity; }
+
+        /**
+         * @return the estimated number of occupants of all served spaces
+         */
+        public long occupants() { return occupants; }
+
+        /**
+         * Returns the estimated time to evacuate all occupants at full capacity, ignoring walking times.
+         *
+         * @return the evacuation time in minutes, infinite if nobody can leave the building
+         */
+        public double evacuationMinutes() {
+            return occupants == 0 ? 0.0 : capacity == 0 ? Double.POSITIVE_INFINITY : (double) occupants / capacity;
+        }
+
+        /**
+         * @return the spaces of the minimum cut, used to their full capacity
+         */
+        public List<Space> bottleneckSpaces() { return bottleneckSpaces; }
+
+        /**
+         * @return the doors of the minimum cut, used to their full capacity
+         */
+        public List<Door> bottleneckDoors() { return bottleneckDoors; }
+
+        @Override
+        public String toString() {
+            return "capacity " + capacity + " persons/min for " + occupants + " occupants (" + evacuationMinutes()
+                    + " min), bottleneck: " + bottleneckSpaces.size() + " spaces, " + bottleneckDoors.size() + " doors";
+        }
+    }
+
+    // flow network in forward-star form; edge e and its reverse edge e ^ 1 are stored next to each other
+    private final int nodes;
+    private final int source;
+    private final int sink;
+    private final int[] head;
+    private int[] nextEdge;
+    private int[] to;
+    private long[] capacity;
+    private int edges = 0;
+
+    private final int[] level;
+    private final int[] current;
+    private final int[] queue;
+
+    private EvacuationCapacity(int nodes, int expectedEdges) {
+        this.nodes = nodes;
+        this.source = nodes - 2;
+        this.sink = nodes - 1;
+        head = new int[nodes];
+        Arrays.fill(head, -1);
+        nextEdge = new int[2 * expectedEdges];
+        to = new int[2 * expectedEdges];
+        capacity = new long[2 * expectedEdges];
+        level = new int[nodes];
+        current = new int[nodes];
+        queue = new int[nodes];
+    }
+
+    /**
+     * Analyzes the evacuation capacity of a building.
+     *
+     * @param building the building
+     * @return the report
+     */
+    public static Report analyze(Building building) {
+        return analyze(building.compileGraph());
+    }
+
+    /**
+     * Analyzes the evacuation capacity of all served spaces of a compiled graph.
+     *
+     * @param graph the compiled graph
+     * @return the report
+     */
+    public static Report analyze(SpaceGraph graph) {
+        if (graph == null) { throw new IllegalArgumentException("The graph is null."); }
+        int n = graph.size();
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+
+        // space v is split into in-node 2v and out-node 2v + 1
+        EvacuationCapacity network = new EvacuationCapacity(2 * n + 2, 3 * n + targets.length);
+        double[] widths = new double[n];
+        long occupants = 0;
+        for (int v = 0; v < n; v++) {
+            Space space = graph.space(v);
+            widths[v] = width(space);
+            if (widths[v] < 0) {
+                continue; // not passable
+            }
+            network.addEdge(2 * v, 2 * v + 1, capacity(widths[v]));
+            if (space instanceof ServedSpace) {
+                network.addEdge(network.source, 2 * v, UNLIMITED);
+                occupants += (long) Math.ceil(graph.movementArea(v) / AREA_PER_OCCUPANT);
+            }
+            if (space instanceof PublicRoad || (graph.isExit(v) && !(space instanceof Room))) {
+                network.addEdge(2 * v + 1, network.sink, UNLIMITED);
+            }
+        }
+        for (int u = 0; u < n; u++) {
+            if (widths[u] < 0 || graph.space(u) instanceof PublicRoad) {
+                continue; // people leaving through a road are out
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int w = targets[e];
+                if (widths[w] >= 0 && w != u) {
+                    double narrower = Math.min(widths[u], widths[w]);
+                    double door = narrower == Double.POSITIVE_INFINITY ? narrower : Math.min(MAX_DOOR_WIDTH, narrower);
+                    network.addEdge(2 * u + 1, 2 * w, capacity(door));
+                }
+            }
+        }
+
+        long flow = network.maxFlow();
+
+        // the minimum cut: saturated edges from the nodes still reachable from the source to the others
+        boolean[] reachable = network.residualReachable();
+        List<Space> bottleneckSpaces = new ArrayList<>();
+        List<Door> bottleneckDoors = new ArrayList<>();
+        for (int e = 0; e < network.edges; e += 2) {
+            int from = network.to[e + 1];
+            int target = network.to[e];
+            if (!reachable[from] || reachable[target] || from >= 2 * n || target >= 2 * n) {
+                continue;
+            }
+            long original = network.capacity[e] + network.capacity[e + 1];
+            if (from / 2 == target / 2) {
+                bottleneckSpaces.add(graph.space(from / 2));
+            } else {
+                bottleneckDoors.add(new Door(graph.space(from / 2), graph.space(target / 2), original));
+            }
+        }
+        return new Report(flow, occupants, bottleneckSpaces, bottleneckDoors);
+    }
+
+    /**
+     * Returns the width of a space in metres, Double.POSITIVE_INFINITY if it does not limit the flow,
+     * or -1 if the space cannot be walked through.
+     */
+    static double width(Space space) {
+        if (space instanceof Lift) {
+            return -1;
+        }
+        if (space instanceof ServedSpace served) {
+            return Math.min(served.getMovementArea().x(), served.getMovementArea().y());
+        }
+        if (space instanceof ServantSpace) {
+            return SERVANT_WIDTH;
+        }
+        if (space instanceof Exterior || space instanceof PublicRoad) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (space instanceof Circulation) {
+            return CORRIDOR_WIDTH;
+        }
+        return -1;
+    }
+
+    static long capacity(double width) {
+        return width == Double.POSITIVE_INFINITY ? UNLIMITED : Math.round(FLOW_PER_METRE * width);
+    }
+
+    private void addEdge(int from, int target, long edgeCapacity) {
+        if (edges + 2 > to.length) {
+            int length = Math.max(16, 2 * to.length);
+            nextEdge = Arrays.copyOf(nextEdge, length);
+            to = Arrays.copyOf(to, length);
+            capacity = Arrays.copyOf(capacity, length);
+        }
+        to[edges] = target;
+        capacity[edges] = edgeCapacity;
+        nextEdge[edges] = head[from];
+        head[from] = edges++;
+        to[edges] = from;
+        capacity[edges] = 0;
+        nextEdge[edges] = head[target];
+        head[target] = edges++;
+    }
+
+    /**
+     * Dinic's algorithm: repeatedly builds the level graph with a breadth-first search and saturates it with a
+     * blocking flow.
+     */
+    private long maxFlow() {
+        long flow = 0;
+        while (buildLevels()) {
+            System.arraycopy(head, 0, current, 0, nodes);
+            flow += blockingFlow();
+        }
+        return flow;
+    }
+
+    private boolean buildLevels() {
+        Arrays.fill(level, -1);
+        int headIndex = 0;
+        int tail = 0;
+        level[source] = 0;
+        queue[tail++] = source;
+        while (headIndex < tail) {
+            int v = queue[headIndex++];
+            for (int e = head[v]; e >= 0; e = nextEdge[e]) {
+                if (capacity[e] > 0 && level[to[e]] < 0) {
+                    level[to[e]] = level[v] + 1;
+                    queue[tail++] = to[e];
+                }
+            }
+        }
+        return level[sink] >= 0;
+    }
+
+    /**
+     * Finds a blocking flow in the level graph with an iterative depth-first search. The path is kept as a stack of
+     * edges; current[v] is the next edge of v to try, so every edge is discarded at most once per phase.
+     */
+    private long blockingFlow() {
+        long flow = 0;
+        int[] path = new int[nodes];
+        int top = 0;
+        int v = source;
+        while (true) {
+            if (v == sink) {
+                long pushed = Long.MAX_VALUE;
+                for (int i = 0; i < top; i++) {
+                    pushed = Math.min(pushed, capacity[path[i]]);
+                }
+                int saturated = top;
+                for (int i = 0; i < top; i++) {
+                    int e = path[i];
+                    capacity[e] -= pushed;
+                    capacity[e ^ 1] += pushed;
+                    if (capacity[e] == 0 && saturated == top) {
+                        saturated = i;
+                    }
+                }
+                flow += pushed;
+                top = saturated; // continue from the tail of the first saturated edge
+                v = top == 0 ? source : to[path[top - 1]];
+                continue;
+            }
+            int e = current[v];
+            while (e >= 0 && (capacity[e] == 0 || level[to[e]] != level[v] + 1)) {
+                e = nextEdge[e];
+            }
+            current[v] = e;
+            if (e >= 0) {
+                path[top++] = e;
+                v = to[e];
+            } else if (v == source) {
+                return flow;
+            } else {
+                level[v] = -1; // dead end, never enter v again in this phase
+                top--;
+                v = top == 0 ? source : to[path[top - 1]];
+            }
+        }
+    }
+
+    private boolean[] residualReachable() {
+        boolean[] reachable = new boolean[nodes];
+        int headIndex = 0;
+        int tail = 0;
+        reachable[source] = true;
+        queue[tail++] = source;
+        while (headIndex < tail) {
+            int v = queue[headIndex++];
+            for (int e = head[v]; e >= 0; e = nextEdge[e]) {
+                if (capacity[e] > 0 && !reachable[to[e]]) {
+                    reachable[to[e]] = true;
+                    queue[tail++] = to[e];
+                }
+            }
+        }
+        return reachable;
+    }
+}
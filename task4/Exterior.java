@@ -8,7 +8,7 @@ import java.util.Set;
  * envelope are not closable, even though they are perceived as rooms
  * and integrated into the building.
  */
-public class Exterior implements Space, Circulation {
+public class Exterior extends OwnedSpace implements Space, Circulation {
 
     private Entity associatedEntity; // The entity (e.g., Building or Complex) to which this exterior space belongs
     private ArrayList<Space> connectedSpaces; // Spaces connected to this exterior space
@@ -69,6 +69,15 @@ public class Exterior implements Space, Circulation {
         return associatedEntity;
     }
 
+    /**
+     * Gets the entity this exterior space is part of, without asserting that there is one.
+     *
+     * @return the associated entity, or null if the space is not part of an entity
+     */
+    Entity associatedEntity() {
+        return associatedEntity;
+    }
+
     /**
      * Gets the escape route for this exterior space.
      *
@@ -88,6 +97,7 @@ public class Exterior implements Space, Circulation {
     public Set<Space> remove() {
         Set<Space> dependentSpaces = new HashSet<>(connectedSpaces);
         connectedSpaces.clear(); // Disconnect all connections
+        EscapeIndex.graphChanged(this);
         // connectedSpaces is empty
         assert connectedSpaces.isEmpty() : "connectedSpaces should be empty after removal";
         return dependentSpaces;
@@ -104,6 +114,7 @@ public class Exterior implements Space, Circulation {
         connectedSpaces.add(space);
         // connectedSpaces contains space
         assert connectedSpaces.contains(space) : "connectedSpaces should contain the newly added space";
+        EscapeIndex.graphChanged(this);
     }
 
     /**
@@ -127,6 +138,7 @@ public class Exterior implements Space, Circulation {
         connectedSpaces.add(space);
         // connectedSpaces contains space
         assert connectedSpaces.contains(space) : "connectedSpaces should contain the newly added space";
+        EscapeIndex.graphChanged(this);
     }
 
     /**
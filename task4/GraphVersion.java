@@ -0,0 +1,25 @@
+/**
+ * A GraphVersion counts the changes of a part of the space graph: the spaces and connections of one Building, the
+ * connections of one space that belongs to no building (see OwnedSpace), or all changes below a City. The positions
+ * of the rooms of a Building are counted in a version of their own. Indices built over the graph remember the
+ * values of the versions they depend on and are stale once one of them has changed, so a change only invalidates
+ * the indices that contain the changed part.
+ */
+final class GraphVersion {
+
+    private volatile long value = 0;
+
+    /**
+     * @return the number of changes so far
+     */
+    long value() {
+        return value;
+    }
+
+    /**
+     * Records a change.
+     */
+    void increment() {
+        value++;
+    }
+}
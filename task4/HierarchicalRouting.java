@@ -0,0 +1,606 @@
+import java.util.*;
+
+/**
+ * HierarchicalRouting answers escape and routing queries in tall buildings without searching every floor.
+ *
+ * The spaces are divided into cells, one per floor. A space is a portal of its cell if it is connected to a space of
+ * another cell (a staircase landing, the room next to a lift) or if it is an exit. For every cell, the distances
+ * between its spaces and its portals within the cell are computed once with breadth-first searches that stay on the
+ * floor, and the portals form an overlay graph: two portals of a cell are connected with the distance between them on
+ * the floor, and every connection between cells is an overlay connection of length 1. A query then only reads the
+ * distances of the start's floor and searches the overlay, which has a few portals per floor instead of all spaces.
+ *
+ * There are two levels with their own cells, portals and overlays:
+ * - escape: like Escape and EscapeIndex, the start may be any space and all following spaces must be escape routes
+ *   (rooms, but no lifts). The overlay distance from every portal to the nearest exit is computed in advance, so the
+ *   escape distance of a room is the minimum over the portals of its floor, without any search.
+ * - routing: any connection may be used, including lifts. Spaces without a floor (lifts, corridors, exteriors) belong
+ *   to the floor of their neighbors if all neighbors with a floor are on the same floor, otherwise they form a cell of
+ *   their own, so a lift is a portal connecting the landings of all its floors.
+ * Distances are numbers of steps, as in EscapeIndex. The tables need (spaces of a floor) * (portals of the floor)
+ * ints per floor, which is small for floors with a few circulation cores.
+ *
+ * The routing is a snapshot of a compiled SpaceGraph. Queries reuse the arrays of the overlay search and are not
+ * thread-safe.
+ */
+public class HierarchicalRouting {
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final SpaceGraph graph;
+    private final Level escape;
+    private final Level routing;
+    private final int[] exitDistance; // per portal of the escape level: overlay distance to the nearest exit
+
+    // state of the overlay search of distance(int, int), reset after every query
+    private final int[] overlayDistance;
+    private final int[] touched;
+    private int touchedCount = 0;
+    private final IndexedHeap open;
+
+    /**
+     * Precomputes the cells, tables and overlays of a compiled graph.
+     *
+     * @param graph the compiled graph, e.g. Building.compileGraph()
+     */
+    public HierarchicalRouting(SpaceGraph graph) {
+        if (graph == null) { throw new IllegalArgumentException("The graph is null."); }
+        this.graph = graph;
+        escape = new Level(graph, true);
+        routing = new Level(graph, false);
+        exitDistance = exitDistances(escape, graph);
+
+        overlayDistance = new int[routing.portalCount()];
+        Arrays.fill(overlayDistance, UNREACHABLE);
+        touched = new int[routing.portalCount()];
+        open = new IndexedHeap(routing.portalCount());
+    }
+
+    /**
+     * Precomputes the routing of a building.
+     *
+     * @param building the building
+     * @return the routing over the compiled graph of the building
+     */
+    public static HierarchicalRouting of(Building building) {
+        return new HierarchicalRouting(building.compileGraph());
+    }
+
+    /**
+     * Returns the compiled graph the routing was computed for.
+     *
+     * @return the compiled graph
+     */
+    public SpaceGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Returns the number of portals of the escape level, i.e. the size of its overlay graph.
+     *
+     * @return the number of escape portals
+     */
+    public int escapePortals() {
+        return escape.portalCount();
+    }
+
+    /**
+     * Returns the number of portals of the routing level, i.e. the size of its overlay graph.
+     *
+     * @return the number of routing portals
+     */
+    public int routingPortals() {
+        return routing.portalCount();
+    }
+
+    /**
+     * Returns the number of steps from the space with the given index to the nearest exit, as EscapeIndex.distance().
+     *
+     * @param start the index of the space
+     * @return the escape distance, 0 for an exit, -1 if the space has no escape
+     */
+    public int escapeDistance(int start) {
+        if (graph.isExit(start)) {
+            return 0;
+        }
+        int best = UNREACHABLE;
+        if (escape.cell[start] >= 0) {
+            best = memberEscapeDistance(start);
+        } else {
+            // spaces that are no escape routes can only be the start: continue with a neighboring escape route
+            int[] offsets = graph.offsets();
+            int[] targets = graph.targets();
+            for (int e = offsets[start]; e < offsets[start + 1]; e++) {
+                int w = targets[e];
+                if (escape.cell[w] >= 0) {
+                    int distance = memberEscapeDistance(w);
+                    if (distance != UNREACHABLE) {
+                        best = Math.min(best, distance + 1);
+                    }
+                }
+            }
+        }
+        return best == UNREACHABLE ? -1 : best;
+    }
+
+    /**
+     * Finds a shortest escape path from the space with the given index. Every step goes to a neighbor whose escape
+     * distance is one less, so only the distances of the spaces on the path are evaluated.
+     *
+     * @param start the index of the first space of the path
+     * @return the indices of the spaces on the path from start to the exit, or an empty array if there is none
+     */
+    public int[] escapePath(int start) {
+        int distance = escapeDistance(start);
+        if (distance < 0) {
+            return new int[0];
+        }
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int[] path = new int[distance + 1];
+        path[0] = start;
+        for (int i = 1; i <= distance; i++) {
+            int v = path[i - 1];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                if (escape.cell[w] >= 0 && memberEscapeDistance(w) == distance - i) {
+                    path[i] = w;
+                    break;
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Finds a shortest escape of a space.
+     *
+     * @param space the space to escape from
+     * @return the shortest escape, with length 0 if the space has no escape
+     *
+     * Precondition: The space is part of the graph.
+     */
+    public Escape escape(Space space) {
+        int start = graph.indexOf(space);
+        if (start < 0) { throw new IllegalArgumentException("The space is not part of the graph."); }
+        ArrayList<Space> path = new ArrayList<>();
+        for (int index : escapePath(start)) {
+            path.add(graph.space(index));
+        }
+        return new Escape(space, path);
+    }
+
+    /**
+     * Returns the number of steps of the shortest route between two spaces over any connections, lifts included.
+     * Only the floors of the two spaces and the overlay are searched.
+     *
+     * @param from the index of the space the route starts at
+     * @param to the index of the destination
+     * @return the number of steps, or -1 if the destination cannot be reached
+     */
+    public int distance(int from, int to) {
+        if (from == to) {
+            return 0;
+        }
+        int source = routing.cell[from];
+        int target = routing.cell[to];
+        int best = source == target ? routing.distanceInCell(from, to) : UNREACHABLE;
+        try {
+            for (int k = 0; k < routing.portals(source); k++) {
+                int distance = routing.forward(from, k);
+                if (distance != UNREACHABLE) {
+                    reach(routing.portalStart[source] + k, distance);
+                }
+            }
+            while (!open.isEmpty() && open.peekKey() < best) {
+                int p = open.poll();
+                int distance = overlayDistance[p];
+                if (routing.cell[routing.portalNodes[p]] == target) {
+                    int last = routing.backward(to, p - routing.portalStart[target]);
+                    if (last != UNREACHABLE) {
+                        best = Math.min(best, distance + last);
+                    }
+                }
+                for (int e = routing.overlayOffsets[p]; e < routing.overlayOffsets[p + 1]; e++) {
+                    reach(routing.overlayTargets[e], distance + routing.overlayWeights[e]);
+                }
+            }
+        } finally {
+            reset();
+        }
+        return best == UNREACHABLE ? -1 : best;
+    }
+
+    /**
+     * Returns the number of steps of the shortest route between two spaces, see distance(int, int).
+     *
+     * @param from the space the route starts at
+     * @param to the destination
+     * @return the number of steps, or -1 if the destination cannot be reached
+     *
+     * Precondition: Both spaces are part of the graph.
+     */
+    public int distance(Space from, Space to) {
+        int u = graph.indexOf(from);
+        int v = graph.indexOf(to);
+        if (u < 0 || v < 0) { throw new IllegalArgumentException("The spaces are not part of the graph."); }
+        return distance(u, v);
+    }
+
+    /**
+     * Returns the escape distance of an escape route: the distance to a portal of its floor plus the overlay distance
+     * from there to the nearest exit. Exits on the floor are portals with exit distance 0.
+     */
+    private int memberEscapeDistance(int v) {
+        int cell = escape.cell[v];
+        int best = UNREACHABLE;
+        for (int k = 0; k < escape.portals(cell); k++) {
+            int toPortal = escape.forward(v, k);
+            int fromPortal = exitDistance[escape.portalStart[cell] + k];
+            if (toPortal != UNREACHABLE && fromPortal != UNREACHABLE) {
+                best = Math.min(best, toPortal + fromPortal);
+            }
+        }
+        return best;
+    }
+
+    private void reach(int portal, int distance) {
+        if (distance < overlayDistance[portal]) {
+            if (overlayDistance[portal] == UNREACHABLE) {
+                touched[touchedCount++] = portal;
+            }
+            overlayDistance[portal] = distance;
+            open.offer(portal, distance);
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < touchedCount; i++) {
+            overlayDistance[touched[i]] = UNREACHABLE;
+        }
+        touchedCount = 0;
+        open.clear();
+    }
+
+    /**
+     * Computes the overlay distance from every portal to the nearest exit with Dijkstra's algorithm over the reversed
+     * overlay, starting from all exits.
+     */
+    private static int[] exitDistances(Level level, SpaceGraph graph) {
+        int portals = level.portalCount();
+        int[] distance = new int[portals];
+        Arrays.fill(distance, UNREACHABLE);
+        IndexedHeap heap = new IndexedHeap(portals);
+        for (int p = 0; p < portals; p++) {
+            if (graph.isExit(level.portalNodes[p])) {
+                distance[p] = 0;
+                heap.offer(p, 0);
+            }
+        }
+        while (!heap.isEmpty()) {
+            int p = heap.poll();
+            for (int e = level.reverseOffsets[p]; e < level.reverseOffsets[p + 1]; e++) {
+                int q = level.reverseSources[e];
+                int candidate = distance[p] + level.reverseWeights[e];
+                if (candidate < distance[q]) {
+                    distance[q] = candidate;
+                    heap.offer(q, candidate);
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * The cells, portal tables and overlay graph of one level.
+     */
+    private static final class Level {
+
+        final int[] cell;         // cell of every space, -1 if the space is not part of the level
+        final int[] local;        // index of every space within its cell
+        final int[] cellStart;    // the spaces of cell c are members[cellStart[c]] to members[cellStart[c + 1] - 1]
+        final int[] members;
+        final int[] portalStart;  // the portals of cell c are portalNodes[portalStart[c]] to ...[portalStart[c + 1] - 1]
+        final int[] portalNodes;  // the space of every portal; the portal index is the index in this array
+        final int[] tableBase;    // start of the rows of cell c in forward and backward
+        final int[] forward;      // distance within the cell from a space to the k-th portal of its cell
+        final int[] backward;     // distance within the cell from the k-th portal to a space, null for escapes
+
+        final int[] overlayOffsets;
+        final int[] overlayTargets;
+        final int[] overlayWeights;
+        final int[] reverseOffsets;
+        final int[] reverseSources;
+        final int[] reverseWeights;
+
+        private final SpaceGraph graph;
+        private final boolean escapes;
+
+        // breadth-first search within a cell, by local index; a space is seen if stamp equals the current round
+        private final int[] stamp;
+        private final int[] depth;
+        private final int[] queue;
+        private int round = 0;
+
+        // overlay connections while building
+        private int[] connectionFrom = new int[16];
+        private int[] connectionTo = new int[16];
+        private int[] connectionWeight = new int[16];
+        private int connections = 0;
+
+        Level(SpaceGraph graph, boolean escapes) {
+            this.graph = graph;
+            this.escapes = escapes;
+            int n = graph.size();
+            int[] offsets = graph.offsets();
+            int[] targets = graph.targets();
+            int[] reverse = graph.reverseOffsets();
+            int[] sources = graph.reverseTargets();
+
+            // cells: one per floor, spaces without a floor get their own cell
+            cell = new int[n];
+            Map<Integer, Integer> floorCells = new HashMap<>();
+            int cells = 0;
+            for (int v = 0; v < n; v++) {
+                if (escapes && !graph.isEscapeRoute(v)) {
+                    cell[v] = -1;
+                    continue;
+                }
+                int floor = graph.floor(v);
+                if (floor == SpaceGraph.NO_FLOOR && !escapes) {
+                    floor = neighborFloor(v, offsets, targets, reverse, sources);
+                }
+                if (floor == SpaceGraph.NO_FLOOR) {
+                    cell[v] = cells++;
+                } else {
+                    Integer existing = floorCells.putIfAbsent(floor, cells);
+                    cell[v] = existing == null ? cells++ : existing;
+                }
+            }
+
+            cellStart = new int[cells + 1];
+            for (int v = 0; v < n; v++) {
+                if (cell[v] >= 0) {
+                    cellStart[cell[v] + 1]++;
+                }
+            }
+            int largest = 0;
+            for (int c = 0; c < cells; c++) {
+                largest = Math.max(largest, cellStart[c + 1]);
+                cellStart[c + 1] += cellStart[c];
+            }
+            members = new int[cellStart[cells]];
+            local = new int[n];
+            int[] fill = Arrays.copyOf(cellStart, cells);
+            for (int v = 0; v < n; v++) {
+                if (cell[v] >= 0) {
+                    local[v] = fill[cell[v]] - cellStart[cell[v]];
+                    members[fill[cell[v]]++] = v;
+                }
+            }
+
+            // portals: spaces connected to another cell, and exits
+            boolean[] portal = new boolean[n];
+            int portalCount = 0;
+            for (int v = 0; v < n; v++) {
+                if (cell[v] < 0) {
+                    continue;
+                }
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    int w = targets[e];
+                    if (cell[w] >= 0 && cell[w] != cell[v]) {
+                        portal[v] = true;
+                        portal[w] = true;
+                    }
+                }
+                portal[v] |= escapes && graph.isExit(v);
+            }
+            portalStart = new int[cells + 1];
+            for (int v = 0; v < n; v++) {
+                if (portal[v]) {
+                    portalStart[cell[v] + 1]++;
+                    portalCount++;
+                }
+            }
+            for (int c = 0; c < cells; c++) {
+                portalStart[c + 1] += portalStart[c];
+            }
+            portalNodes = new int[portalCount];
+            int[] portalIndex = new int[n];
+            fill = Arrays.copyOf(portalStart, cells);
+            for (int c = 0; c < cells; c++) {
+                for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                    int v = members[i];
+                    if (portal[v]) {
+                        portalIndex[v] = fill[c];
+                        portalNodes[fill[c]++] = v;
+                    }
+                }
+            }
+
+            tableBase = new int[cells + 1];
+            long size = 0;
+            for (int c = 0; c < cells; c++) {
+                tableBase[c] = (int) size;
+                size += (long) (cellStart[c + 1] - cellStart[c]) * (portalStart[c + 1] - portalStart[c]);
+                if (size > Integer.MAX_VALUE - 8) { throw new IllegalArgumentException("The floors have too many portals."); }
+            }
+            tableBase[cells] = (int) size;
+            forward = new int[(int) size];
+            backward = escapes ? null : new int[(int) size];
+            Arrays.fill(forward, UNREACHABLE);
+            if (backward != null) {
+                Arrays.fill(backward, UNREACHABLE);
+            }
+
+            stamp = new int[largest];
+            depth = new int[largest];
+            queue = new int[largest];
+
+            // distances within the cells; the overlay gets the distances between the portals of a cell
+            for (int c = 0; c < cells; c++) {
+                int portals = portals(c);
+                for (int k = 0; k < portals; k++) {
+                    int p = portalNodes[portalStart[c] + k];
+                    search(p, reverse, sources);
+                    for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                        int x = members[i];
+                        if (stamp[local[x]] == round) {
+                            forward[tableBase[c] + local[x] * portals + k] = depth[local[x]];
+                        }
+                    }
+                    search(p, offsets, targets);
+                    for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                        int x = members[i];
+                        if (stamp[local[x]] != round) {
+                            continue;
+                        }
+                        if (backward != null) {
+                            backward[tableBase[c] + local[x] * portals + k] = depth[local[x]];
+                        }
+                        if (portal[x] && x != p) {
+                            addOverlayConnection(portalIndex[p], portalIndex[x], depth[local[x]]);
+                        }
+                    }
+                }
+            }
+            // the connections between cells
+            for (int v = 0; v < n; v++) {
+                if (cell[v] < 0) {
+                    continue;
+                }
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    int w = targets[e];
+                    if (cell[w] >= 0 && cell[w] != cell[v]) {
+                        addOverlayConnection(portalIndex[v], portalIndex[w], 1);
+                    }
+                }
+            }
+
+            overlayOffsets = new int[portalCount + 1];
+            overlayTargets = new int[connections];
+            overlayWeights = new int[connections];
+            sort(connectionFrom, connectionTo, overlayOffsets, overlayTargets, overlayWeights);
+            reverseOffsets = new int[portalCount + 1];
+            reverseSources = new int[connections];
+            reverseWeights = new int[connections];
+            sort(connectionTo, connectionFrom, reverseOffsets, reverseSources, reverseWeights);
+            connectionFrom = null;
+            connectionTo = null;
+            connectionWeight = null;
+        }
+
+        private void addOverlayConnection(int from, int to, int weight) {
+            if (connections == connectionFrom.length) {
+                connectionFrom = Arrays.copyOf(connectionFrom, 2 * connections);
+                connectionTo = Arrays.copyOf(connectionTo, 2 * connections);
+                connectionWeight = Arrays.copyOf(connectionWeight, 2 * connections);
+            }
+            connectionFrom[connections] = from;
+            connectionTo[connections] = to;
+            connectionWeight[connections++] = weight;
+        }
+
+        /**
+         * Stores the collected overlay connections in compressed sparse row form, grouped by key with a counting sort.
+         */
+        private void sort(int[] keys, int[] values, int[] offsets, int[] sortedValues, int[] sortedWeights) {
+            for (int e = 0; e < connections; e++) {
+                offsets[keys[e] + 1]++;
+            }
+            for (int p = 0; p + 1 < offsets.length; p++) {
+                offsets[p + 1] += offsets[p];
+            }
+            int[] fill = Arrays.copyOf(offsets, offsets.length - 1);
+            for (int e = 0; e < connections; e++) {
+                int i = fill[keys[e]]++;
+                sortedValues[i] = values[e];
+                sortedWeights[i] = connectionWeight[e];
+            }
+        }
+
+        int portalCount() {
+            return portalNodes.length;
+        }
+
+        int portals(int c) {
+            return portalStart[c + 1] - portalStart[c];
+        }
+
+        int forward(int v, int k) {
+            int c = cell[v];
+            return forward[tableBase[c] + local[v] * portals(c) + k];
+        }
+
+        int backward(int v, int k) {
+            int c = cell[v];
+            return backward[tableBase[c] + local[v] * portals(c) + k];
+        }
+
+        /**
+         * Returns the distance between two spaces of the same cell on a path that stays in the cell.
+         */
+        int distanceInCell(int from, int to) {
+            search(from, graph.offsets(), graph.targets(), to);
+            return stamp[local[to]] == round ? depth[local[to]] : UNREACHABLE;
+        }
+
+        private void search(int start, int[] offsets, int[] targets) {
+            search(start, offsets, targets, -1);
+        }
+
+        /**
+         * Breadth-first search from the start over the given connections, without leaving the cell of the start.
+         * Stops early when the goal is reached.
+         */
+        private void search(int start, int[] offsets, int[] targets, int goal) {
+            int c = cell[start];
+            if (++round == Integer.MAX_VALUE) { // the stamps of earlier searches could be mistaken for the new round
+                Arrays.fill(stamp, 0);
+                round = 1;
+            }
+            int head = 0;
+            int tail = 0;
+            stamp[local[start]] = round;
+            depth[local[start]] = 0;
+            queue[tail++] = start;
+            while (head < tail && start != goal) {
+                int v = queue[head++];
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    int w = targets[e];
+                    if (cell[w] == c && stamp[local[w]] != round) {
+                        stamp[local[w]] = round;
+                        depth[local[w]] = depth[local[v]] + 1;
+                        if (w == goal) {
+                            return;
+                        }
+                        queue[tail++] = w;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the floor of the neighbors of a space without floor, or NO_FLOOR if they are on different floors
+         * or have no floor either.
+         */
+        private int neighborFloor(int v, int[] offsets, int[] targets, int[] reverse, int[] sources) {
+            int floor = SpaceGraph.NO_FLOOR;
+            for (int pass = 0; pass < 2; pass++) {
+                int[] starts = pass == 0 ? offsets : reverse;
+                int[] ends = pass == 0 ? targets : sources;
+                for (int e = starts[v]; e < starts[v + 1]; e++) {
+                    int other = graph.floor(ends[e]);
+                    if (other == SpaceGraph.NO_FLOOR) {
+                        continue;
+                    }
+                    if (floor != SpaceGraph.NO_FLOOR && floor != other) {
+                        return SpaceGraph.NO_FLOOR;
+                    }
+                    floor = other;
+                }
+            }
+            return floor;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * An IndexedHeap is a binary min-heap of the int elements 0 to capacity - 1 with double keys.
+ * Elements, keys and heap positions are kept in primitive arrays, so no entries are boxed; the position of every
+ * element in the heap is known, so the key of an element can be decreased in O(log n) instead of inserting it again.
+ *
+ * Used for Dijkstra and A* searches over the int indices of a SpaceGraph. Not thread-safe.
+ */
+class IndexedHeap {
+
+    private final int[] heap;      // heap[i] is the element at heap position i
+    private final int[] positions; // positions[e] is the heap position of element e, -1 if e is not in the heap
+    private final double[] keys;
+    private int size = 0;
+
+    /**
+     * Constructs an empty heap for the elements 0 to capacity - 1.
+     *
+     * @param capacity the number of possible elements
+     */
+    IndexedHeap(int capacity) {
+        heap = new int[capacity];
+        positions = new int[capacity];
+        keys = new double[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    int capacity() {
+        return heap.length;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int element) {
+        return positions[element] >= 0;
+    }
+
+    /**
+     * Inserts the element with the given key, or decreases its key if it is already in the heap.
+     * A larger key than the current one is ignored.
+     *
+     * @param element the element
+     * @param key the new key
+     */
+    void offer(int element, double key) {
+        int position = positions[element];
+        if (position < 0) {
+            position = size++;
+            heap[position] = element;
+            positions[element] = position;
+        } else if (key >= keys[element]) {
+            return;
+        }
+        keys[element] = key;
+        siftUp(position);
+    }
+
+    /**
+     * Returns the key of the element with the smallest key.
+     *
+     * Precondition: The heap is not empty.
+     */
+    double peekKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Removes the element with the smallest key.
+     *
+     * @return the removed element
+     *
+     * Precondition: The heap is not empty.
+     */
+    int poll() {
+        int min = heap[0];
+        positions[min] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    /**
+     * Removes all elements, in time proportional to the number of elements in the heap.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position) {
+        int element = heap[position];
+        double key = keys[element];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int other = heap[parent];
+            if (keys[other] <= key) {
+                break;
+            }
+            heap[position] = other;
+            positions[other] = position;
+            position = parent;
+        }
+        heap[position] = element;
+        positions[element] = position;
+    }
+
+    private void siftDown(int position) {
+        int element = heap[position];
+        double key = keys[element];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            int other = heap[child];
+            if (key <= keys[other]) {
+                break;
+            }
+            heap[position] = other;
+            positions[other] = position;
+            position = child;
+        }
+        heap[position] = element;
+        positions[element] = position;
+    }
+}
@@ -10,7 +10,7 @@ import java.util.Set;
  *
  * Implements the Room and Circulation interfaces to ensure compatibility with room and circulation-specific operations.
  */
-public class Lift implements Room, Circulation {
+public class Lift extends OwnedSpace implements Room, Circulation {
 
     private ArrayList<Room> connectedRooms;
 
@@ -54,6 +54,7 @@ public class Lift implements Room, Circulation {
     @Override
     public void addConnectedSpace(Space space) {
         connectedRooms.add((Room) space);
+        EscapeIndex.graphChanged(this);
     }
 
     @Override
@@ -0,0 +1,73 @@
+/**
+ * The common state of the spaces whose connections can change (Exterior, Lift, PureCirculation, ServantSpace and
+ * ServedSpace): the building the space was added to last, and the GraphVersion its changes are counted in. While the
+ * space belongs to a building, changes of its connections count as changes of the building (Building.graphVersion());
+ * before that, they are counted in a version of the space itself. So connecting a space invalidates only the indices
+ * of the building it belongs to, or of the buildings whose graph reaches the free space.
+ *
+ * The owner is cached on the space instead of in a global map, so Circulation.escape() finds the escape index of its
+ * building with a field read. Changes counted in the building are also reported to the City containing it (see
+ * Building.graphChanged()).
+ */
+abstract class OwnedSpace {
+
+    private Building owner = null;
+    private final GraphVersion ownVersion = new GraphVersion(); // changes while the space belongs to no building
+
+    /**
+     * @return the building the space was added to last, or null
+     */
+    Building owner() {
+        return owner;
+    }
+
+    /**
+     * Records that the space was added to a building. The version the space was counted in so far changes, so the
+     * indices that depend on it are rebuilt and depend on the new owner from then on.
+     *
+     * @param building the building the space was added to
+     */
+    void setOwner(Building building) {
+        if (building != owner) {
+            changed();
+            owner = building;
+        }
+    }
+
+    /**
+     * @return the version the changes of the space are counted in
+     */
+    GraphVersion version() {
+        return owner != null ? owner.graphVersion() : ownVersion;
+    }
+
+    /**
+     * @return the version the changes of the position of the space are counted in
+     */
+    GraphVersion positionVersion() {
+        return owner != null ? owner.positionVersion() : ownVersion;
+    }
+
+    /**
+     * Must be called whenever the position of the space changes. Positions are counted apart from the connections,
+     * so moving a room leaves the escape indices valid.
+     */
+    void positionChanged() {
+        positionVersion().increment();
+    }
+
+    /**
+     * Must be called whenever connections of the space are added or removed.
+     */
+    void connectionsChanged() {
+        changed();
+    }
+
+    private void changed() {
+        if (owner != null) {
+            owner.graphChanged();
+        } else {
+            ownVersion.increment();
+        }
+    }
+}
@@ -6,7 +6,7 @@ import java.util.Set;
  * and does not permit any other use. Pure circulation areas are present where many people
  * are on the move and may need to flee if necessary, without being hindered by other uses of the space.
  */
-public class PureCirculation implements Circulation {
+public class PureCirculation extends OwnedSpace implements Circulation {
     ArrayList<Space> connectedSpaces = new ArrayList<Space>();
 
     /**
@@ -36,6 +36,7 @@ public class PureCirculation implements Circulation {
     @Override
     public void addConnectedSpace(Space space) {
         connectedSpaces.add(space);
+        EscapeIndex.graphChanged(this);
     }
 
     /**
@@ -16,6 +16,15 @@ public interface Room extends Circulation {
      */
     int getFloor();
 
+    /**
+     * Returns the position of the room on its floor: the coordinates of its centre in metres.
+     * Rooms without a known position are still indexed per floor, but not by position (see SpatialIndex).
+     *
+     * @return the position, or null if it is unknown
+     */
+    default Vec2 getPosition() {
+        return null;
+    }
 
     /**
      * Checks whether the room is an exit or not.
@@ -6,10 +6,11 @@ import java.util.Set;
  * such as bathrooms, kitchens, utility rooms, etc. These spaces do not need to
  * meet the same quality standards as served spaces.
  */
-public class ServantSpace implements Interior {
+public class ServantSpace extends OwnedSpace implements Interior {
 
     private int floor;
     private Vec2 windowSize;
+    private Vec2 position;
     private ArrayList<Space> connectedSpaces;
 
     private Boolean emergencyArisen; // not fixed
@@ -60,7 +61,12 @@ public class ServantSpace implements Interior {
      */
     @Override
     public void addConnectedSpace(Space space) {
+        boolean becomesExit = space instanceof PublicRoad && !isExit();
         connectedSpaces.add(space);
+        EscapeIndex.graphChanged(this);
+        if (becomesExit) {
+            EntityStatistics.exitAdded(this);
+        }
     }
 
     /**
@@ -84,6 +90,35 @@ public class ServantSpace implements Interior {
         return floor;
     }
 
+    /**
+     * Gets the position of the space on its floor.
+     *
+     * @return the coordinates of the centre of the space, or null if they are unknown
+     */
+    @Override
+    public Vec2 getPosition() {
+        return position;
+    }
+
+    /**
+     * Sets the position of the space on its floor.
+     *
+     * @param position the coordinates of the centre of the space in metres, or null if they are unknown
+     */
+    public void setPosition(Vec2 position) {
+        this.position = position;
+        SpatialIndex.positionChanged(this);
+    }
+
+    /**
+     * Gets the dimensions of the window of the space.
+     *
+     * @return the window size dimensions
+     */
+    public Vec2 getWindowSize() {
+        return windowSize;
+    }
+
     /**
      * Gets the associated entity of the space.
      *
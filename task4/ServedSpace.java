@@ -8,7 +8,7 @@ import java.util.Set;
  * lighting, ventilation, heating, minimum heights, movement areas,
  * and secondary escape routes.
  */
-public class ServedSpace implements Interior {
+public class ServedSpace extends OwnedSpace implements Interior {
 
     private int floor;
     private Boolean isConnectedToLift;
@@ -18,6 +18,7 @@ public class ServedSpace implements Interior {
     private double minimumHeight;
     private Vec2 movementArea;
     private Vec2 windowSize;
+    private Vec2 position;
 
     private Boolean emergencyArisen; // not fixed
 
@@ -85,7 +86,12 @@ public class ServedSpace implements Interior {
      */
     @Override
     public void addConnectedSpace(Space space) {
+        boolean becomesExit = space instanceof PublicRoad && !isExit();
         connectedSpaces.add(space);
+        EscapeIndex.graphChanged(this);
+        if (becomesExit) {
+            EntityStatistics.exitAdded(this);
+        }
     }
 
     /**
@@ -109,6 +115,80 @@ public class ServedSpace implements Interior {
         return floor;
     }
 
+    /**
+     * Gets the position of the space on its floor.
+     *
+     * @return the coordinates of the centre of the space, or null if they are unknown
+     */
+    @Override
+    public Vec2 getPosition() {
+        return position;
+    }
+
+    /**
+     * Sets the position of the space on its floor.
+     *
+     * @param position the coordinates of the centre of the space in metres, or null if they are unknown
+     */
+    public void setPosition(Vec2 position) {
+        this.position = position;
+        SpatialIndex.positionChanged(this);
+    }
+
+    /**
+     * Gets the dimensions of the movement area of the space.
+     *
+     * @return the movement area dimensions
+     */
+    public Vec2 getMovementArea() {
+        return movementArea;
+    }
+
+    /**
+     * Gets the level of natural lighting of the space.
+     *
+     * @return the level of natural lighting
+     */
+    public double getNaturalLighting() {
+        return naturalLighting;
+    }
+
+    /**
+     * Gets the level of ventilation of the space.
+     *
+     * @return the level of ventilation
+     */
+    public double getVentilation() {
+        return ventilation;
+    }
+
+    /**
+     * Gets the level of heating of the space.
+     *
+     * @return the level of heating
+     */
+    public double getHeating() {
+        return heating;
+    }
+
+    /**
+     * Gets the minimum height of the space.
+     *
+     * @return the minimum height
+     */
+    public double getMinimumHeight() {
+        return minimumHeight;
+    }
+
+    /**
+     * Gets the dimensions of the window of the space.
+     *
+     * @return the window size dimensions
+     */
+    public Vec2 getWindowSize() {
+        return windowSize;
+    }
+
     /**
      * Gets the associated entity of the space.
      *
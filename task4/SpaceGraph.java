@@ -0,0 +1,310 @@
+import java.util.*;
+
+/**
+ * A SpaceGraph is the compiled, read-only form of the connections between spaces.
+ * Every space gets an int index; the connections are stored in compressed sparse row form: the neighbors of the
+ * space with index v are targets[offsets[v]] to targets[offsets[v + 1] - 1], in the order of getConnectedSpaces().
+ * The properties the escape search needs per space (room, lift, exit) are evaluated once while compiling and kept in
+ * bit sets, so searching the graph only reads int arrays. The floor and the movement area of every room are kept in
+ * primitive arrays as well, for searches with weighted connections (see WeightedEscape).
+ *
+ * A graph is a snapshot: connections added to the spaces after compiling are not part of it.
+ */
+public class SpaceGraph {
+
+    // floor of spaces that are not on a single floor (lifts, exteriors, roads, ...)
+    public static final int NO_FLOOR = Integer.MIN_VALUE;
+
+    private final Space[] spaces;
+    private final IdentityHashMap<Space, Integer> indices;
+    private final int[] offsets;
+    private final int[] targets;
+    private int[] reverseOffsets;
+    private int[] reverseTargets;
+    private final BitSet rooms;
+    private final BitSet lifts;
+    private final BitSet exits;
+    private final int[] floors;
+    private final double[] areas;
+
+    private SpaceGraph(Space[] spaces, IdentityHashMap<Space, Integer> indices, int[] offsets, int[] targets,
+                       BitSet rooms, BitSet lifts, BitSet exits, int[] floors, double[] areas) {
+        this.spaces = spaces;
+        this.indices = indices;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.rooms = rooms;
+        this.lifts = lifts;
+        this.exits = exits;
+        this.floors = floors;
+        this.areas = areas;
+    }
+
+    /**
+     * Compiles the spaces of a building and every space reachable from them.
+     *
+     * @param building the building to compile
+     * @return the compiled graph
+     */
+    public static SpaceGraph compile(Building building) {
+        return compile(building.spaces());
+    }
+
+    /**
+     * Compiles the given spaces and every space reachable from them through getConnectedSpaces().
+     * The given spaces get the first indices, in iteration order.
+     *
+     * @param roots the spaces to start from
+     * @return the compiled graph
+     */
+    public static SpaceGraph compile(Collection<? extends Space> roots) {
+        IdentityHashMap<Space, Integer> indices = new IdentityHashMap<>();
+        List<Space> order = new ArrayList<>();
+        List<List<Space>> neighbors = new ArrayList<>();
+        BitSet rooms = new BitSet();
+        BitSet lifts = new BitSet();
+        BitSet exits = new BitSet();
+
+        for (Space root : roots) {
+            if (root != null && !indices.containsKey(root)) {
+                indices.put(root, order.size());
+                order.add(root);
+            }
+        }
+
+        int edges = 0;
+        for (int v = 0; v < order.size(); v++) { // order grows while new spaces are discovered
+            Space space = order.get(v);
+            List<Space> connected = null;
+            if (space instanceof Circulation circulation) {
+                connected = circulation.getConnectedSpaces(); // a Lift returns a fresh copy, read it only once
+                if (connected != null && circulation.isExit()) {
+                    exits.set(v);
+                }
+            }
+            if (space instanceof Room) {
+                rooms.set(v);
+            }
+            if (space instanceof Lift) {
+                lifts.set(v);
+            }
+            if (connected == null) {
+                connected = List.of();
+            }
+            for (Space neighbor : connected) {
+                if (neighbor != null && !indices.containsKey(neighbor)) {
+                    indices.put(neighbor, order.size());
+                    order.add(neighbor);
+                }
+            }
+            neighbors.add(connected);
+            edges += connected.size();
+        }
+
+        int[] floors = new int[order.size()];
+        double[] areas = new double[order.size()];
+        for (int v = 0; v < order.size(); v++) {
+            Space space = order.get(v);
+            floors[v] = space instanceof Room room && !(space instanceof Lift) ? room.getFloor() : NO_FLOOR;
+            if (space instanceof ServedSpace served) {
+                areas[v] = served.getMovementArea().x() * served.getMovementArea().y();
+            }
+        }
+
+        int[] offsets = new int[order.size() + 1];
+        int[] targets = new int[edges];
+        int e = 0;
+        for (int v = 0; v < order.size(); v++) {
+            offsets[v] = e;
+            for (Space neighbor : neighbors.get(v)) {
+                if (neighbor != null) {
+                    targets[e++] = indices.get(neighbor);
+                }
+            }
+        }
+        offsets[order.size()] = e;
+
+        return new SpaceGraph(order.toArray(new Space[0]), indices, offsets, e == edges ? targets : Arrays.copyOf(targets, e),
+                rooms, lifts, exits, floors, areas);
+    }
+
+    /**
+     * Returns the number of spaces in the graph.
+     *
+     * @return the number of spaces
+     */
+    public int size() {
+        return spaces.length;
+    }
+
+    /**
+     * Returns the index of a space, or -1 if the space is not part of the graph.
+     *
+     * @param space the space
+     * @return the index of the space or -1
+     */
+    public int indexOf(Space space) {
+        Integer index = indices.get(space);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the space with the given index.
+     *
+     * @param index the index of the space
+     * @return the space
+     */
+    public Space space(int index) {
+        return spaces[index];
+    }
+
+    /**
+     * Returns true if the space with the given index is an exit.
+     *
+     * @param index the index of the space
+     * @return true if the space is an exit
+     */
+    public boolean isExit(int index) {
+        return exits.get(index);
+    }
+
+    /**
+     * Returns true if an escape path may lead through the space with the given index, that is if it is a Room
+     * but not a Lift (lifts must not be used in an emergency).
+     *
+     * @param index the index of the space
+     * @return true if escape paths may use the space
+     */
+    public boolean isEscapeRoute(int index) {
+        return rooms.get(index) && !lifts.get(index);
+    }
+
+    /**
+     * Returns the floor of the space with the given index.
+     *
+     * @param index the index of the space
+     * @return the floor, or NO_FLOOR if the space is not a room on a single floor
+     */
+    public int floor(int index) {
+        return floors[index];
+    }
+
+    /**
+     * Returns the size of the movement area of the space with the given index.
+     *
+     * @param index the index of the space
+     * @return the movement area in square metres, 0 if the space has none (e.g. servant spaces)
+     */
+    public double movementArea(int index) {
+        return areas[index];
+    }
+
+    /**
+     * Returns the CSR offsets; the neighbors of v are targets()[offsets()[v]] to targets()[offsets()[v + 1] - 1].
+     * The array must not be modified.
+     *
+     * @return the offsets of the adjacency lists
+     */
+    int[] offsets() {
+        return offsets;
+    }
+
+    /**
+     * Returns the CSR targets, see offsets(). The array must not be modified.
+     *
+     * @return the concatenated adjacency lists
+     */
+    int[] targets() {
+        return targets;
+    }
+
+    /**
+     * Returns the offsets of the reversed graph; the spaces connected to v are
+     * reverseTargets()[reverseOffsets()[v]] to reverseTargets()[reverseOffsets()[v + 1] - 1].
+     * The reversed graph is built on the first call. The array must not be modified.
+     *
+     * @return the offsets of the reversed adjacency lists
+     */
+    synchronized int[] reverseOffsets() {
+        if (reverseOffsets == null) {
+            reverse();
+        }
+        return reverseOffsets;
+    }
+
+    /**
+     * Returns the targets of the reversed graph, see reverseOffsets(). The array must not be modified.
+     *
+     * @return the concatenated reversed adjacency lists
+     */
+    synchronized int[] reverseTargets() {
+        if (reverseTargets == null) {
+            reverse();
+        }
+        return reverseTargets;
+    }
+
+    /**
+     * Builds the reversed CSR adjacency with a counting sort over the edge targets.
+     */
+    private void reverse() {
+        int n = spaces.length;
+        int[] counts = new int[n + 1];
+        for (int target : targets) {
+            counts[target + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            counts[v + 1] += counts[v];
+        }
+        int[] sources = new int[targets.length];
+        int[] next = Arrays.copyOf(counts, n);
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                sources[next[targets[e]]++] = v;
+            }
+        }
+        reverseTargets = sources;
+        reverseOffsets = counts;
+    }
+
+    /**
+     * Finds the shortest escape path from the space with the given index with a breadth-first search that stores
+     * only a parent index per visited space. The path is reconstructed once an exit is dequeued.
+     * Like the original search in Escape, the start may be any space, all following spaces must be escape routes.
+     *
+     * @param start the index of the first space of the path
+     * @return the indices of the spaces on the path from start to the exit, or an empty array if there is none
+     */
+    public int[] escapePath(int start) {
+        // parent + 1 of every visited space, 0 means not visited
+        int[] parent = new int[spaces.length];
+        int[] queue = new int[spaces.length];
+        int head = 0;
+        int tail = 0;
+        parent[start] = start + 1;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int v = queue[head++];
+            if (exits.get(v)) {
+                int length = 1;
+                for (int u = v; u != start; u = parent[u] - 1) {
+                    length++;
+                }
+                int[] path = new int[length];
+                for (int u = v, i = length - 1; i >= 0; u = parent[u] - 1, i--) {
+                    path[i] = u;
+                }
+                return path;
+            }
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                if (parent[w] == 0 && rooms.get(w) && !lifts.get(w)) {
+                    parent[w] = v + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return new int[0];
+    }
+}
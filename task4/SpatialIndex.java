@@ -0,0 +1,374 @@
+import java.util.*;
+
+/**
+ * A SpatialIndex organizes the rooms of a building by floor and by position, so that queries like "all rooms on
+ * floor 7", "the nearest exit to this room" or "all rooms within a radius" do not scan all spaces of the building.
+ *
+ * The rooms are sorted into floor buckets: a sorted array of the floors and one segment of the room array per floor,
+ * found with a binary search. The rooms of a floor with a known position (see Room.getPosition()) are also kept in a
+ * uniform grid over the bounding box of the floor with about one room per cell, and the exits of a floor in a grid
+ * of their own. Every cell is a segment of an array as well, so a query only visits the cells near the position:
+ * - rooms(floor): O(log f + k) for f floors and k rooms on the floor,
+ * - within(floor, centre, radius): only the cells overlapping the circle,
+ * - nearestExit(room): the cells in rings around the room, until no closer exit is possible.
+ * Lifts are not on a single floor and are not indexed.
+ *
+ * The floors of the exits (exitFloors()) and the distance to the nearest exit can serve the escape searches as
+ * heuristics. Like EscapeIndex, the index is a snapshot: it is stale after the spaces of the building, the
+ * connections of its rooms (which can turn a room into an exit) or the position of one of its rooms changed, and
+ * Building.spatialIndex() builds it again then. Changes of other buildings leave it valid.
+ */
+public class SpatialIndex {
+
+    private final Room[] rooms;      // all indexed rooms, sorted by floor
+    private final int[] floors;      // the sorted distinct floors of the rooms
+    private final int[] floorStart;  // the rooms of floors[i] are rooms[floorStart[i]] to rooms[floorStart[i + 1] - 1]
+    private final Grid[] roomGrids;  // per floor, null if no room of the floor has a position
+    private final Grid[] exitGrids;  // per floor, null if no exit of the floor has a position
+    private final int[] exitFloors;  // the sorted distinct floors of the exits
+    // the versions the index depends on and their values when it was built
+    private final GraphVersion[] sources;
+    private final long[] versions;
+
+    private SpatialIndex(Collection<? extends Space> spaces, Set<GraphVersion> dependencies) {
+        Set<Room> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Room> indexed = new ArrayList<>();
+        for (Space space : spaces) {
+            if (space instanceof Room room && !(space instanceof Lift) && distinct.add(room)) {
+                indexed.add(room);
+            }
+        }
+        int n = indexed.size();
+        int[] floorOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            floorOf[i] = indexed.get(i).getFloor();
+        }
+        floors = distinctSorted(floorOf.clone());
+
+        // counting sort of the rooms by floor, stable
+        floorStart = new int[floors.length + 1];
+        for (int floor : floorOf) {
+            floorStart[Arrays.binarySearch(floors, floor) + 1]++;
+        }
+        for (int i = 0; i < floors.length; i++) {
+            floorStart[i + 1] += floorStart[i];
+        }
+        rooms = new Room[n];
+        int[] fill = Arrays.copyOf(floorStart, floors.length);
+        for (int i = 0; i < n; i++) {
+            rooms[fill[Arrays.binarySearch(floors, floorOf[i])]++] = indexed.get(i);
+        }
+
+        roomGrids = new Grid[floors.length];
+        exitGrids = new Grid[floors.length];
+        int[] exitFloorCandidates = new int[floors.length];
+        int exitFloorCount = 0;
+        List<Room> positioned = new ArrayList<>();
+        List<Room> exits = new ArrayList<>();
+        for (int f = 0; f < floors.length; f++) {
+            positioned.clear();
+            exits.clear();
+            boolean hasExit = false;
+            for (int i = floorStart[f]; i < floorStart[f + 1]; i++) {
+                Room room = rooms[i];
+                boolean exit = room.isExit() && room.getConnectedSpaces() != null; // as in SpaceGraph
+                hasExit |= exit;
+                if (room.getPosition() != null) {
+                    positioned.add(room);
+                    if (exit) {
+                        exits.add(room);
+                    }
+                }
+            }
+            if (hasExit) {
+                exitFloorCandidates[exitFloorCount++] = floors[f];
+            }
+            roomGrids[f] = positioned.isEmpty() ? null : new Grid(positioned);
+            exitGrids[f] = exits.isEmpty() ? null : new Grid(exits);
+        }
+        exitFloors = Arrays.copyOf(exitFloorCandidates, exitFloorCount);
+
+        for (Room room : indexed) {
+            if (room instanceof OwnedSpace owned) {
+                dependencies.add(owned.version());
+                dependencies.add(owned.positionVersion());
+            }
+        }
+        sources = dependencies.toArray(new GraphVersion[0]);
+        versions = new long[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            versions[i] = sources[i].value();
+        }
+    }
+
+    /**
+     * Builds the spatial index of the rooms of a building.
+     *
+     * @param building the building
+     * @return the spatial index
+     */
+    public static SpatialIndex build(Building building) {
+        Set<GraphVersion> dependencies = new LinkedHashSet<>(); // GraphVersion compares by identity
+        dependencies.add(building.graphVersion());
+        dependencies.add(building.positionVersion());
+        return new SpatialIndex(building.spaces(), dependencies);
+    }
+
+    /**
+     * Returns true if the spaces of the building, or the connections or positions of its rooms changed after the
+     * index was built.
+     *
+     * @return true if the index may be outdated
+     */
+    public boolean isStale() {
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i].value() != versions[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the floors with at least one room, in ascending order.
+     *
+     * @return the floors
+     */
+    public int[] floors() {
+        return floors.clone();
+    }
+
+    /**
+     * Returns the floors with at least one exit, in ascending order, with or without a position.
+     *
+     * @return the floors of the exits
+     */
+    public int[] exitFloors() {
+        return exitFloors.clone();
+    }
+
+    /**
+     * Returns all rooms on a floor, with or without a position.
+     *
+     * @param floor the floor
+     * @return an unmodifiable list of the rooms, empty if there is no room on the floor
+     */
+    public List<Room> rooms(int floor) {
+        int f = Arrays.binarySearch(floors, floor);
+        if (f < 0) {
+            return List.of();
+        }
+        return Collections.unmodifiableList(Arrays.asList(rooms).subList(floorStart[f], floorStart[f + 1]));
+    }
+
+    /**
+     * Returns the rooms on a floor whose position is at most radius metres away from the centre.
+     *
+     * @param floor the floor
+     * @param centre the centre of the circle
+     * @param radius the radius in metres
+     * @return the rooms within the circle, in no particular order
+     */
+    public List<Room> within(int floor, Vec2 centre, double radius) {
+        if (centre == null || radius < 0) { throw new IllegalArgumentException("No centre or negative radius."); }
+        int f = Arrays.binarySearch(floors, floor);
+        List<Room> result = new ArrayList<>();
+        if (f >= 0 && roomGrids[f] != null) {
+            roomGrids[f].within(centre.x(), centre.y(), radius, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the exit with a position that is nearest to the room: on the same floor if there is one, otherwise on
+     * the nearest floor with such an exit (the lower one if two floors are equally near). On that floor the exit with
+     * the shortest straight-line distance is chosen; walls and connections are not taken into account.
+     *
+     * @param room a room with a position
+     * @return the nearest exit, or null if no exit of the building has a position
+     * @throws IllegalArgumentException if the room is a lift or has no position
+     */
+    public Room nearestExit(Room room) {
+        if (room == null || room instanceof Lift || room.getPosition() == null) {
+            throw new IllegalArgumentException("The room has no single floor or no position.");
+        }
+        return nearestExit(room.getFloor(), room.getPosition());
+    }
+
+    /**
+     * Returns the exit with a position that is nearest to a position on a floor, see nearestExit(Room).
+     *
+     * @param floor the floor
+     * @param position the position on the floor
+     * @return the nearest exit, or null if no exit of the building has a position
+     */
+    public Room nearestExit(int floor, Vec2 position) {
+        if (position == null) { throw new IllegalArgumentException("The position is null."); }
+        // floors[below] is the nearest floor below or at the given floor, floors[above] the nearest one above it
+        int f = Arrays.binarySearch(floors, floor);
+        int below = f >= 0 ? f : -f - 2;
+        int above = below + 1;
+        while (below >= 0 || above < floors.length) {
+            boolean takeBelow = above >= floors.length
+                    || (below >= 0 && (long) floor - floors[below] <= (long) floors[above] - floor);
+            int candidate = takeBelow ? below-- : above++;
+            if (exitGrids[candidate] != null) {
+                return exitGrids[candidate].nearest(position.x(), position.y());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Must be called whenever the position of a room changes. The spatial indices of the building the room belongs
+     * to are stale afterwards.
+     *
+     * @param space the space whose position changed
+     */
+    static void positionChanged(Space space) {
+        if (space instanceof OwnedSpace owned) {
+            owned.positionChanged();
+        }
+    }
+
+    private static int[] distinctSorted(int[] values) {
+        Arrays.sort(values);
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) {
+                values[count++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    /**
+     * A uniform grid over the positions of some rooms of one floor. The rooms of cell c (column + row * columns) are
+     * rooms[cellStart[c]] to rooms[cellStart[c + 1] - 1]; their coordinates are copied to xs and ys.
+     */
+    private static final class Grid {
+
+        private final Room[] rooms;
+        private final double[] xs;
+        private final double[] ys;
+        private final int[] cellStart;
+        private final double minX;
+        private final double minY;
+        private final double cell;
+        private final int columns;
+        private final int rows;
+
+        Grid(List<Room> positioned) {
+            int n = positioned.size();
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            double lowX = Double.POSITIVE_INFINITY;
+            double lowY = Double.POSITIVE_INFINITY;
+            for (Room room : positioned) {
+                Vec2 position = room.getPosition();
+                lowX = Math.min(lowX, position.x());
+                lowY = Math.min(lowY, position.y());
+                maxX = Math.max(maxX, position.x());
+                maxY = Math.max(maxY, position.y());
+            }
+            minX = lowX;
+            minY = lowY;
+            double width = maxX - minX;
+            double height = maxY - minY;
+            // about one room per cell, but at most n cells per side, so there are O(n) cells
+            double size = Math.max(Math.sqrt(width * height / n), Math.max(width, height) / n);
+            cell = size > 0 ? size : 1.0;
+            columns = (int) (width / cell) + 1;
+            rows = (int) (height / cell) + 1;
+
+            // counting sort of the rooms by cell
+            int[] cellOf = new int[n];
+            cellStart = new int[columns * rows + 1];
+            for (int i = 0; i < n; i++) {
+                Vec2 position = positioned.get(i).getPosition();
+                cellOf[i] = column(position.x()) + row(position.y()) * columns;
+                cellStart[cellOf[i] + 1]++;
+            }
+            for (int c = 0; c < columns * rows; c++) {
+                cellStart[c + 1] += cellStart[c];
+            }
+            rooms = new Room[n];
+            xs = new double[n];
+            ys = new double[n];
+            int[] fill = Arrays.copyOf(cellStart, columns * rows);
+            for (int i = 0; i < n; i++) {
+                int j = fill[cellOf[i]]++;
+                rooms[j] = positioned.get(i);
+                xs[j] = rooms[j].getPosition().x();
+                ys[j] = rooms[j].getPosition().y();
+            }
+        }
+
+        /**
+         * Returns the column of the cell containing x, or the nearest column if x is outside the grid.
+         */
+        private int column(double x) {
+            return (int) Math.max(0, Math.min(columns - 1, Math.floor((x - minX) / cell)));
+        }
+
+        private int row(double y) {
+            return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - minY) / cell)));
+        }
+
+        void within(double x, double y, double radius, List<Room> result) {
+            double squared = radius * radius;
+            int lastColumn = column(x + radius);
+            int lastRow = row(y + radius);
+            for (int r = row(y - radius); r <= lastRow; r++) {
+                for (int c = column(x - radius); c <= lastColumn; c++) {
+                    int cellIndex = c + r * columns;
+                    for (int i = cellStart[cellIndex]; i < cellStart[cellIndex + 1]; i++) {
+                        double dx = xs[i] - x;
+                        double dy = ys[i] - y;
+                        if (dx * dx + dy * dy <= squared) {
+                            result.add(rooms[i]);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Visits the cells in rings of growing Chebyshev distance around the cell nearest to (x, y). A room in ring
+         * k + 1 or further is at least k * cell away, so the search stops as soon as the best room is not farther.
+         */
+        Room nearest(double x, double y) {
+            int column = column(x);
+            int row = row(y);
+            int maxRing = Math.max(Math.max(column, columns - 1 - column), Math.max(row, rows - 1 - row));
+            int best = -1;
+            double bestSquared = Double.POSITIVE_INFINITY;
+            for (int ring = 0; ring <= maxRing; ring++) {
+                for (int r = Math.max(0, row - ring); r <= Math.min(rows - 1, row + ring); r++) {
+                    boolean edgeRow = r == row - ring || r == row + ring;
+                    int step = edgeRow ? 1 : 2 * ring; // inner rows of the ring: only the first and last column
+                    for (int c = column - ring; c <= column + ring; c += Math.max(1, step)) {
+                        if (c < 0 || c >= columns) {
+                            continue;
+                        }
+                        int cellIndex = c + r * columns;
+                        for (int i = cellStart[cellIndex]; i < cellStart[cellIndex + 1]; i++) {
+                            double dx = xs[i] - x;
+                            double dy = ys[i] - y;
+                            double squared = dx * dx + dy * dy;
+                            if (squared < bestSquared) {
+                                bestSquared = squared;
+                                best = i;
+                            }
+                        }
+                    }
+                }
+                double reach = ring * cell;
+                if (best >= 0 && bestSquared <= reach * reach) {
+                    break;
+                }
+            }
+            return best < 0 ? null : rooms[best];
+        }
+    }
+}
@@ -2,6 +2,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The only interface who doesn't extend any other data type are Entity and Space, all the other classes and interfaces
@@ -24,6 +25,9 @@ import java.util.Set;
  * Catalin: Implemented the escape algorithm and the way spaces interact and connect with each other.
  * Andrei: Implemented the Entity interface along with its subclasses. Tested my methods in the Test class.
  */
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 public class Test {
@@ -42,6 +46,34 @@ public class Test {
 
         testEscape();
 
+        testEscapeCoverage(city);
+
+        testWeightedEscape();
+
+        testDynamicEscape();
+
+        testConnectivity(city, roads);
+
+        testEvacuationCapacity();
+
+        testCrowdSimulation();
+
+        testEntityRegistry();
+
+        testSpatialIndex();
+
+        testEntityCodec();
+
+        testHierarchicalRouting();
+
+        testCityGenerator();
+
+        testDisjointEscapes();
+
+        testEntityStatistics();
+
+        testBidirectionalSearch();
+
         System.out.println("\nThe end of test reached with no issues. All Tests were successful.");
     }
 
@@ -113,36 +145,16 @@ public class Test {
         // Add lifts
         addLifts(building, random);
 
-        System.out.println("Successfully created a building with " + spaces.size() + " spaces and lifts.");
         return building;
     }
 
     private static ServantSpace createServantSpace(Random random) {
-        while (true) {
-            try {
-                int floor = random.nextInt(10) + 1;
-                return new ServantSpace(floor, new Vec2(1.1d, 1.1d));
-            } catch (IllegalArgumentException e) {
-                // Retry if constraints aren't met
-            }
-        }
+        return CityGenerator.servantSpace(random, random.nextInt(10) + 1);
     }
 
     private static ServedSpace createServedSpace(Random random) {
-        while (true) {
-            try {
-                int floor = random.nextInt(10) + 1;
-                boolean isConnectedToLift = random.nextBoolean();
-                double naturalLighting = random.nextDouble() * 10;
-                double ventilation = random.nextDouble() * 5;
-                double heating = random.nextDouble() * 5;
-                double minimumHeight = 2.5 + random.nextDouble();
-                Vec2 movementArea = new Vec2(random.nextDouble() * 20 + 10, random.nextDouble() * 20 + 10);
-                return new ServedSpace(floor, isConnectedToLift, naturalLighting, ventilation, heating, minimumHeight, movementArea, new Vec2(1.1d, 1.1d));
-            } catch (IllegalArgumentException e) {
-                // Retry if constraints aren't met
-            }
-        }
+        // only valid parameters are sampled, so the quality checks always pass
+        return CityGenerator.servedSpace(random, random.nextInt(10) + 1);
     }
 
     private static void addLifts(Building building, Random random) {
@@ -166,7 +178,6 @@ public class Test {
         try {
             Lift lift = new Lift(new ArrayList<>(liftRooms));
             building.addSpace(lift);
-            System.out.println("Successfully added a lift to the building.");
         } catch (IllegalArgumentException e) {
             // If lift validation fails, skip adding lift
         }
@@ -200,7 +211,7 @@ public class Test {
 
             for (Space space : building.spaces()) {
                 if (space instanceof Exterior exterior) {
-                    exterior.getConnectedSpaces().add(road);
+                    exterior.addConnection(road);
                 }
             }
         }
@@ -214,13 +225,462 @@ public class Test {
         servantSpace.addConnectedSpace(road);
         Escape escape1 = new Escape(servantSpace);
         Escape escape2 = new Escape(servedSpace);
-        if (escape1.length() == 1 && escape2.length() == 2) {
+
+        // the cached escape index of a building only becomes stale when its own spaces or connections change
+        Building building = new Building(new ArrayList<>(List.of(servedSpace, servantSpace)));
+        EscapeIndex index = building.escapeIndex();
+        Room unrelated = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        unrelated.addConnectedSpace(new PublicRoad());
+        boolean kept = !index.isStale() && building.escapeIndex() == index;
+        servedSpace.addConnectedSpace(new PublicRoad());
+        boolean invalidated = index.isStale() && building.escapeIndex().distance(servedSpace) == 0;
+
+        if (escape1.length() == 1 && escape2.length() == 2 && kept && invalidated) {
             System.out.println("Escape test was successful.");
         } else {
             System.out.println("Escape test was unsuccessful.");
         }
     }
 
+    public static void testEscapeCoverage(List<Entity> city) {
+        EscapeCoverage.Report report = EscapeCoverage.analyze(city, ForkJoinPool.commonPool());
+        int rooms = 0;
+        for (Entity entity : city) {
+            List<Building> buildings = entity instanceof Complex complex ? complex.buildings() : List.of((Building) entity);
+            for (Building building : buildings) {
+                for (Space space : building.spaces()) {
+                    if (space instanceof Room && !(space instanceof Lift)) {
+                        rooms++;
+                    }
+                }
+            }
+        }
+
+        // a generated city has escapes of known lengths: compare the report with a search per room over the graph
+        City generated = new CityGenerator(11).city(100);
+        EscapeCoverage.Report generatedReport = EscapeCoverage.analyze(List.of(generated), ForkJoinPool.commonPool());
+        Set<Building> buildings = new LinkedHashSet<>();
+        EscapeCoverage.collect(generated, buildings);
+        int[] histogram = new int[EscapeCoverage.MAX_LENGTH];
+        int generatedRooms = 0;
+        for (Building building : buildings) {
+            SpaceGraph graph = building.compileGraph();
+            for (Space space : building.spaces()) {
+                if (space instanceof Room && !(space instanceof Lift)) {
+                    generatedRooms++;
+                    histogram[new Escape(space, graph).length()]++;
+                }
+            }
+        }
+        boolean matches = generatedReport.rooms() == generatedRooms && generatedReport.roomsWithoutEscape().isEmpty()
+                && generatedReport.longestEscape() > 1;
+        for (int length = 0; length < histogram.length; length++) {
+            matches &= generatedReport.count(length) == histogram[length];
+        }
+
+        if (report.rooms() == rooms && matches) {
+            System.out.println("Escape coverage test was successful: " + generatedReport);
+        } else {
+            System.out.println("Escape coverage test was unsuccessful.");
+        }
+    }
+
+    public static void testWeightedEscape() {
+        // the direct way leads through a large served room, the detour through two small servant spaces
+        Room start = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        Room hall = new ServedSpace(0, true, 5.0, 3.0, 2.5, 3.0, new Vec2(10.0d, 10.0d), new Vec2(1.1d, 1.1d));
+        Room corridor1 = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        Room corridor2 = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        Room exit = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        start.addConnectedSpace(hall);
+        hall.addConnectedSpace(exit);
+        start.addConnectedSpace(corridor1);
+        corridor1.addConnectedSpace(corridor2);
+        corridor2.addConnectedSpace(exit);
+        exit.addConnectedSpace(new PublicRoad());
+
+        Building building = new Building(new ArrayList<>(List.of(start, hall, corridor1, corridor2, exit)));
+        Escape shortest = new Escape(start);
+        Escape cheapest = new WeightedEscape(building.compileGraph()).escape(start);
+        if (shortest.length() == 3 && cheapest.length() == 4) {
+            System.out.println("Weighted escape test was successful.");
+        } else {
+            System.out.println("Weighted escape test was unsuccessful.");
+        }
+    }
+
+    public static void testDynamicEscape() {
+        Room room = new ServedSpace(0, true, 5.0, 3.0, 2.5, 3.0, new Vec2(2.0d, 5.0d), new Vec2(1.1d, 1.1d));
+        Room corridor = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        Room detour = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        Room exit = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        room.addConnectedSpace(corridor);
+        corridor.addConnectedSpace(exit);
+        detour.addConnectedSpace(corridor);
+        exit.addConnectedSpace(new PublicRoad());
+
+        DynamicEscapeIndex index = DynamicEscapeIndex.of(new Building(new ArrayList<>(List.of(room, corridor, detour, exit))));
+        int before = index.distance(room);
+        index.isolate(corridor); // block the corridor
+        int blocked = index.distance(room);
+        index.connect(room, detour);
+        index.connect(detour, exit);
+        int rerouted = index.escape(room).length();
+        if (before == 2 && blocked == -1 && rerouted == 3 && room.getConnectedSpaces().size() == 1) {
+            System.out.println("Dynamic escape test was successful.");
+        } else {
+            System.out.println("Dynamic escape test was unsuccessful.");
+        }
+    }
+
+    public static void testConnectivity(List<Entity> entities, List<PublicRoad> roads) {
+        City city = new City();
+        for (Entity entity : entities) {
+            city.addEntity(entity);
+        }
+        for (PublicRoad road : roads) {
+            city.addRoad(road);
+        }
+        CityConnectivity index = city.connectivity();
+        int islands = index.islands().size();
+
+        // a new building whose exterior is connected to a road through the city
+        Room room = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        Exterior yard = new Exterior();
+        Building building = new Building(new ArrayList<>(List.of(room, yard)));
+        city.addEntity(building);
+        boolean before = city.connectivity().isConnectedToRoad(building);
+        city.connect(room, yard);
+        city.connect(yard, roads.isEmpty() ? new PublicRoad() : roads.get(0));
+        boolean after = city.connectivity().isConnectedToRoad(room);
+        boolean kept = city.connectivity() == index; // entities and connections added through the city are absorbed
+
+        // a connection removed without the city makes the index stale
+        yard.remove();
+        boolean rebuilt = city.connectivity() != index && !city.connectivity().isConnectedToRoad(room);
+
+        if (!before && after && kept && rebuilt) {
+            System.out.println("Connectivity test was successful: " + islands + " islands without road access.");
+        } else {
+            System.out.println("Connectivity test was unsuccessful.");
+        }
+    }
+
+    public static void testEvacuationCapacity() {
+        // three served spaces share one narrow servant space leading to the road
+        Room corridor = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        corridor.addConnectedSpace(new PublicRoad());
+        List<Space> spaces = new ArrayList<>(List.of(corridor));
+        for (int i = 0; i < 3; i++) {
+            Room room = new ServedSpace(0, true, 5.0, 3.0, 2.5, 3.0, new Vec2(3.0d, 5.0d), new Vec2(1.1d, 1.1d));
+            room.addConnectedSpace(corridor);
+            spaces.add(room);
+        }
+        EvacuationCapacity.Report report = EvacuationCapacity.analyze(new Building(spaces));
+        if (report.capacity() == Math.round(EvacuationCapacity.FLOW_PER_METRE * EvacuationCapacity.SERVANT_WIDTH)
+                && report.bottleneckSpaces().equals(List.of(corridor))) {
+            System.out.println("Evacuation capacity test was successful.");
+        } else {
+            System.out.println("Evacuation capacity test was unsuccessful.");
+        }
+    }
+
+    public static void testCrowdSimulation() {
+        Room hall = new ServedSpace(0, true, 5.0, 3.0, 2.5, 3.0, new Vec2(10.0d, 10.0d), new Vec2(1.1d, 1.1d));
+        Room corridor = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        Room closet = new ServantSpace(0, new Vec2(1.1d, 1.1d)); // no way out
+        hall.addConnectedSpace(corridor);
+        corridor.addConnectedSpace(new PublicRoad());
+
+        CrowdSimulation simulation = CrowdSimulation.of(new Building(new ArrayList<>(List.of(hall, corridor, closet))));
+        simulation.setOccupants(hall, 100);
+        simulation.setOccupants(closet, 2);
+        CrowdSimulation.Result result = simulation.run(10000);
+        // 100 persons through a servant space of 80 persons per minute take at least 75 seconds
+        if (result.evacuated() == 100 && result.stranded() == 2 && result.remaining() == 0 && result.seconds() >= 75) {
+            System.out.println("Crowd simulation test was successful: " + result);
+        } else {
+            System.out.println("Crowd simulation test was unsuccessful.");
+        }
+    }
+
+    public static void testEntityRegistry() {
+        City city = new City();
+        Building first = new Building();
+        Building second = new Building();
+        city.addEntity(first);
+        Entity complex = first.addEntity(second); // the building in the city becomes a complex
+        boolean grown = complex instanceof Complex && city.entities().equals(List.of(complex))
+                && first.parent() == complex && complex.parent() == city;
+        Entity remaining = complex.removeEntity(second); // the complex becomes a building again
+        boolean shrunk = remaining == first && city.entities().equals(List.of(first)) && first.parent() == city
+                && second.parent() == null;
+        boolean rejected = false;
+        try {
+            city.entities().add(first);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+
+        // a building that cannot be added leaves the city unchanged
+        boolean unchanged = false;
+        try {
+            first.addEntity(first);
+        } catch (IllegalArgumentException e) {
+            unchanged = city.entities().equals(List.of(first)) && first.parent() == city;
+        }
+
+        // a building contained in another entity is not moved, it has to be removed first
+        Building third = new Building();
+        Ensemble ensemble = new Ensemble();
+        ensemble.entities().add(third);
+        boolean notMoved = false;
+        try {
+            first.addEntity(third);
+        } catch (IllegalArgumentException e) {
+            notMoved = third.parent() == ensemble && ensemble.entities().equals(List.of(third))
+                    && city.entities().equals(List.of(first));
+        }
+
+        // a building of a complex adds to that complex instead of creating a new one
+        second.givePermit(); // the permit was deleted when it was removed
+        Complex grownAgain = (Complex) first.addEntity(second);
+        Building fourth = new Building();
+        boolean forwarded = second.addEntity(fourth) == grownAgain && fourth.parent() == grownAgain
+                && grownAgain.buildings().equals(List.of(first, second, fourth)) && city.entities().equals(List.of(grownAgain));
+        if (grown && shrunk && rejected && unchanged && notMoved && forwarded) {
+            System.out.println("Entity registry test was successful.");
+        } else {
+            System.out.println("Entity registry test was unsuccessful.");
+        }
+    }
+
+    public static void testSpatialIndex() {
+        ServedSpace office = new ServedSpace(3, false, 5.0, 3.0, 2.5, 3.0, new Vec2(4.0d, 4.0d), new Vec2(1.1d, 1.1d));
+        ServedSpace farOffice = new ServedSpace(3, false, 5.0, 3.0, 2.5, 3.0, new Vec2(4.0d, 4.0d), new Vec2(1.1d, 1.1d));
+        ServantSpace nearExit = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        ServantSpace farExit = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        office.setPosition(new Vec2(10.0d, 10.0d));
+        farOffice.setPosition(new Vec2(50.0d, 10.0d));
+        nearExit.setPosition(new Vec2(12.0d, 8.0d));
+        farExit.setPosition(new Vec2(40.0d, 40.0d));
+        nearExit.addConnectedSpace(new PublicRoad());
+        farExit.addConnectedSpace(new PublicRoad());
+
+        Building building = new Building(new ArrayList<>(List.of(office, farOffice, nearExit, farExit)));
+        SpatialIndex index = building.spatialIndex();
+        boolean found = index.rooms(3).equals(List.of(office, farOffice)) && index.rooms(7).isEmpty()
+                && index.within(3, new Vec2(0.0d, 10.0d), 15.0d).equals(List.of(office))
+                && index.nearestExit(office) == nearExit && index.nearestExit(farOffice) == farExit;
+        EscapeIndex escapes = building.escapeIndex();
+
+        // moving a room of another building keeps the index, moving a room of the building does not
+        ServantSpace otherRoom = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        new Building(new ArrayList<>(List.of(otherRoom)));
+        otherRoom.setPosition(new Vec2(1.0d, 1.0d));
+        boolean kept = !index.isStale();
+        farExit.setPosition(new Vec2(11.0d, 9.0d));
+        boolean updated = index.isStale() && building.spatialIndex().nearestExit(office) == farExit
+                && !escapes.isStale(); // positions do not change escape paths
+        if (found && kept && updated) {
+            System.out.println("Spatial index test was successful.");
+        } else {
+            System.out.println("Spatial index test was unsuccessful.");
+        }
+    }
+
+    public static void testEntityCodec() {
+        City city = new City();
+        PublicRoad road = new PublicRoad();
+        city.addRoad(road);
+        Building building = new Building();
+        ServedSpace office = new ServedSpace(1, true, 5.0, 3.0, 2.5, 3.0, new Vec2(4.0d, 5.0d), new Vec2(1.1d, 1.1d));
+        ServantSpace hall = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        Exterior entrance = new Exterior(building, true);
+        Lift lift = new Lift(new ArrayList<>(List.of(office, hall)));
+        office.setPosition(new Vec2(3.0d, 4.0d));
+        office.addConnectedSpace(hall);
+        hall.addConnectedSpace(entrance);
+        entrance.addConnection(road);
+        building.addSpace(new ArrayList<>(List.of(office, hall, entrance, lift)));
+        city.addEntity(building);
+
+        boolean successful;
+        try {
+            Path file = Files.createTempFile("city", ".bin");
+            EntityCodec.save(city, file);
+            City loaded = (City) EntityCodec.load(file);
+            Building copy = (Building) loaded.entities().get(0);
+            ServedSpace copiedOffice = (ServedSpace) copy.spaces().get(0);
+
+            // damaged copies of the file: truncated, far more spaces than bytes, one connection more than the offsets cover
+            byte[] saved = Files.readAllBytes(file);
+            byte[] huge = saved.clone();
+            huge[11] = (byte) 0x7F;
+            byte[] extra = saved.clone();
+            extra[16]++;
+            successful = loaded.roads().size() == 1 && copy.spaces().size() == 4 && copy.parent() == loaded
+                    && copy.spaces().get(3) instanceof Lift && copiedOffice.getMovementArea().y() == 5.0d
+                    && copiedOffice.getPosition().x() == 3.0d && new Escape(copiedOffice).length() == new Escape(office).length()
+                    && ((Exterior) copy.spaces().get(2)).entity() == copy
+                    && isRejected(file, Arrays.copyOf(saved, saved.length / 2)) && isRejected(file, huge)
+                    && isRejected(file, extra);
+            Files.delete(file);
+        } catch (IOException e) {
+            successful = false;
+        }
+        if (successful) {
+            System.out.println("Entity codec test was successful.");
+        } else {
+            System.out.println("Entity codec test was unsuccessful.");
+        }
+    }
+
+    /**
+     * Writes the bytes to the file and checks that loading it fails with an IOException.
+     */
+    private static boolean isRejected(Path file, byte[] bytes) throws IOException {
+        Files.write(file, bytes);
+        try {
+            EntityCodec.load(file);
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    public static void testHierarchicalRouting() {
+        // three floors with an office and a staircase each, the staircases lead down to the exit on floor 0
+        List<Space> spaces = new ArrayList<>();
+        Room[] offices = new Room[3];
+        Room[] stairs = new Room[3];
+        for (int floor = 0; floor < 3; floor++) {
+            offices[floor] = new ServedSpace(floor, true, 5.0, 3.0, 2.5, 3.0, new Vec2(4.0d, 4.0d), new Vec2(1.1d, 1.1d));
+            stairs[floor] = new ServantSpace(floor, new Vec2(1.1d, 1.1d));
+            offices[floor].addConnectedSpace(stairs[floor]);
+            stairs[floor].addConnectedSpace(offices[floor]);
+            if (floor > 0) {
+                stairs[floor].addConnectedSpace(stairs[floor - 1]);
+            }
+            spaces.add(offices[floor]);
+            spaces.add(stairs[floor]);
+        }
+        stairs[0].addConnectedSpace(new PublicRoad());
+        Lift lift = new Lift(new ArrayList<>(List.of(offices[0], offices[2])));
+        offices[0].addConnectedSpace(lift);
+        offices[2].addConnectedSpace(lift);
+        spaces.add(lift);
+
+        HierarchicalRouting routing = HierarchicalRouting.of(new Building(spaces));
+        // the escape from the top office takes the stairs, the route to the ground floor office takes the lift
+        if (routing.escape(offices[2]).length() == 4 && routing.distance(offices[2], offices[0]) == 2
+                && routing.distance(offices[0], offices[2]) == 2 && routing.distance(stairs[0], stairs[1]) == 5) {
+            System.out.println("Hierarchical routing test was successful.");
+        } else {
+            System.out.println("Hierarchical routing test was unsuccessful.");
+        }
+    }
+
+    public static void testCityGenerator() {
+        City first = new CityGenerator(7).city(200);
+        City second = new CityGenerator(7).city(200);
+        EscapeCoverage.Report report = EscapeCoverage.analyze(first);
+        // the same seed creates the same city, and every room of a generated building has an escape
+        if (report.rooms() == EscapeCoverage.analyze(second).rooms() && report.rooms() > 0
+                && report.roomsWithoutEscape().isEmpty() && first.entities().size() == second.entities().size()) {
+            System.out.println("City generator test was successful: " + report.rooms() + " rooms.");
+        } else {
+            System.out.println("City generator test was unsuccessful.");
+        }
+    }
+
+    public static void testDisjointEscapes() {
+        // the office on floor 1 reaches the road over two separate staircases, the storeroom only over one
+        Room office = new ServedSpace(1, true, 5.0, 3.0, 2.5, 3.0, new Vec2(4.0d, 4.0d), new Vec2(1.1d, 1.1d));
+        Room storeroom = new ServantSpace(1, new Vec2(1.1d, 1.1d));
+        PublicRoad road = new PublicRoad();
+        List<Space> spaces = new ArrayList<>(List.of(office, storeroom));
+        for (int staircase = 0; staircase < 2; staircase++) {
+            Room upper = new ServantSpace(1, new Vec2(1.1d, 1.1d));
+            Room lower = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+            office.addConnectedSpace(upper);
+            upper.addConnectedSpace(lower);
+            lower.addConnectedSpace(road);
+            if (staircase == 0) {
+                storeroom.addConnectedSpace(upper);
+            }
+            spaces.add(upper);
+            spaces.add(lower);
+        }
+        Building building = new Building(spaces);
+
+        List<Escape> escapes = new DisjointEscapes(building.compileGraph()).escapes(office, 3);
+        DisjointEscapes.Report report = DisjointEscapes.audit(building, 2);
+        if (escapes.size() == 2 && escapes.get(0).length() == 3 && escapes.get(1).length() == 3 && report.rooms() == 6
+                && report.count(2) == 1 && report.roomsWithoutSecondEscape().contains(storeroom)) {
+            System.out.println("Disjoint escapes test was successful.");
+        } else {
+            System.out.println("Disjoint escapes test was unsuccessful.");
+        }
+    }
+
+    public static void testEntityStatistics() {
+        City city = new City();
+        PublicRoad road = new PublicRoad();
+        ServedSpace office = new ServedSpace(0, true, 5.0, 3.0, 2.5, 3.0, new Vec2(4.0d, 4.0d), new Vec2(1.1d, 1.1d));
+        ServantSpace staircase = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+        staircase.addConnectedSpace(road);
+        Building first = new Building(new ArrayList<>(List.of(office, staircase)));
+        Building second = new Building();
+        second.addSpace(new ServantSpace(0, new Vec2(1.1d, 1.1d)));
+        city.addEntity(first);
+
+        // the counters follow the building into the new complex, its courtyard and the collapse back into a building
+        Complex complex = (Complex) first.addEntity(second);
+        complex.addSpace(new Exterior(complex));
+        boolean successful = city.statistics().buildings() == 2 && city.statistics().spaces() == 4
+                && city.statistics().exteriors() == 1 && city.statistics().exits() == 1;
+        complex.removeEntity(second);
+        office.addConnectedSpace(road);
+        EntityStatistics after = city.statistics();
+        successful &= after.buildings() == 1 && after.spaces() == 3 && after.servedRooms() == 1
+                && after.exteriors() == 1 && after.exits() == 2;
+        if (successful) {
+            System.out.println("Entity statistics test was successful.");
+        } else {
+            System.out.println("Entity statistics test was unsuccessful.");
+        }
+    }
+
+    public static void testBidirectionalSearch() {
+        // a corridor of 200 servant spaces from an office to a courtyard, with a one-way shortcut in the middle
+        List<Space> spaces = new ArrayList<>();
+        Room office = new ServedSpace(0, true, 5.0, 3.0, 2.5, 3.0, new Vec2(4.0d, 4.0d), new Vec2(1.1d, 1.1d));
+        spaces.add(office);
+        Room previous = office;
+        Room[] corridor = new Room[200];
+        for (int i = 0; i < corridor.length; i++) {
+            corridor[i] = new ServantSpace(0, new Vec2(1.1d, 1.1d));
+            previous.addConnectedSpace(corridor[i]);
+            corridor[i].addConnectedSpace(previous);
+            spaces.add(corridor[i]);
+            previous = corridor[i];
+        }
+        Exterior courtyard = new Exterior(false);
+        previous.addConnectedSpace(courtyard);
+        corridor[50].addConnectedSpace(corridor[150]);
+
+        BidirectionalSearch search = new BidirectionalSearch(new Building(spaces).compileGraph());
+        List<Space> route = search.route(office, courtyard);
+        if (route.size() == 103 && route.get(0) == office && route.get(102) == courtyard
+                && search.distance(office, courtyard) == 102 && search.distance(courtyard, office) == -1
+                && search.distance(corridor[150], corridor[50]) == 100) {
+            System.out.println("Bidirectional search test was successful.");
+        } else {
+            System.out.println("Bidirectional search test was unsuccessful.");
+        }
+    }
+
     public static void testSubstitutability() {
         // Substitution testing as described earlier
         // Adding logs for each part
@@ -0,0 +1,232 @@
+import java.util.*;
+
+/**
+ * WeightedEscape finds the cheapest instead of the shortest escape path. Moving through a served room with a large
+ * movement area takes longer than moving through a servant space or a small room, and changing floors over the
+ * stairs takes much longer than both, so the escape with the fewest spaces is not always the fastest one.
+ *
+ * The cost of moving from space u to space v is
+ *     STEP_COST + sqrt(movement area of v) + FLOOR_COST * |floor(u) - floor(v)|,
+ * where the floor term is left out if one of the spaces has no floor (see SpaceGraph.NO_FLOOR).
+ * The cheapest path is found with A* over the compiled SpaceGraph; the heuristic of a space is FLOOR_COST times the
+ * floor difference to the nearest floor with an exit, which never overestimates the remaining cost. Like in Escape,
+ * the start may be any space, all following spaces must be escape routes (rooms, but no lifts).
+ *
+ * The costs of all connections are computed once in the constructor. The search reuses its arrays and resets only the
+ * entries it touched, so one WeightedEscape can answer many queries on a large complex; it is not thread-safe.
+ */
+public class WeightedEscape {
+
+    public static final double STEP_COST = 1.0;
+    public static final double FLOOR_COST = 15.0;
+
+    private final SpaceGraph graph;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] costs;     // costs[e] is the cost of the connection targets[e]
+    private final int[] exitFloors;   // sorted distinct floors of the exits, null if the heuristic cannot be used
+
+    // search state, reset after every search
+    private final double[] distance;
+    private final int[] parent;
+    private final int[] touched;
+    private int touchedCount = 0;
+    private final IndexedHeap open;
+
+    /**
+     * Constructs the weighted escape search over a compiled graph.
+     *
+     * @param graph the compiled graph, e.g. Building.compileGraph()
+     */
+    public WeightedEscape(SpaceGraph graph) {
+        if (graph == null) { throw new IllegalArgumentException("The graph is null."); }
+        this.graph = graph;
+        this.offsets = graph.offsets();
+        this.targets = graph.targets();
+        int n = graph.size();
+
+        costs = new double[targets.length];
+        for (int u = 0; u < n; u++) {
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                costs[e] = cost(graph, u, targets[e]);
+            }
+        }
+        exitFloors = exitFloors(graph);
+
+        distance = new double[n];
+        parent = new int[n];
+        touched = new int[n];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(parent, -1);
+        open = new IndexedHeap(n);
+    }
+
+    /**
+     * Returns the cost of moving from space u to space v, see the class comment.
+     *
+     * @param graph the compiled graph
+     * @param u the index of the space moved from
+     * @param v the index of the space moved to
+     * @return the cost of the connection
+     */
+    public static double cost(SpaceGraph graph, int u, int v) {
+        double cost = STEP_COST + Math.sqrt(graph.movementArea(v));
+        int from = graph.floor(u);
+        int to = graph.floor(v);
+        if (from != SpaceGraph.NO_FLOOR && to != SpaceGraph.NO_FLOOR) {
+            cost += FLOOR_COST * Math.abs(from - to);
+        }
+        return cost;
+    }
+
+    /**
+     * Returns the sorted distinct floors of all exits, or null if some escape route or exit has no floor,
+     * because then floor differences do not bound the remaining cost.
+     */
+    private static int[] exitFloors(SpaceGraph graph) {
+        int[] floors = new int[graph.size()];
+        int count = 0;
+        for (int v = 0; v < graph.size(); v++) {
+            if (graph.isEscapeRoute(v) && graph.floor(v) == SpaceGraph.NO_FLOOR) {
+                return null;
+            }
+            if (graph.isExit(v) && graph.isEscapeRoute(v)) {
+                floors[count++] = graph.floor(v);
+            }
+        }
+        Arrays.sort(floors, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || floors[distinct - 1] != floors[i]) {
+                floors[distinct++] = floors[i];
+            }
+        }
+        return Arrays.copyOf(floors, distinct);
+    }
+
+    /**
+     * Returns the lower bound of the remaining cost from the space with the given index to an exit.
+     */
+    private double heuristic(int v) {
+        int floor = graph.floor(v);
+        if (exitFloors == null || exitFloors.length == 0 || floor == SpaceGraph.NO_FLOOR) {
+            return 0.0;
+        }
+        int i = Arrays.binarySearch(exitFloors, floor);
+        if (i >= 0) {
+            return 0.0;
+        }
+        i = -i - 1; // first exit floor above
+        int difference = Integer.MAX_VALUE;
+        if (i < exitFloors.length) {
+            difference = exitFloors[i] - floor;
+        }
+        if (i > 0) {
+            difference = Math.min(difference, floor - exitFloors[i - 1]);
+        }
+        return FLOOR_COST * difference;
+    }
+
+    /**
+     * Returns the compiled graph the search runs on.
+     *
+     * @return the compiled graph
+     */
+    public SpaceGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Finds the cheapest escape path from the space with the given index.
+     *
+     * @param start the index of the first space of the path
+     * @return the indices of the spaces on the path from start to the exit, or an empty array if there is none
+     */
+    public int[] escapePath(int start) {
+        try {
+            visit(start, 0.0, -1);
+            open.offer(start, heuristic(start));
+            while (!open.isEmpty()) {
+                int v = open.poll();
+                if (graph.isExit(v)) {
+                    return path(v);
+                }
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    int w = targets[e];
+                    if (!graph.isEscapeRoute(w)) {
+                        continue;
+                    }
+                    double tentative = distance[v] + costs[e];
+                    if (tentative < distance[w]) {
+                        visit(w, tentative, v);
+                        open.offer(w, tentative + heuristic(w));
+                    }
+                }
+            }
+            return new int[0];
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the total cost of a path returned by escapePath(int).
+     *
+     * @param path the indices of the spaces on the path
+     * @return the sum of the costs of its connections, 0 for paths with less than two spaces
+     */
+    public double cost(int[] path) {
+        double cost = 0.0;
+        for (int i = 1; i < path.length; i++) {
+            cost += cost(graph, path[i - 1], path[i]);
+        }
+        return cost;
+    }
+
+    /**
+     * Finds the cheapest escape of a space.
+     *
+     * @param space the space to escape from
+     * @return the cheapest escape, with length 0 if the space has no escape
+     *
+     * Precondition: The space is part of the graph.
+     */
+    public Escape escape(Space space) {
+        int start = graph.indexOf(space);
+        if (start < 0) { throw new IllegalArgumentException("The space is not part of the graph."); }
+        ArrayList<Space> path = new ArrayList<>();
+        for (int index : escapePath(start)) {
+            path.add(graph.space(index));
+        }
+        return new Escape(space, path);
+    }
+
+    private void visit(int v, double cost, int from) {
+        if (distance[v] == Double.POSITIVE_INFINITY) {
+            touched[touchedCount++] = v;
+        }
+        distance[v] = cost;
+        parent[v] = from;
+    }
+
+    private int[] path(int exit) {
+        int length = 0;
+        for (int v = exit; v >= 0; v = parent[v]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int v = exit, i = length - 1; v >= 0; v = parent[v], i--) {
+            path[i] = v;
+        }
+        return path;
+    }
+
+    private void reset() {
+        for (int i = 0; i < touchedCount; i++) {
+            distance[touched[i]] = Double.POSITIVE_INFINITY;
+            parent[touched[i]] = -1;
+        }
+        touchedCount = 0;
+        open.clear();
+    }
+}
@@ -1,9 +1,17 @@
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * A generic container class that implements the ApprovableSet interface. This container holds entries of type X
  * and criteria of type P, where X is a subtype of Approvable and T is a subtype of Admin. The entries and criteria
- * are stored in linked lists with dummy nodes (nil) to simplify list operations.
+ * are stored in LinkedHashIndex sets: linked lists with dummy nodes (nil) in insertion order, indexed by a hash table,
+ * so add, remove and the membership checks take O(1).
  *
  * @param <X> the type of the entries in the container, which must be a subtype of Approvable
  * @param <P> the type of the criteria used for approval
@@ -11,104 +19,96 @@ import java.util.Iterator;
  */
 public class AdminSet<X extends Approvable<P, T>, P, T extends Admin<? super X, T>> implements ApprovableSet<X, P, T> {
 
+    // largest number of entry ids a task of parallelExtend or parallelShorten handles without splitting
+    private static final int THRESHOLD = 1024;
 
-
-    private class EntryNode {
-        X value;
-        EntryNode next;
-
-        EntryNode(X value) {
-            this.value = value;
-        }
-    }
-
-    private class CriterionNode {
-        P value;
-        CriterionNode next;
-
-        CriterionNode(P value) {
-            this.value = value;
-        }
-    }
-
-    // entry that is not in the list
-    private EntryNode nilEntry = new EntryNode(null);
-    // criterion that is not in the list
-    private CriterionNode nilCriterion = new CriterionNode(null);
+    // entries and criteria in insertion order, with hashed membership
+    private final LinkedHashIndex<X> entries = new LinkedHashIndex<>();
+    private final LinkedHashIndex<P> criteria = new LinkedHashIndex<>();
+    // bitmaps of the approved entries per criterion, null until index() is called
+    private ApprovalIndex<X, P> index = null;
 
     /**
-     * Adds an entry to the container if it is not already present.
+     * Adds an entry to the container if it is not already present, in O(1).
      *
      * @param x the entry to add
      */
     @Override
     public void add(X x) {
-        if (!containsEntry(x)) {
-            EntryNode newNode = new EntryNode(x);
-            EntryNode nextNode = nilEntry.next;
-            nilEntry.next = newNode;
-            newNode.next = nextNode;
+        if (entries.add(x) && index != null) {
+            index.added(x);
         }
     }
 
+    /**
+     * Removes an entry from the container if it is present, in O(1).
+     *
+     * @param x the entry to remove
+     */
     @Override
     public void remove(X x) {
-        EntryNode current = nilEntry;
-        while (current.next != null) {
-            if (current.next.value.equals(x)) {
-                current.next = current.next.next; // Bypass the node to remove it
-                return; // Exit the method once the entry is removed
-            }
-            current = current.next;
+        entries.remove(x);
+    }
+
+    /**
+     * Adds a criterion to the container if it is not already present, in O(1).
+     *
+     * @param p the criterion to add
+     */
+    @Override
+    public void addCriterion(P p) {
+        if (criteria.add(p) && index != null) {
+            index.criterionAdded(p);
         }
     }
 
-    private boolean containsEntry(X x) {
-        EntryNode current = nilEntry.next;
-        while (current != null) {
-            if (current.value.equals(x)) {
-                return true;
-            }
-            current = current.next;
+    /**
+     * Builds a bitmap index of the approved entries for every criterion (see ApprovalIndex) and keeps it up to date
+     * from now on, so that iterator(p), iteratorNot(p) and iterator() scan bitmaps instead of calling approved on
+     * every entry. Approvals must then be changed through approve(x, p, t), or reported with reindex(x).
+     */
+    public void index() {
+        if (index == null) {
+            index = new ApprovalIndex<>(entries, criteria);
         }
-        return false;
     }
 
     /**
-     * Adds a criterion to the container if it is not already present.
+     * Approves an entry for the given criterion, like x.approve(p, t), and updates the index.
      *
-     * @param p the criterion to add
+     * @param x the entry
+     * @param p the criterion, must not be null
+     * @param t the approved object, can be null
      */
-    @Override
-    public void addCriterion(P p) {
-        if (!containsCriterion(p)) {
-            CriterionNode newNode = new CriterionNode(p);
-            CriterionNode nextNode = nilCriterion.next;
-            nilCriterion.next = newNode;
-            newNode.next = nextNode;
+    public void approve(X x, P p, T t) {
+        x.approve(p, t);
+        if (index != null) {
+            index.update(x, p);
         }
     }
 
-    private boolean containsCriterion(P p) {
-        CriterionNode current = nilCriterion.next;
-        while (current != null) {
-            if (current.value.equals(p)) {
-                return true;
-            }
-            current = current.next;
+    /**
+     * Updates the index after the approvals of an entry were changed directly on the entry.
+     *
+     * @param x the entry
+     */
+    public void reindex(X x) {
+        if (index != null) {
+            index.update(x);
         }
-        return false;
     }
 
     /**
      * Extends each approved object by adding the entry to its approved result.
      * For each criterion returned by the criterions iterator and each entry returned by the iterator(p) iterator,
-     * this method performs the operation: x.approve(p, x.approved(p).add(x));
+     * this method performs the operation: x.approve(p, x.approved(p).add(x)), through approve(x, p, t) so that an
+     * index stays up to date. With PersistentPath as T, every add takes O(log n) and leaves the paths shared by
+     * other entries unchanged.
      */
     public void extend() {
         this.criterions().forEachRemaining(p ->
                 this.iterator(p).forEachRemaining(x ->
-                        x.approve(p, x.approved(p).add(x))
+                        approve(x, p, x.approved(p).add(x))
                 )
         );
     }
@@ -116,16 +116,100 @@ public class AdminSet<X extends Approvable<P, T>, P, T extends Admin<? super X,
     /**
      * Shortens each approved object by removing the entry from its approved result.
      * For each criterion returned by the criterions iterator and each entry returned by the iterator(p) iterator,
-     * this method performs the operation: x.approve(p, x.approved(p).remove(x));
+     * this method performs the operation: x.approve(p, x.approved(p).remove(x)), through approve(x, p, t) so that
+     * an index stays up to date.
      */
     public void shorten() {
         this.criterions().forEachRemaining(p ->
                 this.iterator(p).forEachRemaining(x ->
-                        x.approve(p, x.approved(p).remove(x))
+                        approve(x, p, x.approved(p).remove(x))
                 )
         );
     }
 
+    /**
+     * Does the same as extend(), in parallel on the given pool. The entries are split in balanced parts (see
+     * spliteratorAll) and each part handles all criteria of its entries in the order of criterions(), so every entry
+     * is changed by one thread only and in the same order as by extend().
+     *
+     * @param pool the pool to run on, e.g. ForkJoinPool.commonPool()
+     *
+     * Precondition: The approved results of different entries are not the same object if add changes it, e.g. they
+     * are PersistentPaths or a Path per entry. The container is not changed while the method runs.
+     */
+    public void parallelExtend(ForkJoinPool pool) {
+        bulk(pool, true);
+    }
+
+    /**
+     * Does the same as shorten(), in parallel on the given pool, see parallelExtend.
+     *
+     * @param pool the pool to run on, e.g. ForkJoinPool.commonPool()
+     *
+     * Precondition: The approved results of different entries are not the same object if remove changes it, e.g.
+     * they are PersistentPaths or a Path per entry. The container is not changed while the method runs.
+     */
+    public void parallelShorten(ForkJoinPool pool) {
+        bulk(pool, false);
+    }
+
+    private void bulk(ForkJoinPool pool, boolean extend) {
+        if (pool == null) { throw new IllegalArgumentException("The pool must not be null."); }
+        List<P> order = new ArrayList<>(criteria.size());
+        criteria.forEach(order::add);
+        Queue<X> withdrawn = new ConcurrentLinkedQueue<>();
+        pool.invoke(new BulkTask(entries.spliterator(), order, extend, withdrawn));
+        // the bitmaps are not thread-safe, so the few entries whose add or remove returned null are indexed here
+        for (X x : withdrawn) {
+            reindex(x);
+        }
+    }
+
+    /**
+     * Extends or shortens the approved results of the entries of a spliterator, splitting it while it covers more
+     * than THRESHOLD ids.
+     */
+    private final class BulkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // tasks are never serialized
+        private final transient Spliterator<X> part;
+        private final transient List<P> order;
+        private final boolean extend;
+        private final transient Queue<X> withdrawn;
+
+        BulkTask(Spliterator<X> part, List<P> order, boolean extend, Queue<X> withdrawn) {
+            this.part = part;
+            this.order = order;
+            this.extend = extend;
+            this.withdrawn = withdrawn;
+        }
+
+        @Override
+        protected void compute() {
+            if (part.estimateSize() > THRESHOLD) {
+                Spliterator<X> prefix = part.trySplit();
+                if (prefix != null) {
+                    invokeAll(new BulkTask(prefix, order, extend, withdrawn), new BulkTask(part, order, extend, withdrawn));
+                    return;
+                }
+            }
+            part.forEachRemaining(x -> {
+                for (P p : order) {
+                    T t = x.approved(p);
+                    if (t != null) {
+                        T result = extend ? t.add(x) : t.remove(x);
+                        x.approve(p, result);
+                        if (result == null) {
+                            withdrawn.add(x);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
     /**
      * Returns an iterator over all entries in the container, iterating in any order.
      * The entries included in the iteration are those that were added using the add method.
@@ -134,7 +218,7 @@ public class AdminSet<X extends Approvable<P, T>, P, T extends Admin<? super X,
      */
     @Override
     public Iterator<X> iteratorAll() {
-        return new EntryIterator(nilEntry);
+        return entries.iterator();
     }
 
     /**
@@ -147,7 +231,8 @@ public class AdminSet<X extends Approvable<P, T>, P, T extends Admin<? super X,
      */
     @Override
     public Iterator<X> iterator(P p) {
-        return new FilteredEntryIterator(nilEntry.next, x -> x.approved(p) != null);
+        Iterator<X> indexed = index == null ? null : index.iterator(p);
+        return indexed != null ? indexed : entries.iterator(x -> x.approved(p) != null);
     }
 
     /**
@@ -160,7 +245,8 @@ public class AdminSet<X extends Approvable<P, T>, P, T extends Admin<? super X,
      */
     @Override
     public Iterator<X> iteratorNot(P p) {
-        return new FilteredEntryIterator(nilEntry.next, x -> x.approved(p) == null);
+        Iterator<X> indexed = index == null ? null : index.iteratorNot(p);
+        return indexed != null ? indexed : entries.iterator(x -> x.approved(p) == null);
     }
 
     /**
@@ -172,16 +258,64 @@ public class AdminSet<X extends Approvable<P, T>, P, T extends Admin<? super X,
      */
     @Override
     public Iterator<X> iterator() {
-        return new FilteredEntryIterator(nilEntry.next, x -> {
-            CriterionNode current = nilCriterion.next;
-            while (current != null) {
-                if (x.approved(current.value) == null) {
-                    return false;
-                }
-                current = current.next;
+        if (index != null) {
+            return index.iterator();
+        }
+        return entries.iterator(this::approvedForAll);
+    }
+
+    private boolean approvedForAll(X x) {
+        for (P p : criteria) {
+            if (x.approved(p) == null) {
+                return false;
             }
-            return true;
-        });
+        }
+        return true;
+    }
+
+    /**
+     * Returns a spliterator over all entries in the container, which splits the entries by id in balanced halves
+     * (see LinkedHashIndex.spliterator). The container must not be changed while it is used.
+     *
+     * @return a Spliterator over all entries in the container
+     */
+    @Override
+    public Spliterator<X> spliteratorAll() {
+        return entries.spliterator();
+    }
+
+    /**
+     * Returns a spliterator over all entries in the container that match the given criterion, like iterator(p).
+     * The entries are tested with x.approved(p), also if the container is indexed, possibly by several threads.
+     *
+     * @param p the criterion used to filter entries
+     * @return a Spliterator over all entries in the container that match the criterion
+     */
+    @Override
+    public Spliterator<X> spliterator(P p) {
+        return entries.spliterator(x -> x.approved(p) != null);
+    }
+
+    /**
+     * Returns a spliterator over all entries in the container that do not match the given criterion, like
+     * iteratorNot(p).
+     *
+     * @param p the criterion used to filter entries
+     * @return a Spliterator over all entries in the container that do not match the criterion
+     */
+    @Override
+    public Spliterator<X> spliteratorNot(P p) {
+        return entries.spliterator(x -> x.approved(p) == null);
+    }
+
+    /**
+     * Returns a spliterator over all entries in the container that match all criteria, like iterator().
+     *
+     * @return a Spliterator over all entries in the container that match all criteria
+     */
+    @Override
+    public Spliterator<X> spliterator() {
+        return entries.spliterator(this::approvedForAll);
     }
 
     /**
@@ -192,7 +326,7 @@ public class AdminSet<X extends Approvable<P, T>, P, T extends Admin<? super X,
      */
     @Override
     public Iterator<P> criterions() {
-        return new CriterionIterator(nilCriterion);
+        return criteria.iterator();
     }
 
     @Override
@@ -209,149 +343,4 @@ public class AdminSet<X extends Approvable<P, T>, P, T extends Admin<? super X,
         }
         return sb.toString();
     }
-
-    private class EntryIterator implements Iterator<X> {
-        private EntryNode nil;
-        private EntryNode previous;
-        private EntryNode lastReturned;
-        private EntryNode current;
-
-        EntryIterator(EntryNode nil) {
-            this.nil = nil;
-            this.previous = null;
-            this.lastReturned = null;
-            this.current = nil.next;
-        }
-
-        @Override
-        public boolean hasNext() {
-            return current != null;
-        }
-
-        @Override
-        public X next() {
-            if (!hasNext()) {
-                throw new IllegalStateException("No more elements");
-            }
-            previous = lastReturned;
-            lastReturned = current;
-            current = current.next;
-            return lastReturned.value;
-        }
-
-        @Override
-        public void remove() {
-            if (lastReturned == null) {
-                throw new IllegalStateException("No element to remove");
-            }
-
-            if (previous == null) {
-                nil.next = current;
-            } else {
-                previous.next = current;
-            }
-
-            lastReturned = null;
-        }
-    }
-
-    private class CriterionIterator implements Iterator<P> {
-        private CriterionNode nil;
-        private CriterionNode previous;
-        private CriterionNode lastReturned;
-        private CriterionNode current;
-
-        CriterionIterator(CriterionNode nil) {
-            this.nil = nil;
-            this.previous = null;
-            this.lastReturned = null;
-            this.current = nil.next;
-        }
-
-        @Override
-        public boolean hasNext() {
-            return current != null;
-        }
-
-        @Override
-        public P next() {
-            if (!hasNext()) {
-                throw new IllegalStateException("No more elements");
-            }
-            previous = lastReturned;
-            lastReturned = current;
-            current = current.next;
-            return lastReturned.value;
-        }
-
-        @Override
-        public void remove() {
-            if (lastReturned == null) {
-                throw new IllegalStateException("No element to remove");
-            }
-
-            if (previous == null) {
-                nil.next = current;
-            } else {
-                previous.next = current;
-            }
-
-            lastReturned = null;
-        }
-    }
-
-    private class FilteredEntryIterator implements Iterator<X> {
-        private EntryNode nil;
-        private EntryNode previous;
-        private EntryNode lastReturned;
-        private EntryNode current;
-        private final java.util.function.Predicate<X> filter;
-
-        FilteredEntryIterator(EntryNode nil, java.util.function.Predicate<X> filter) {
-            this.nil = nil;
-            this.previous = null;
-            this.lastReturned = null;
-            this.current = nil.next;
-            this.filter = filter;
-            moveToNextValid();
-        }
-
-        private void moveToNextValid() {
-            while (current != null && !filter.test(current.value)) {
-                current = current.next;
-            }
-        }
-
-        @Override
-        public boolean hasNext() {
-            return current != null;
-        }
-
-        @Override
-        public X next() {
-            if (!hasNext()) {
-                throw new IllegalStateException("No more elements");
-            }
-            previous = lastReturned;
-            lastReturned = current;
-            current = current.next;
-            moveToNextValid();
-            return lastReturned.value;
-        }
-
-        @Override
-        public void remove() {
-            if (lastReturned == null) {
-                throw new IllegalStateException("No element to remove");
-            }
-
-            if (previous == null) {
-                nil.next = current;
-            } else {
-                previous.next = current;
-            }
-
-            lastReturned = null;
-        }
-    }
 }
@@ -1,9 +1,11 @@
 import java.util.Iterator;
+import java.util.Spliterator;
 
 /**
  * A generic container class that implements the ApprovableSet interface.
  * This container holds entries of type X and criteria of type P, where X is a subtype of Approvable.
- * The entries and criteria are stored in linked lists with dummy nodes (nil) to simplify list operations.
+ * The entries and criteria are stored in LinkedHashIndex sets: linked lists with dummy nodes (nil) in insertion order,
+ * indexed by a hash table, so add, remove and the membership checks take O(1).
  *
  * @param <X> the type of the entries in the container, which must be a subtype of Approvable
  * @param <P> the type of the criteria used for approval
@@ -11,92 +13,80 @@ import java.util.Iterator;
  */
 public class ApSet<X extends Approvable<P, T>, P, T> implements ApprovableSet<X, P, T> {
 
-    private class EntryNode {
-        X value;
-        EntryNode next;
-
-        EntryNode(X value) {
-            this.value = value;
-        }
-    }
-
-
-    private class CriterionNode {
-        P value;
-        CriterionNode next;
-
-        CriterionNode(P value) {
-            this.value = value;
-        }
-    }
-
-    // entry that is not in the list
-    private EntryNode nilEntry = new EntryNode(null);
-    // criterion that is not in the list
-    private CriterionNode nilCriterion = new CriterionNode(null);
+    // entries and criteria in insertion order, with hashed membership
+    private final LinkedHashIndex<X> entries = new LinkedHashIndex<>();
+    private final LinkedHashIndex<P> criteria = new LinkedHashIndex<>();
+    // bitmaps of the approved entries per criterion, null until index() is called
+    private ApprovalIndex<X, P> index = null;
 
     /**
-     * Adds an entry to the container if it is not already present.
+     * Adds an entry to the container if it is not already present, in O(1).
      *
      * @param x the entry to add
      */
     @Override
     public void add(X x) {
-        if (!containsEntry(x)) {
-            EntryNode newNode = new EntryNode(x);
-            EntryNode nextNode = nilEntry.next;
-            nilEntry.next = newNode;
-            newNode.next = nextNode;
+        if (entries.add(x) && index != null) {
+            index.added(x);
         }
     }
 
+    /**
+     * Removes an entry from the container if it is present, in O(1).
+     *
+     * @param x the entry to remove
+     */
     @Override
     public void remove(X x) {
-        EntryNode current = nilEntry;
-        while (current.next != null) {
-            if (current.next.value.equals(x)) {
-                current.next = current.next.next;
-                return;
-            }
-            current = current.next;
+        entries.remove(x);
+    }
+
+    /**
+     * Adds a criterion to the container if it is not already present, in O(1).
+     *
+     * @param p the criterion to add
+     */
+    @Override
+    public void addCriterion(P p) {
+        if (criteria.add(p) && index != null) {
+            index.criterionAdded(p);
         }
     }
 
-    private boolean containsEntry(X x) {
-        EntryNode current = nilEntry.next;
-        while (current != null) {
-            if (current.value.equals(x)) {
-                return true;
-            }
-            current = current.next;
+    /**
+     * Builds a bitmap index of the approved entries for every criterion (see ApprovalIndex) and keeps it up to date
+     * from now on, so that iterator(p), iteratorNot(p) and iterator() scan bitmaps instead of calling approved on
+     * every entry. Approvals must then be changed through approve(x, p, t), or reported with reindex(x).
+     */
+    public void index() {
+        if (index == null) {
+            index = new ApprovalIndex<>(entries, criteria);
         }
-        return false;
     }
 
     /**
-     * Adds a criterion to the container if it is not already present.
+     * Approves an entry for the given criterion, like x.approve(p, t), and updates the index.
      *
-     * @param p the criterion to add
+     * @param x the entry
+     * @param p the criterion, must not be null
+     * @param t the approved object, can be null
      */
-    @Override
-    public void addCriterion(P p) {
-        if (!containsCriterion(p)) {
-            CriterionNode newNode = new CriterionNode(p);
-            CriterionNode nextNode = nilCriterion.next;
-            nilCriterion.next = newNode;
-            newNode.next = nextNode;
+    public void approve(X x, P p, T t) {
+        x.approve(p, t);
+        if (index != null) {
+            index.update(x, p);
         }
     }
 
-    private boolean containsCriterion(P p) {
-        CriterionNode current = nilCriterion.next;
-        while (current != null) {
-            if (current.value.equals(p)) {
-                return true;
-            }
-            current = current.next;
+    /**
+     * Updates the index after the approvals of an entry were changed directly on the entry.
+     *
+     * @param x the entry
+     */
+    public void reindex(X x) {
+        if (index != null) {
+            index.update(x);
         }
-        return false;
     }
 
     /**
@@ -107,7 +97,7 @@ public class ApSet<X extends Approvable<P, T>, P, T> implements ApprovableSet<X,
      */
     @Override
     public Iterator<X> iteratorAll() {
-        return new EntryIterator(nilEntry);
+        return entries.iterator();
     }
 
     /**
@@ -120,7 +110,8 @@ public class ApSet<X extends Approvable<P, T>, P, T> implements ApprovableSet<X,
      */
     @Override
     public Iterator<X> iterator(P p) {
-        return new FilteredEntryIterator(nilEntry.next, x -> x.approved(p) != null);
+        Iterator<X> indexed = index == null ? null : index.iterator(p);
+        return indexed != null ? indexed : entries.iterator(x -> x.approved(p) != null);
     }
 
     /**
@@ -133,7 +124,8 @@ public class ApSet<X extends Approvable<P, T>, P, T> implements ApprovableSet<X,
      */
     @Override
     public Iterator<X> iteratorNot(P p) {
-        return new FilteredEntryIterator(nilEntry.next, x -> x.approved(p) == null);
+        Iterator<X> indexed = index == null ? null : index.iteratorNot(p);
+        return indexed != null ? indexed : entries.iterator(x -> x.approved(p) == null);
     }
 
     /**
@@ -145,172 +137,75 @@ public class ApSet<X extends Approvable<P, T>, P, T> implements ApprovableSet<X,
      */
     @Override
     public Iterator<X> iterator() {
-        return new FilteredEntryIterator(nilEntry.next, x -> {
-            CriterionNode current = nilCriterion.next;
-            while (current != null) {
-                if (x.approved(current.value) == null) {
-                    return false;
-                }
-                current = current.next;
+        if (index != null) {
+            return index.iterator();
+        }
+        return entries.iterator(this::approvedForAll);
+    }
+
+    private boolean approvedForAll(X x) {
+        for (P p : criteria) {
+            if (x.approved(p) == null) {
+                return false;
             }
-            return true;
-        });
+        }
+        return true;
     }
 
     /**
-     * Returns an iterator over all criteria in the container, iterating in any order.
-     * The criteria included in the iteration are those that were added using the addCriterion method.
+     * Returns a spliterator over all entries in the container, which splits the entries by id in balanced halves
+     * (see LinkedHashIndex.spliterator). The container must not be changed while it is used.
      *
-     * @return an Iterator over all criteria in the container
+     * @return a Spliterator over all entries in the container
      */
     @Override
-    public Iterator<P> criterions() {
-        return new CriterionIterator(nilCriterion);
+    public Spliterator<X> spliteratorAll() {
+        return entries.spliterator();
     }
 
-    private class EntryIterator implements Iterator<X> {
-        private EntryNode nil;
-        private EntryNode previous;
-        private EntryNode lastReturned;
-        private EntryNode current;
-
-        EntryIterator(EntryNode nil) {
-            this.nil = nil;
-            this.previous = null;
-            this.lastReturned = null;
-            this.current = nil.next;
-        }
-
-        @Override
-        public boolean hasNext() {
-            return current != null;
-        }
-
-        @Override
-        public X next() {
-            if (!hasNext()) {
-                throw new IllegalStateException("No more elements");
-            }
-            previous = lastReturned;
-            lastReturned = current;
-            current = current.next;
-            return lastReturned.value;
-        }
-
-        @Override
-        public void remove() {
-            if (lastReturned == null) {
-                throw new IllegalStateException("No element to remove");
-            }
-
-            if (previous == null) {
-                nil.next = current;
-            } else {
-                previous.next = current;
-            }
-
-            lastReturned = null;
-        }
+    /**
+     * Returns a spliterator over all entries in the container that match the given criterion, like iterator(p).
+     * The entries are tested with x.approved(p), also if the container is indexed, possibly by several threads.
+     *
+     * @param p the criterion used to filter entries
+     * @return a Spliterator over all entries in the container that match the criterion
+     */
+    @Override
+    public Spliterator<X> spliterator(P p) {
+        return entries.spliterator(x -> x.approved(p) != null);
     }
 
-    private class CriterionIterator implements Iterator<P> {
-        private CriterionNode nil;
-        private CriterionNode previous;
-        private CriterionNode lastReturned;
-        private CriterionNode current;
-
-        CriterionIterator(CriterionNode nil) {
-            this.nil = nil;
-            this.previous = null;
-            this.lastReturned = null;
-            this.current = nil.next;
-        }
-
-        @Override
-        public boolean hasNext() {
-            return current != null;
-        }
-
-        @Override
-        public P next() {
-            if (!hasNext()) {
-                throw new IllegalStateException("No more elements");
-            }
-            previous = lastReturned;
-            lastReturned = current;
-            current = current.next;
-            return lastReturned.value;
-        }
-
-        @Override
-        public void remove() {
-            if (lastReturned == null) {
-                throw new IllegalStateException("No element to remove");
-            }
-
-            if (previous == null) {
-                nil.next = current;
-            } else {
-                previous.next = current;
-            }
-
-            lastReturned = null;
-        }
+    /**
+     * Returns a spliterator over all entries in the container that do not match the given criterion, like
+     * iteratorNot(p).
+     *
+     * @param p the criterion used to filter entries
+     * @return a Spliterator over all entries in the container that do not match the criterion
+     */
+    @Override
+    public Spliterator<X> spliteratorNot(P p) {
+        return entries.spliterator(x -> x.approved(p) == null);
     }
 
-    private class FilteredEntryIterator implements Iterator<X> {
-        private EntryNode nil;
-        private EntryNode previous;
-        private EntryNode lastReturned;
-        private EntryNode current;
-        private final java.util.function.Predicate<X> filter;
-
-        FilteredEntryIterator(EntryNode nil, java.util.function.Predicate<X> filter) {
-            this.nil = nil;
-            this.previous = null;
-            this.lastReturned = null;
-            this.current = nil.next;
-            this.filter = filter;
-            moveToNextValid();
-        }
-
-        private void moveToNextValid() {
-            while (current != null && !filter.test(current.value)) {
-                current = current.next;
-            }
-        }
-
-        @Override
-        public boolean hasNext() {
-            return current != null;
-        }
-
-        @Override
-        public X next() {
-            if (!hasNext()) {
-                throw new IllegalStateException("No more elements");
-            }
-            previous = lastReturned;
-            lastReturned = current;
-            current = current.next;
-            moveToNextValid();
-            return lastReturned.value;
-        }
-
-        @Override
-        public void remove() {
-            if (lastReturned == null) {
-                throw new IllegalStateException("No element to remove");
-            }
-
-            if (previous == null) {
-                nil.next = current;
-            } else {
-                previous.next = current;
-            }
+    /**
+     * Returns a spliterator over all entries in the container that match all criteria, like iterator().
+     *
+     * @return a Spliterator over all entries in the container that match all criteria
+     */
+    @Override
+    public Spliterator<X> spliterator() {
+        return entries.spliterator(this::approvedForAll);
+    }
 
-            lastReturned = null;
-        }
+    /**
+     * Returns an iterator over all criteria in the container, iterating in any order.
+     * The criteria included in the iteration are those that were added using the addCriterion method.
+     *
+     * @return an Iterator over all criteria in the container
+     */
+    @Override
+    public Iterator<P> criterions() {
+        return criteria.iterator();
     }
 
     @Override
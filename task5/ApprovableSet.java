@@ -1,4 +1,8 @@
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A generic interface with three type parameters, X, P, and T, extending java.lang.Iterable<X>.
@@ -73,5 +77,47 @@ public interface ApprovableSet<X extends Approvable<P, T>, P, T> extends Iterabl
      */
     Iterator<P> criterions();
 
+    /**
+     * Returns a spliterator over all entries in the container which have been added via add(). The default
+     * implementation wraps iteratorAll() and splits badly; implementations should split their entries in balanced
+     * parts for parallel streams.
+     *
+     * @return a Spliterator over all entries in the container
+     */
+    default Spliterator<X> spliteratorAll() {
+        return Spliterators.spliteratorUnknownSize(iteratorAll(), Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+
+    /**
+     * Returns a spliterator over the entries for which x.approved(p) returns a non-null result, like iterator(p).
+     *
+     * @param p the criterion used to filter entries
+     * @return a Spliterator over all entries in the container that match the criterion
+     */
+    default Spliterator<X> spliterator(P p) {
+        return Spliterators.spliteratorUnknownSize(iterator(p), Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+
+    /**
+     * Returns a spliterator over the entries for which x.approved(p) returns null, like iteratorNot(p).
+     *
+     * @param p the criterion used to filter entries
+     * @return a Spliterator over all entries in the container that do not match the criterion
+     */
+    default Spliterator<X> spliteratorNot(P p) {
+        return Spliterators.spliteratorUnknownSize(iteratorNot(p), Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+
+    /**
+     * Returns a parallel stream over the entries for which x.approved(p) returns a non-null result, for filtered
+     * scans on the common ForkJoinPool. x.approved(p) may be called by several threads at once.
+     *
+     * @param p the criterion used to filter entries
+     * @return a parallel Stream over all entries in the container that match the criterion
+     */
+    default Stream<X> parallelStream(P p) {
+        return StreamSupport.stream(spliterator(p), true);
+    }
+
     //void remove(X x);
 }
@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The optional bitmap index of an ApSet or AdminSet. For every criterion added via addCriterion, a CompressedBitmap
+ * holds the ids (see LinkedHashIndex) of the entries x for which x.approved(p) is not null, and one more bitmap holds
+ * the ids of all entries. The filtered iterators then scan bitmaps instead of calling approved on every entry:
+ * iterator(p) scans the bitmap of p, iteratorNot(p) the complement of it within all entries, and iterator() the
+ * intersection of the bitmaps of all criteria, driven by the smallest one.
+ *
+ * x.approved(p) is called once per entry and criterion when the index is built or an entry or criterion is added, and
+ * again for approvals changed through the set (see ApSet.approve and ApSet.reindex). Approvals changed directly on
+ * the entries are not seen by the index. For approvables whose approved method has side effects, like Counter, the
+ * side effects thus happen when indexing instead of when iterating.
+ *
+ * @param <X> the type of the entries
+ * @param <P> the type of the criteria
+ */
+class ApprovalIndex<X extends Approvable<P, ?>, P> {
+
+    private final LinkedHashIndex<X> entries;
+    private final LinkedHashIndex<P> criteria;
+    private final CompressedBitmap all = new CompressedBitmap();
+    private final Map<P, CompressedBitmap> approved = new HashMap<>();
+
+    /**
+     * Builds the index of the current entries and criteria of a set; the entries report removals to the index.
+     *
+     * @param entries the entries of the set
+     * @param criteria the criteria of the set
+     */
+    ApprovalIndex(LinkedHashIndex<X> entries, LinkedHashIndex<P> criteria) {
+        this.entries = entries;
+        this.criteria = criteria;
+        for (X x : entries) {
+            all.add(entries.idOf(x));
+        }
+        for (P p : criteria) {
+            criterionAdded(p);
+        }
+        entries.setRemovalListener(this::removed);
+    }
+
+    /**
+     * Records a new entry of the set.
+     *
+     * @param x the entry
+     */
+    void added(X x) {
+        int id = entries.idOf(x);
+        all.add(id);
+        for (Map.Entry<P, CompressedBitmap> criterion : approved.entrySet()) {
+            if (x.approved(criterion.getKey()) != null) {
+                criterion.getValue().add(id);
+            }
+        }
+    }
+
+    /**
+     * Forgets the entry with the given id, before the id is given to another entry.
+     */
+    private void removed(int id) {
+        all.remove(id);
+        for (CompressedBitmap bitmap : approved.values()) {
+            bitmap.remove(id);
+        }
+    }
+
+    /**
+     * Records a new criterion of the set.
+     *
+     * @param p the criterion
+     */
+    void criterionAdded(P p) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (X x : entries) {
+            if (x.approved(p) != null) {
+                bitmap.add(entries.idOf(x));
+            }
+        }
+        approved.put(p, bitmap);
+    }
+
+    /**
+     * Records that the approval of an entry for a criterion may have changed.
+     *
+     * @param x the entry
+     * @param p the criterion
+     */
+    void update(X x, P p) {
+        int id = entries.idOf(x);
+        CompressedBitmap bitmap = approved.get(p);
+        if (id < 0 || bitmap == null) {
+            return;
+        }
+        if (x.approved(p) != null) {
+            bitmap.add(id);
+        } else {
+            bitmap.remove(id);
+        }
+    }
+
+    /**
+     * Records that the approvals of an entry for all criteria may have changed.
+     *
+     * @param x the entry
+     */
+    void update(X x) {
+        for (P p : approved.keySet()) {
+            update(x, p);
+        }
+    }
+
+    /**
+     * Returns an iterator over the entries approved for p, or null if p is not an indexed criterion.
+     *
+     * @param p the criterion
+     * @return the iterator or null
+     */
+    Iterator<X> iterator(P p) {
+        CompressedBitmap bitmap = approved.get(p);
+        return bitmap == null ? null : new IdIterator(bitmap::next);
+    }
+
+    /**
+     * Returns an iterator over the entries not approved for p, or null if p is not an indexed criterion.
+     *
+     * @param p the criterion
+     * @return the iterator or null
+     */
+    Iterator<X> iteratorNot(P p) {
+        CompressedBitmap bitmap = approved.get(p);
+        if (bitmap == null) {
+            return null;
+        }
+        return new IdIterator(from -> {
+            int id = all.next(from);
+            while (id >= 0 && bitmap.contains(id)) {
+                id = all.next(id + 1);
+            }
+            return id;
+        });
+    }
+
+    /**
+     * Returns an iterator over the entries approved for every criterion of the set.
+     *
+     * @return the iterator
+     */
+    Iterator<X> iterator() {
+        List<CompressedBitmap> bitmaps = new ArrayList<>();
+        for (P p : criteria) {
+            bitmaps.add(approved.get(p));
+        }
+        if (bitmaps.isEmpty()) {
+            return new IdIterator(all::next);
+        }
+        bitmaps.sort(Comparator.comparingInt(CompressedBitmap::cardinality));
+        CompressedBitmap smallest = bitmaps.get(0);
+        CompressedBitmap[] others = bitmaps.subList(1, bitmaps.size()).toArray(new CompressedBitmap[0]);
+        return new IdIterator(from -> {
+            for (int id = smallest.next(from); id >= 0; id = smallest.next(id + 1)) {
+                if (containsAll(others, id)) {
+                    return id;
+                }
+            }
+            return -1;
+        });
+    }
+
+    private static boolean containsAll(CompressedBitmap[] bitmaps, int id) {
+        for (CompressedBitmap bitmap : bitmaps) {
+            if (!bitmap.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Iterates over the entries with the ids returned by next, in increasing order of the ids. The id of the next
+     * entry is searched once, in advance, like the next node in the iterators of LinkedHashIndex. Adding or removing
+     * entries other than through remove() while iterating throws a ConcurrentModificationException, like there.
+     */
+    private class IdIterator implements Iterator<X> {
+        private final IntUnaryOperator next; // smallest matching id >= the argument, or -1
+        private int nextId;
+        private X lastReturned = null;
+        private int expectedModCount = entries.modCount();
+
+        IdIterator(IntUnaryOperator next) {
+            this.next = next;
+            this.nextId = next.applyAsInt(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextId >= 0;
+        }
+
+        @Override
+        public X next() {
+            if (entries.modCount() != expectedModCount) { throw new ConcurrentModificationException(); }
+            if (!hasNext()) { throw new NoSuchElementException("No more elements"); }
+            lastReturned = entries.get(nextId);
+            nextId = next.applyAsInt(nextId + 1);
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) { throw new IllegalStateException("No element to remove"); }
+            if (entries.modCount() != expectedModCount) { throw new ConcurrentModificationException(); }
+            entries.remove(lastReturned);
+            lastReturned = null;
+            expectedModCount = entries.modCount();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative ints in the style of a roaring bitmap. The ints are grouped by their high 16 bits;
+ * each group is stored in a container for the low 16 bits: a sorted array of chars while the group has at most
+ * ARRAY_LIMIT members, or a bitmap of 65536 bits (1024 longs) above that. Sparse groups thus need two bytes per member
+ * and dense groups one bit per possible member. The containers are kept in an array sorted by their high bits.
+ *
+ * next(from) returns the smallest member >= from, so a set can be scanned in increasing order while members are
+ * added or removed.
+ */
+class CompressedBitmap {
+
+    // largest size of an array container; a bitmap container needs as many bytes as an array of this size
+    private static final int ARRAY_LIMIT = 4096;
+
+    private char[] keys = new char[4];
+    private Object[] containers = new Object[4]; // char[] (array container) or long[] (bitmap container)
+    private int[] sizes = new int[4];            // number of members per container
+    private int count = 0;                       // number of containers
+    private int cardinality = 0;
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value, >= 0
+     * @return true if the value was added, false if it was already a member
+     */
+    boolean add(int value) {
+        if (value < 0) { throw new IllegalArgumentException("Only non-negative values can be stored."); }
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int c = Arrays.binarySearch(keys, 0, count, key);
+        if (c < 0) {
+            c = -c - 1;
+            insertContainer(c, key);
+        }
+        if (containers[c] instanceof long[] words) {
+            if ((words[low >>> 6] & (1L << low)) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= 1L << low;
+        } else {
+            char[] values = (char[]) containers[c];
+            int i = Arrays.binarySearch(values, 0, sizes[c], low);
+            if (i >= 0) {
+                return false;
+            }
+            i = -i - 1;
+            if (sizes[c] == ARRAY_LIMIT) {
+                containers[c] = toBitmap(values, sizes[c]);
+                ((long[]) containers[c])[low >>> 6] |= 1L << low;
+            } else {
+                if (sizes[c] == values.length) {
+                    values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, 2 * values.length));
+                    containers[c] = values;
+                }
+                System.arraycopy(values, i, values, i + 1, sizes[c] - i);
+                values[i] = low;
+            }
+        }
+        sizes[c]++;
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param value the value
+     * @return true if the value was a member
+     */
+    boolean remove(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int c = Arrays.binarySearch(keys, 0, count, (char) (value >>> 16));
+        if (c < 0) {
+            return false;
+        }
+        char low = (char) value;
+        if (containers[c] instanceof long[] words) {
+            if ((words[low >>> 6] & (1L << low)) == 0) {
+                return false;
+            }
+            words[low >>> 6] &= ~(1L << low);
+            if (sizes[c] - 1 == ARRAY_LIMIT) {
+                containers[c] = toArray(words, ARRAY_LIMIT);
+            }
+        } else {
+            char[] values = (char[]) containers[c];
+            int i = Arrays.binarySearch(values, 0, sizes[c], low);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(values, i + 1, values, i, sizes[c] - i - 1);
+        }
+        sizes[c]--;
+        cardinality--;
+        if (sizes[c] == 0) {
+            removeContainer(c);
+        }
+        return true;
+    }
+
+    /**
+     * @param value the value
+     * @return true if the value is a member
+     */
+    boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int c = Arrays.binarySearch(keys, 0, count, (char) (value >>> 16));
+        if (c < 0) {
+            return false;
+        }
+        char low = (char) value;
+        if (containers[c] instanceof long[] words) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) containers[c], 0, sizes[c], low) >= 0;
+    }
+
+    /**
+     * Returns the smallest member that is >= from.
+     *
+     * @param from the lower bound
+     * @return the member, or -1 if there is none
+     */
+    int next(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        int c = Arrays.binarySearch(keys, 0, count, (char) (from >>> 16));
+        char low = (char) from;
+        if (c < 0) {
+            c = -c - 1; // the first container with larger high bits, searched from its start
+            low = 0;
+        }
+        for (; c < count; c++, low = 0) {
+            int found = next(c, low);
+            if (found >= 0) {
+                return keys[c] << 16 | found;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of members
+     */
+    int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Returns the smallest low value >= from in container c, or -1.
+     */
+    private int next(int c, char from) {
+        if (containers[c] instanceof long[] words) {
+            int w = from >>> 6;
+            long word = words[w] & (-1L << from);
+            while (word == 0) {
+                if (++w == words.length) {
+                    return -1;
+                }
+                word = words[w];
+            }
+            return w << 6 | Long.numberOfTrailingZeros(word);
+        }
+        char[] values = (char[]) containers[c];
+        int i = Arrays.binarySearch(values, 0, sizes[c], from);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i < sizes[c] ? values[i] : -1;
+    }
+
+    private void insertContainer(int c, char key) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * count);
+            containers = Arrays.copyOf(containers, 2 * count);
+            sizes = Arrays.copyOf(sizes, 2 * count);
+        }
+        System.arraycopy(keys, c, keys, c + 1, count - c);
+        System.arraycopy(containers, c, containers, c + 1, count - c);
+        System.arraycopy(sizes, c, sizes, c + 1, count - c);
+        keys[c] = key;
+        containers[c] = new char[4];
+        sizes[c] = 0;
+        count++;
+    }
+
+    private void removeContainer(int c) {
+        System.arraycopy(keys, c + 1, keys, c, count - c - 1);
+        System.arraycopy(containers, c + 1, containers, c, count - c - 1);
+        System.arraycopy(sizes, c + 1, sizes, c, count - c - 1);
+        count--;
+        containers[count] = null;
+    }
+
+    private static long[] toBitmap(char[] values, int size) {
+        long[] words = new long[1024];
+        for (int i = 0; i < size; i++) {
+            words[values[i] >>> 6] |= 1L << values[i];
+        }
+        return words;
+    }
+
+    private static char[] toArray(long[] words, int size) {
+        char[] values = new char[size];
+        int i = 0;
+        for (int w = 0; w < words.length; w++) {
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                values[i++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+            }
+        }
+        return values;
+    }
+}
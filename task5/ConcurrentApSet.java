@@ -0,0 +1,278 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe implementation of the ApprovableSet interface for sets that are changed by many threads while other
+ * threads iterate over them. The entries and criteria are kept in concurrent hash sets (ConcurrentHashMap key sets),
+ * so add, remove and addCriterion never block each other for long and never lock the whole set.
+ *
+ * All iterators are weakly consistent: they never throw ConcurrentModificationException, return every entry at most
+ * once, return the entries that were present when the iterator was created and not removed since, and may or may not
+ * return entries added while iterating. Their remove() removes the last returned entry from the set.
+ *
+ * Approvals changed through approve(x, p, t) and the approved results read by the filtered iterators are guarded by a
+ * lock per entry, taken from a fixed array of STRIPES locks by the hash code of the entry, so approvals of different
+ * entries are changed in parallel and an iterator never sees an entry while its approval is half changed. Approvals
+ * changed directly on the entries are only safe if the entries are thread-safe themselves, like Space, Counter and
+ * RCounter.
+ *
+ * @param <X> the type of the entries in the container, which must be a subtype of Approvable
+ * @param <P> the type of the criteria used for approval
+ * @param <T> the type of the approved results
+ */
+public class ConcurrentApSet<X extends Approvable<P, T>, P, T> implements ApprovableSet<X, P, T> {
+
+    // number of approval locks, a power of two
+    public static final int STRIPES = 64;
+
+    private final Set<X> entries = ConcurrentHashMap.newKeySet();
+    private final Set<P> criteria = ConcurrentHashMap.newKeySet();
+    private final Object[] locks = new Object[STRIPES];
+
+    public ConcurrentApSet() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Adds an entry to the container if it is not already present.
+     *
+     * @param x the entry to add, must not be null
+     */
+    @Override
+    public void add(X x) {
+        if (x == null) { throw new IllegalArgumentException("Cannot add null."); }
+        entries.add(x);
+    }
+
+    /**
+     * Removes an entry from the container if it is present.
+     *
+     * @param x the entry to remove
+     */
+    @Override
+    public void remove(X x) {
+        if (x != null) {
+            entries.remove(x);
+        }
+    }
+
+    /**
+     * Adds a criterion to the container if it is not already present.
+     *
+     * @param p the criterion to add, must not be null
+     */
+    @Override
+    public void addCriterion(P p) {
+        if (p == null) { throw new IllegalArgumentException("Cannot add null."); }
+        criteria.add(p);
+    }
+
+    /**
+     * Approves an entry for the given criterion, like x.approve(p, t), while holding the lock of the entry.
+     *
+     * @param x the entry
+     * @param p the criterion, must not be null
+     * @param t the approved object, can be null
+     */
+    public void approve(X x, P p, T t) {
+        synchronized (lockOf(x)) {
+            x.approve(p, t);
+        }
+    }
+
+    /**
+     * Returns x.approved(p), read while holding the lock of the entry.
+     *
+     * @param x the entry
+     * @param p the criterion
+     * @return the approved object or null
+     */
+    public T approved(X x, P p) {
+        synchronized (lockOf(x)) {
+            return x.approved(p);
+        }
+    }
+
+    private Object lockOf(Object x) {
+        int h = x.hashCode();
+        return locks[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Returns a weakly consistent iterator over all entries in the container, iterating in any order.
+     *
+     * @return an Iterator over all entries in the container
+     */
+    @Override
+    public Iterator<X> iteratorAll() {
+        return entries.iterator();
+    }
+
+    /**
+     * Returns a weakly consistent iterator over all entries in the container for which x.approved(p) returns a
+     * non-null result when the iterator reaches them.
+     *
+     * @param p the criterion used to filter entries
+     * @return an Iterator over all entries in the container that match the criterion
+     */
+    @Override
+    public Iterator<X> iterator(P p) {
+        return new FilteredIterator(x -> approved(x, p) != null);
+    }
+
+    /**
+     * Returns a weakly consistent iterator over all entries in the container for which x.approved(p) returns null
+     * when the iterator reaches them.
+     *
+     * @param p the criterion used to filter entries
+     * @return an Iterator over all entries in the container that do not match the criterion
+     */
+    @Override
+    public Iterator<X> iteratorNot(P p) {
+        return new FilteredIterator(x -> approved(x, p) == null);
+    }
+
+    /**
+     * Returns a weakly consistent iterator over all entries in the container for which x.approved(p) returns a
+     * non-null result for every criterion added via addCriterion; the approvals of an entry are all read under its
+     * lock.
+     *
+     * @return an Iterator over all entries in the container that match all criteria
+     */
+    @Override
+    public Iterator<X> iterator() {
+        return new FilteredIterator(this::approvedForAll);
+    }
+
+    private boolean approvedForAll(X x) {
+        synchronized (lockOf(x)) {
+            for (P p : criteria) {
+                if (x.approved(p) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns a weakly consistent spliterator over all entries in the container, which splits like the spliterator of
+     * a ConcurrentHashMap key set.
+     *
+     * @return a Spliterator over all entries in the container
+     */
+    @Override
+    public Spliterator<X> spliteratorAll() {
+        return entries.spliterator();
+    }
+
+    /**
+     * Returns a weakly consistent spliterator over the entries that match the given criterion, like iterator(p).
+     *
+     * @param p the criterion used to filter entries
+     * @return a Spliterator over all entries in the container that match the criterion
+     */
+    @Override
+    public Spliterator<X> spliterator(P p) {
+        return entries.stream().filter(x -> approved(x, p) != null).spliterator();
+    }
+
+    /**
+     * Returns a weakly consistent spliterator over the entries that do not match the given criterion, like
+     * iteratorNot(p).
+     *
+     * @param p the criterion used to filter entries
+     * @return a Spliterator over all entries in the container that do not match the criterion
+     */
+    @Override
+    public Spliterator<X> spliteratorNot(P p) {
+        return entries.stream().filter(x -> approved(x, p) == null).spliterator();
+    }
+
+    /**
+     * Returns a weakly consistent spliterator over the entries that match all criteria, like iterator().
+     *
+     * @return a Spliterator over all entries in the container that match all criteria
+     */
+    @Override
+    public Spliterator<X> spliterator() {
+        return entries.stream().filter(this::approvedForAll).spliterator();
+    }
+
+    /**
+     * Returns a weakly consistent iterator over all criteria in the container, iterating in any order.
+     *
+     * @return an Iterator over all criteria in the container
+     */
+    @Override
+    public Iterator<P> criterions() {
+        return criteria.iterator();
+    }
+
+    /**
+     * Filters a weakly consistent iterator over the entries; the filter is evaluated once per entry, when hasNext
+     * reaches it.
+     */
+    private class FilteredIterator implements Iterator<X> {
+        private final Iterator<X> all = entries.iterator();
+        private final Predicate<X> filter;
+        private X next = null;
+        private X lastReturned = null;
+
+        FilteredIterator(Predicate<X> filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && all.hasNext()) {
+                X x = all.next();
+                if (filter.test(x)) {
+                    next = x;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public X next() {
+            if (!hasNext()) { throw new NoSuchElementException("No more elements"); }
+            lastReturned = next;
+            next = null;
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) { throw new IllegalStateException("No element to remove"); }
+            entries.remove(lastReturned); // the underlying iterator may already be past the next matching entry
+            lastReturned = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Entries: ");
+        for (X x : this) {
+            sb.append(x).append(", ");
+        }
+        if (sb.length() > 1) {
+            sb.setLength(sb.length() - 2);
+        }
+        sb.append("\nCriteria: ");
+        for (P p : criteria) {
+            sb.append(p).append(", ");
+        }
+        if (sb.length() > 1) {
+            sb.setLength(sb.length() - 2);
+        }
+        return sb.toString();
+    }
+}
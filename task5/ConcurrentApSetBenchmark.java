@@ -0,0 +1,192 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConcurrentApSetBenchmark measures the throughput of a ConcurrentApSet under contention, compared with an ApSet
+ * guarded by a single lock, for several numbers of threads:
+ *     java ConcurrentApSetBenchmark [threads ...]     (default: 1 2 4 8)
+ *
+ * Every thread repeatedly picks a random space of a fixed pool and adds it (10%), removes it (10%), approves it for
+ * the criterion or withdraws the approval (40%) or reads its approval through the set (40%); every SCAN_INTERVAL
+ * operations it also counts the approved entries with iterator(p). Each round runs ROUND_MILLIS milliseconds;
+ * WARMUP_ROUNDS rounds are not counted, then the mean number of operations per millisecond of MEASURED_ROUNDS
+ * rounds is printed. The results of the reads and scans are added to a sink, so the compiler cannot remove the work.
+ */
+public class ConcurrentApSetBenchmark {
+
+    public static final int WARMUP_ROUNDS = 3;
+    public static final int MEASURED_ROUNDS = 5;
+    public static final int ROUND_MILLIS = 200;
+    public static final int POOL = 10000;        // spaces the threads work on
+    public static final int SCAN_INTERVAL = 1000;
+    public static final String CRITERION = "fire safety";
+
+    private static final AtomicLong sink = new AtomicLong();
+
+    /**
+     * The operations of one implementation.
+     */
+    private interface Target {
+        void add(Space<String> x);
+
+        void remove(Space<String> x);
+
+        void approve(Space<String> x, Path<Space<String>> path);
+
+        boolean approved(Space<String> x);
+
+        int scan();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] threads = args.length == 0 ? new int[] {1, 2, 4, 8} : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        Space<String>[] pool = pool();
+        System.out.printf("%-8s %20s %20s%n", "threads", "locked ApSet ops/ms", "ConcurrentApSet ops/ms");
+        for (int n : threads) {
+            double locked = measure(lockedApSet(), pool, n);
+            double concurrent = measure(concurrentApSet(), pool, n);
+            System.out.printf("%-8d %20.0f %20.0f%n", n, locked, concurrent);
+        }
+        System.out.println("(sink " + sink.get() + ")");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Space<String>[] pool() {
+        Space<String>[] pool = (Space<String>[]) new Space<?>[POOL];
+        for (int i = 0; i < POOL; i++) {
+            pool[i] = i % 2 == 0 ? new Interior<>("room " + i, 20) : new Exterior<>("yard " + i, i % 4 == 1);
+        }
+        return pool;
+    }
+
+    private static Target lockedApSet() {
+        ApSet<Space<String>, String, Path<Space<String>>> set = new ApSet<>();
+        set.addCriterion(CRITERION);
+        return new Target() {
+            public synchronized void add(Space<String> x) {
+                set.add(x);
+            }
+
+            public synchronized void remove(Space<String> x) {
+                set.remove(x);
+            }
+
+            public synchronized void approve(Space<String> x, Path<Space<String>> path) {
+                set.approve(x, CRITERION, path);
+            }
+
+            public synchronized boolean approved(Space<String> x) {
+                return x.approved(CRITERION) != null;
+            }
+
+            public synchronized int scan() {
+                int count = 0;
+                for (Iterator<Space<String>> it = set.iterator(CRITERION); it.hasNext(); it.next()) {
+                    count++;
+                }
+                return count;
+            }
+        };
+    }
+
+    private static Target concurrentApSet() {
+        ConcurrentApSet<Space<String>, String, Path<Space<String>>> set = new ConcurrentApSet<>();
+        set.addCriterion(CRITERION);
+        return new Target() {
+            public void add(Space<String> x) {
+                set.add(x);
+            }
+
+            public void remove(Space<String> x) {
+                set.remove(x);
+            }
+
+            public void approve(Space<String> x, Path<Space<String>> path) {
+                set.approve(x, CRITERION, path);
+            }
+
+            public boolean approved(Space<String> x) {
+                return set.approved(x, CRITERION) != null;
+            }
+
+            public int scan() {
+                int count = 0;
+                for (Iterator<Space<String>> it = set.iterator(CRITERION); it.hasNext(); it.next()) {
+                    count++;
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Runs the rounds with n threads on a target and returns the mean operations per millisecond.
+     */
+    private static double measure(Target target, Space<String>[] pool, int n) throws InterruptedException {
+        for (Space<String> x : pool) {
+            target.add(x);
+        }
+        Path<Space<String>> path = new Path<>();
+        long total = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long operations = round(target, pool, path, n, round);
+            if (round >= WARMUP_ROUNDS) {
+                total += operations;
+            }
+        }
+        return (double) total / MEASURED_ROUNDS / ROUND_MILLIS;
+    }
+
+    private static long round(Target target, Space<String>[] pool, Path<Space<String>> path, int n, int round)
+            throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] operations = new long[n];
+        Thread[] workers = new Thread[n];
+        for (int t = 0; t < n; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(31L * round + id);
+                long done = 0;
+                long found = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (running.get()) {
+                    Space<String> x = pool[random.nextInt(pool.length)];
+                    int op = random.nextInt(10);
+                    if (op == 0) {
+                        target.add(x);
+                    } else if (op == 1) {
+                        target.remove(x);
+                    } else if (op < 6) {
+                        target.approve(x, op % 2 == 0 ? path : null);
+                    } else if (target.approved(x)) {
+                        found++;
+                    }
+                    if (++done % SCAN_INTERVAL == 0) {
+                        found += target.scan();
+                    }
+                }
+                operations[id] = done;
+                sink.addAndGet(found);
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        Thread.sleep(ROUND_MILLIS);
+        running.set(false);
+        long total = 0;
+        for (int t = 0; t < n; t++) {
+            workers[t].join();
+            total += operations[t];
+        }
+        return total;
+    }
+}
@@ -1,16 +1,19 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A class whose objects count method calls for testing purposes. Counter implements Approvable, passing
  * its type parameter T to Approvable and replacing P with Counter (with the appropriate type for the type parameter).
  * Objects of Counter contain a count variable. A call to x.approved(y) increases x's count variable by 1000 and y's
  * count variable by 1. The value set via approve or the constructor is returned. Calls to approve behave as described
- * in Approvable.
+ * in Approvable. The count variables are atomic and the value is volatile, so a Counter can be approved and counted
+ * by several threads at once, e.g. in a ConcurrentApSet.
  *
  * @param <T> the type parameter passed to Approvable
  */
 public class Counter<T> implements Approvable<Counter<T>, T> {
 
-    private int count = 0;
-    private T value;
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile T value;
 
     /**
      * Constructs a Counter object with the specified value.
@@ -30,8 +33,8 @@ public class Counter<T> implements Approvable<Counter<T>, T> {
      */
     @Override
     public T approved(Counter<T> tCounter) {
-        this.count += 1000;
-        tCounter.count++;
+        this.count.addAndGet(1000);
+        tCounter.count.incrementAndGet();
         return value;
     }
 
@@ -53,7 +56,7 @@ public class Counter<T> implements Approvable<Counter<T>, T> {
      */
     @Override
     public String toString() {
-        return Integer.toString(count);
+        return Integer.toString(count.get());
     }
 }
 
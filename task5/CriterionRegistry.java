@@ -0,0 +1,133 @@
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The CriterionRegistry interns approval criteria: every criterion, compared with equals and hashCode, gets an int id
+ * the first time it is interned. Approvables like Space can then keep their approvals in small hash tables keyed by
+ * the id, so a lookup compares ints instead of calling equals on the criteria.
+ *
+ * The registry holds the criteria weakly. A criterion keeps its id while its canonical instance (the one interned
+ * first, see canonical) is referenced elsewhere, e.g. by the spaces that have an approval for it; afterwards the
+ * registry forgets it, and an equal criterion interned later gets a new id. Ids are never reused, so an id that was
+ * forgotten matches no criterion any more. The registry is thread-safe, and idOf does not lock.
+ */
+public final class CriterionRegistry {
+
+    private static final ConcurrentHashMap<Object, Interned> ids = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Object> released = new ReferenceQueue<>();
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private CriterionRegistry() {
+    }
+
+    /**
+     * Returns the id of a criterion, giving it the next free id if it has none yet. The id stays valid only while
+     * the canonical instance of the criterion is referenced, see canonical.
+     *
+     * @param p the criterion, must not be null
+     * @return the id of the criterion, >= 0
+     */
+    public static int intern(Object p) {
+        return idOf(canonical(p));
+    }
+
+    /**
+     * Returns the id of a criterion without interning it.
+     *
+     * @param p the criterion
+     * @return the id of the criterion, or -1 if it is not interned
+     */
+    public static int idOf(Object p) {
+        Interned interned = p == null ? null : ids.get(new Lookup(p));
+        return interned == null || interned.get() == null ? -1 : interned.id;
+    }
+
+    /**
+     * Returns the canonical instance of a criterion: the equal criterion interned first, or p itself if there is
+     * none. Holding the canonical instance keeps the id of the criterion.
+     *
+     * @param p the criterion, must not be null
+     * @return the canonical instance, equal to p
+     */
+    static Object canonical(Object p) {
+        if (p == null) { throw new IllegalArgumentException("The criterion is null."); }
+        for (Reference<?> reference; (reference = released.poll()) != null; ) {
+            ids.remove(reference, reference);
+        }
+        while (true) {
+            Interned interned = ids.get(new Lookup(p));
+            Object criterion = interned == null ? null : interned.get();
+            if (criterion != null) {
+                return criterion;
+            }
+            if (interned != null) { // released, but not polled yet
+                ids.remove(interned, interned);
+            }
+            Interned fresh = new Interned(p, nextId.getAndIncrement());
+            if (ids.putIfAbsent(fresh, fresh) == null) {
+                return p;
+            }
+        }
+    }
+
+    /**
+     * @return the number of ids given so far; all ids are below it
+     */
+    public static int size() {
+        return nextId.get();
+    }
+
+    /**
+     * A key of the registry: the canonical instance of a criterion, held weakly, and its id.
+     */
+    private static final class Interned extends WeakReference<Object> {
+
+        final int id;
+        private final int hash;
+
+        Interned(Object p, int id) {
+            super(p, released);
+            this.id = id;
+            this.hash = p.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            Object p = get();
+            return p != null && o instanceof Interned other && p.equals(other.get());
+        }
+    }
+
+    /**
+     * The key a criterion is looked up with, equal to the Interned key of an equal criterion.
+     */
+    private static final class Lookup {
+
+        private final Object p;
+
+        Lookup(Object p) {
+            this.p = p;
+        }
+
+        @Override
+        public int hashCode() {
+            return p.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Interned interned && p.equals(interned.get());
+        }
+    }
+}
@@ -0,0 +1,410 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * A set of elements that are stored in a doubly linked list with a dummy node (nil), in insertion order, and indexed
+ * by a hash table with open addressing over the list nodes. This way add, remove and contains take O(1) on average
+ * instead of walking the list, and the iterators can remove the last returned element in O(1).
+ * Elements are compared with equals and hashCode; null elements are not allowed.
+ *
+ * The table uses linear probing and is kept at most half full. The slot of an element is taken from the high bits
+ * of its hash code multiplied by the golden ratio (Fibonacci hashing), so consecutive hash codes, e.g. of Integers,
+ * are spread over the table instead of forming one long probe sequence. Removed slots are filled again by shifting
+ * the following nodes of the same probe sequence back, so no deleted markers are needed.
+ *
+ * Every element also gets a dense int id while it is in the set (ids of removed elements are used again), so other
+ * structures like the CompressedBitmap of an ApprovalIndex can refer to elements by id. The array of the nodes by id
+ * is also the view the spliterators work on: they cover a range of ids and split it in halves, so parallel streams
+ * and fork-join tasks get balanced parts instead of walking the list.
+ *
+ * @param <E> the type of the elements
+ */
+class LinkedHashIndex<E> implements Iterable<E> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final class Node<E> {
+        final E value;
+        final int hash;
+        int id;
+        Node<E> previous;
+        Node<E> next;
+
+        Node(E value, int hash) {
+            this.value = value;
+            this.hash = hash;
+        }
+    }
+
+    // node that is not in the list, nil.next is the first and nil.previous the last node
+    private final Node<E> nil = new Node<>(null, 0);
+    private Node<E>[] table = newTable(INITIAL_CAPACITY);
+    private int shift = 32 - Integer.numberOfTrailingZeros(INITIAL_CAPACITY); // home slot of hash h: h >>> shift
+    private int size = 0;
+    private int modCount = 0;
+
+    private Node<E>[] byId = newTable(INITIAL_CAPACITY); // byId[id] is the node with the id, null if the id is free
+    private int[] freeIds = new int[0];                  // stack of free ids below nextId
+    private int freeCount = 0;
+    private int nextId = 0;
+    private IntConsumer removalListener = null;
+
+    LinkedHashIndex() {
+        nil.previous = nil;
+        nil.next = nil;
+    }
+
+    /**
+     * Sets the listener that is called with the id of every removed element, including removals through the
+     * iterators, before the id can be given to another element.
+     *
+     * @param removalListener the listener, or null
+     */
+    void setRemovalListener(IntConsumer removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    /**
+     * Returns the id of an element.
+     *
+     * @param o the element
+     * @return the id, or -1 if the element is not in the set
+     */
+    int idOf(Object o) {
+        int i = slotOf(o);
+        return i < 0 ? -1 : table[i].id;
+    }
+
+    /**
+     * Returns the element with the given id.
+     *
+     * @param id the id of an element in the set
+     * @return the element
+     */
+    E get(int id) {
+        return byId[id].value;
+    }
+
+    /**
+     * Returns the number of additions and removals so far, so other iterators over the elements can fail fast like
+     * the iterators of the set.
+     *
+     * @return the modification count
+     */
+    int modCount() {
+        return modCount;
+    }
+
+    /**
+     * Returns the smallest id that was never given to an element; all ids of the set are below it.
+     *
+     * @return the bound of the ids
+     */
+    int idBound() {
+        return nextId;
+    }
+
+    /**
+     * Adds an element if it is not already present.
+     *
+     * @param e the element to add
+     * @return true if the element was added
+     */
+    boolean add(E e) {
+        if (e == null) { throw new IllegalArgumentException("Cannot add null."); }
+        int hash = hash(e);
+        int mask = table.length - 1;
+        int i = hash >>> shift;
+        for (; table[i] != null; i = (i + 1) & mask) {
+            if (table[i].hash == hash && table[i].value.equals(e)) {
+                return false;
+            }
+        }
+        Node<E> node = new Node<>(e, hash);
+        node.id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        if (node.id == byId.length) {
+            byId = Arrays.copyOf(byId, 2 * byId.length);
+        }
+        byId[node.id] = node;
+        table[i] = node;
+        node.previous = nil.previous;
+        node.next = nil;
+        nil.previous.next = node;
+        nil.previous = node;
+        size++;
+        modCount++;
+        if (2 * size > table.length) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * Removes an element if it is present.
+     *
+     * @param o the element to remove
+     * @return true if the element was removed
+     */
+    boolean remove(Object o) {
+        int i = slotOf(o);
+        if (i < 0) {
+            return false;
+        }
+        unlink(table[i]);
+        deleteSlot(i);
+        return true;
+    }
+
+    /**
+     * @param o the element
+     * @return true if the element is present
+     */
+    boolean contains(Object o) {
+        return slotOf(o) >= 0;
+    }
+
+    /**
+     * @return the number of elements
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns an iterator over all elements in insertion order, which supports remove().
+     *
+     * @return an Iterator over all elements
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new NodeIterator(null);
+    }
+
+    /**
+     * Returns an iterator over the elements that match the filter, in insertion order, which supports remove().
+     * Removing an element does not skip or remove the elements between it and the previously returned one.
+     *
+     * @param filter the condition of the returned elements
+     * @return an Iterator over the matching elements
+     */
+    Iterator<E> iterator(Predicate<? super E> filter) {
+        return new NodeIterator(filter);
+    }
+
+    /**
+     * Returns a spliterator over all elements in the order of their ids, which splits its range of ids in halves.
+     *
+     * @return a Spliterator over all elements
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return new IdSpliterator(0, nextId, null);
+    }
+
+    /**
+     * Returns a spliterator over the elements that match the filter, in the order of their ids, which splits its
+     * range of ids in halves. The filter may be called by several threads at once.
+     *
+     * @param filter the condition of the returned elements
+     * @return a Spliterator over the matching elements
+     */
+    Spliterator<E> spliterator(Predicate<? super E> filter) {
+        return new IdSpliterator(0, nextId, filter);
+    }
+
+    private int slotOf(Object o) {
+        if (o == null) {
+            return -1;
+        }
+        int hash = hash(o);
+        int mask = table.length - 1;
+        for (int i = hash >>> shift; table[i] != null; i = (i + 1) & mask) {
+            if (table[i].hash == hash && table[i].value.equals(o)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the slot of a node of the set, comparing by identity.
+     */
+    private int slotOf(Node<E> node) {
+        int mask = table.length - 1;
+        int i = node.hash >>> shift;
+        while (table[i] != node) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void unlink(Node<E> node) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        size--;
+        modCount++;
+        if (removalListener != null) {
+            removalListener.accept(node.id);
+        }
+        byId[node.id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, Math.max(16, 2 * freeCount));
+        }
+        freeIds[freeCount++] = node.id;
+    }
+
+    /**
+     * Empties slot i and moves the following nodes whose probe sequence passes slot i back into it.
+     */
+    private void deleteSlot(int i) {
+        int mask = table.length - 1;
+        table[i] = null;
+        for (int j = (i + 1) & mask; table[j] != null; j = (j + 1) & mask) {
+            int home = table[j].hash >>> shift;
+            // the node may move to i if i lies cyclically between its home slot and j
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                table[i] = table[j];
+                table[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    private void resize() {
+        table = newTable(2 * table.length);
+        shift--;
+        int mask = table.length - 1;
+        for (Node<E> node = nil.next; node != nil; node = node.next) {
+            int i = node.hash >>> shift;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = node;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Node<E>[] newTable(int capacity) {
+        return (Node<E>[]) new Node<?>[capacity];
+    }
+
+    /**
+     * Multiplies the hash code with 2^32 divided by the golden ratio; the high bits of the product depend on all bits
+     * of the hash code.
+     */
+    private static int hash(Object o) {
+        return o.hashCode() * 0x9E3779B9;
+    }
+
+    /**
+     * Covers the ids from (inclusive) to (exclusive); ids of removed elements are skipped. The set must not be
+     * changed while the spliterator is used, which is checked at the end like in the iterators.
+     */
+    private class IdSpliterator implements Spliterator<E> {
+        private final Predicate<? super E> filter;
+        private int from;
+        private final int to;
+        private final int expectedModCount = modCount;
+
+        IdSpliterator(int from, int to, Predicate<? super E> filter) {
+            this.from = from;
+            this.to = to;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            while (from < to) {
+                Node<E> node = byId[from++];
+                if (node != null && (filter == null || filter.test(node.value))) {
+                    action.accept(node.value);
+                    return true;
+                }
+            }
+            if (modCount != expectedModCount) { throw new ConcurrentModificationException(); }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            Node<E>[] nodes = byId;
+            for (; from < to; from++) {
+                Node<E> node = nodes[from];
+                if (node != null && (filter == null || filter.test(node.value))) {
+                    action.accept(node.value);
+                }
+            }
+            if (modCount != expectedModCount) { throw new ConcurrentModificationException(); }
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int middle = (from + to) >>> 1;
+            if (middle <= from) {
+                return null;
+            }
+            Spliterator<E> prefix = new IdSpliterator(from, middle, filter);
+            from = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from; // an upper bound, free ids and filtered elements are included
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL;
+        }
+    }
+
+    private class NodeIterator implements Iterator<E> {
+        private final Predicate<? super E> filter;
+        private Node<E> next;
+        private Node<E> lastReturned = null;
+        private int expectedModCount = modCount;
+
+        NodeIterator(Predicate<? super E> filter) {
+            this.filter = filter;
+            this.next = skip(nil.next);
+        }
+
+        private Node<E> skip(Node<E> node) {
+            while (node != nil && filter != null && !filter.test(node.value)) {
+                node = node.next;
+            }
+            return node;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != nil;
+        }
+
+        @Override
+        public E next() {
+            if (modCount != expectedModCount) { throw new ConcurrentModificationException(); }
+            if (!hasNext()) { throw new NoSuchElementException("No more elements"); }
+            lastReturned = next;
+            next = skip(next.next);
+            return lastReturned.value;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) { throw new IllegalStateException("No element to remove"); }
+            if (modCount != expectedModCount) { throw new ConcurrentModificationException(); }
+            unlink(lastReturned);
+            deleteSlot(slotOf(lastReturned));
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+    }
+}
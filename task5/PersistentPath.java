@@ -0,0 +1,360 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable variant of Path: add and remove do not change the path but return a new path, which shares all
+ * unchanged parts with the old one (structural sharing). This is what the Admin interface describes, so AdminSet.extend
+ * and shorten can give every entry its own extended or shortened path without copying or changing a path that other
+ * entries still refer to.
+ *
+ * The elements are stored in a hash array mapped trie: every node covers 5 bits of the hash codes of the elements and
+ * holds a 32-bit bitmap of the used slots and an array of just these slots, each an element or a child node for the
+ * next 5 bits. Elements whose hash codes are equal are kept together in a collision node. add, remove and contains thus
+ * take O(log n) steps (at most 7 levels for 32-bit hash codes) instead of a scan of the whole path, and add and remove
+ * allocate only the nodes on the way from the root to the element. Elements are compared with equals and hashCode;
+ * null elements are not allowed.
+ *
+ * @param <X> the type of the elements
+ */
+public final class PersistentPath<X> implements Admin<X, PersistentPath<X>>, Iterable<X> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final Node EMPTY = new Node(0, new Object[0]);
+
+    private final Node root;
+    private final int size;
+
+    /**
+     * Constructs an empty path.
+     */
+    public PersistentPath() {
+        this(EMPTY, 0);
+    }
+
+    private PersistentPath(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns a path with the elements of this path and the given element, or this path if it already contains the
+     * element.
+     *
+     * @param x the element to be added, must not be null
+     * @return the path with the element
+     */
+    @Override
+    public PersistentPath<X> add(X x) {
+        if (x == null) { throw new IllegalArgumentException("Cannot add null."); }
+        Node added = root.add(x, x.hashCode(), 0);
+        return added == root ? this : new PersistentPath<>(added, size + 1);
+    }
+
+    /**
+     * Returns a path with the elements of this path except the given element, or this path if it does not contain
+     * the element.
+     *
+     * @param x the element to be removed
+     * @return the path without the element
+     */
+    @Override
+    public PersistentPath<X> remove(X x) {
+        if (x == null) {
+            return this;
+        }
+        int hash = x.hashCode();
+        Object removed = root.remove(x, hash, 0);
+        if (removed == root) {
+            return this;
+        }
+        if (removed == null) {
+            return new PersistentPath<>(EMPTY, 0);
+        }
+        // a single remaining element or collision node is moved up to the root, which must stay a node
+        Node newRoot = removed instanceof Node node ? node : Node.single(removed, hashOf(removed), 0);
+        return new PersistentPath<>(newRoot, size - 1);
+    }
+
+    /**
+     * @param x the element
+     * @return true if the path contains the element
+     */
+    public boolean contains(X x) {
+        return x != null && root.contains(x, x.hashCode(), 0);
+    }
+
+    /**
+     * @return the number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an iterator over the elements in this path, in the order of their hash codes.
+     *
+     * @return an iterator over the elements in this path
+     */
+    @Override
+    public Iterator<X> iterator() {
+        return new TrieIterator();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (X x : this) {
+            sb.append(x).append(", ");
+        }
+        if (sb.length() > 1) {
+            sb.setLength(sb.length() - 2);
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    /**
+     * Returns the hash code of an element or the common hash code of the elements of a collision node.
+     */
+    private static int hashOf(Object entry) {
+        return entry instanceof Collision collision ? collision.hash : entry.hashCode();
+    }
+
+    /**
+     * A node of the trie; slots[i] is an element, a Collision or a child Node for the i-th set bit of bitmap.
+     */
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        /**
+         * Returns a node with one slot for an element or collision node at the given level.
+         */
+        static Node single(Object entry, int hash, int shift) {
+            return new Node(1 << ((hash >>> shift) & MASK), new Object[] {entry});
+        }
+
+        /**
+         * Returns a node containing two entries with different hash codes, or a collision node if they are equal.
+         */
+        static Object merge(Object a, int hashA, Object b, int hashB, int shift) {
+            if (hashA == hashB) {
+                return new Collision(hashA, new Object[] {a, b});
+            }
+            int bitA = 1 << ((hashA >>> shift) & MASK);
+            int bitB = 1 << ((hashB >>> shift) & MASK);
+            if (bitA == bitB) {
+                return new Node(bitA, new Object[] {merge(a, hashA, b, hashB, shift + BITS)});
+            }
+            return new Node(bitA | bitB, Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[] {a, b} : new Object[] {b, a});
+        }
+
+        /**
+         * Returns a node that also contains x, or this node if x is already present.
+         */
+        Node add(Object x, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, copy, 0, i);
+                copy[i] = x;
+                System.arraycopy(slots, i, copy, i + 1, slots.length - i);
+                return new Node(bitmap | bit, copy);
+            }
+            Object slot = slots[i];
+            Object replacement;
+            if (slot instanceof Node child) {
+                replacement = child.add(x, hash, shift + BITS);
+            } else if (slot instanceof Collision collision) {
+                replacement = collision.hash == hash ? collision.add(x)
+                        : merge(collision, collision.hash, x, hash, shift + BITS);
+            } else if (slot.equals(x)) {
+                return this;
+            } else {
+                replacement = merge(slot, slot.hashCode(), x, hash, shift + BITS);
+            }
+            return replacement == slot ? this : with(i, replacement);
+        }
+
+        /**
+         * Returns the node without x: this node if x is not present, null if the node becomes empty, or the single
+         * remaining element or collision node if no child node is left, so it can be moved up one level.
+         */
+        Object remove(Object x, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = Integer.bitCount(bitmap & (bit - 1));
+            Object slot = slots[i];
+            Object replacement;
+            if (slot instanceof Node child) {
+                replacement = child.remove(x, hash, shift + BITS);
+            } else if (slot instanceof Collision collision) {
+                replacement = collision.hash == hash ? collision.remove(x) : collision;
+            } else {
+                replacement = slot.equals(x) ? null : slot;
+            }
+            if (replacement == slot) {
+                return this;
+            }
+            if (replacement != null) {
+                if (slots.length == 1 && !(replacement instanceof Node)) {
+                    return replacement;
+                }
+                return with(i, replacement);
+            }
+            if (slots.length == 1) {
+                return null;
+            }
+            if (slots.length == 2 && !(slots[1 - i] instanceof Node)) {
+                return slots[1 - i];
+            }
+            Object[] copy = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, copy, 0, i);
+            System.arraycopy(slots, i + 1, copy, i, slots.length - i - 1);
+            return new Node(bitmap & ~bit, copy);
+        }
+
+        boolean contains(Object x, int hash, int shift) {
+            Node node = this;
+            while (true) {
+                int bit = 1 << ((hash >>> shift) & MASK);
+                if ((node.bitmap & bit) == 0) {
+                    return false;
+                }
+                Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+                if (slot instanceof Node child) {
+                    node = child;
+                    shift += BITS;
+                } else if (slot instanceof Collision collision) {
+                    return collision.hash == hash && collision.indexOf(x) >= 0;
+                } else {
+                    return slot.equals(x);
+                }
+            }
+        }
+
+        private Node with(int i, Object slot) {
+            Object[] copy = slots.clone();
+            copy[i] = slot;
+            return new Node(bitmap, copy);
+        }
+    }
+
+    /**
+     * The elements whose hash codes are all equal to hash.
+     */
+    private static final class Collision {
+        final int hash;
+        final Object[] elements;
+
+        Collision(int hash, Object[] elements) {
+            this.hash = hash;
+            this.elements = elements;
+        }
+
+        int indexOf(Object x) {
+            for (int i = 0; i < elements.length; i++) {
+                if (elements[i].equals(x)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Collision add(Object x) {
+            if (indexOf(x) >= 0) {
+                return this;
+            }
+            Object[] copy = Arrays.copyOf(elements, elements.length + 1);
+            copy[elements.length] = x;
+            return new Collision(hash, copy);
+        }
+
+        /**
+         * Returns the collision node without x, or the single remaining element.
+         */
+        Object remove(Object x) {
+            int i = indexOf(x);
+            if (i < 0) {
+                return this;
+            }
+            if (elements.length == 2) {
+                return elements[1 - i];
+            }
+            Object[] copy = new Object[elements.length - 1];
+            System.arraycopy(elements, 0, copy, 0, i);
+            System.arraycopy(elements, i + 1, copy, i, elements.length - i - 1);
+            return new Collision(hash, copy);
+        }
+    }
+
+    /**
+     * Walks the trie depth first with a stack of slot arrays and positions; a trie has at most 8 levels of nodes and
+     * collision nodes.
+     */
+    private class TrieIterator implements Iterator<X> {
+        private final Object[][] arrays = new Object[8][];
+        private final int[] positions = new int[8];
+        private int depth = 0;
+        private Object next;
+
+        TrieIterator() {
+            arrays[0] = root.slots;
+            advance();
+        }
+
+        /**
+         * Moves to the next element and stores it in next, or null at the end.
+         */
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                if (positions[depth] == arrays[depth].length) {
+                    depth--;
+                    continue;
+                }
+                Object slot = arrays[depth][positions[depth]++];
+                if (slot instanceof Node node) {
+                    push(node.slots);
+                } else if (slot instanceof Collision collision) {
+                    push(collision.elements);
+                } else {
+                    next = slot;
+                    return;
+                }
+            }
+        }
+
+        private void push(Object[] slots) {
+            depth++;
+            arrays[depth] = slots;
+            positions[depth] = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public X next() {
+            if (!hasNext()) { throw new NoSuchElementException("No more elements"); }
+            X value = (X) next;
+            advance();
+            return value;
+        }
+    }
+}
@@ -1,12 +1,14 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class RCounter implements Approvable<RCounter, Path<RCounter>> { //extends Counter???
 
-    int count = 0;
-    private Path<RCounter> path;
+    final AtomicInteger count = new AtomicInteger(); // atomic like in Counter, for concurrent sets
+    private volatile Path<RCounter> path;
 
     @Override
     public Path<RCounter> approved(RCounter rCounter) {
-        this.count += 1000;
-        rCounter.count++;
+        this.count.addAndGet(1000);
+        rCounter.count.incrementAndGet();
 
         return path;
     }
@@ -18,6 +20,6 @@ public class RCounter implements Approvable<RCounter, Path<RCounter>> { //extend
 
     @Override
     public String toString() {
-        return Integer.toString(count);
+        return Integer.toString(count.get());
     }
 }
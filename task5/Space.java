@@ -1,7 +1,43 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Represents a space, implementing the Approvable interface with a type parameter P.
+ * The type parameter T of Approvable is replaced by Path<Space<P>>.
+ *
+ * The approvals are stored in a small open-addressing hash table keyed by the id of the criterion in the
+ * CriterionRegistry, so approved(p) is a hash lookup of the id and a probe that compares ints, and approved(int) only
+ * the probe, for loops over many spaces. The table has room for the criteria of this space only, and holds the
+ * canonical instance of every criterion it has an approval for, so the registry keeps their ids and forgets the
+ * others. approve writes the changed entry into its slot with volatile semantics and copies the table only when it
+ * has to grow, so approvals of a space can be read by several threads without locking while another thread approves
+ * it; concurrent calls of approve are serialized.
+ *
+ * @param <P> the type parameter representing the approval criterion
+ */
 public class Space<P> implements Approvable<P, Path<Space<P>>> {
 
+    /**
+     * An entry of the table. A revoked approval keeps its entry, without criterion and path, until the table grows,
+     * so the probes for other criteria still pass it.
+     */
+    private static final class Approval {
+
+        final int id;
+        final Object criterion;
+        final Path<?> path;
+
+        Approval(int id, Object criterion, Path<?> path) {
+            this.id = id;
+            this.criterion = criterion;
+            this.path = path;
+        }
+    }
+
     private String description;
-    private ApprovalNode head;
+    // linear probing from id & (length - 1), the length is a power of two and at most 3/4 of the entries are used;
+    // null until the first approval
+    private volatile AtomicReferenceArray<Approval> approvals = null;
+    private int used = 0; // entries in use, including revoked approvals; guarded by this
 
     public Space(String description) {
         this.description = description;
@@ -9,33 +45,53 @@ public class Space<P> implements Approvable<P, Path<Space<P>>> {
 
     @Override
     public Path<Space<P>> approved(P p) {
-        ApprovalNode current = head;
+        return approved(CriterionRegistry.idOf(p));
+    }
 
-        while (current != null) {
-            if (current.criterion.equals(p)) {
-                return current.path;
+    /**
+     * Returns the approved path for the criterion with the given id, see CriterionRegistry.intern.
+     *
+     * @param criterion the id of the criterion
+     * @return the approved path or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public Path<Space<P>> approved(int criterion) {
+        AtomicReferenceArray<Approval> approvals = this.approvals;
+        if (approvals == null || criterion < 0) {
+            return null;
+        }
+        int mask = approvals.length() - 1;
+        Approval approval;
+        // ids are given in sequence, so their low bits spread without mixing
+        for (int i = criterion & mask; (approval = approvals.get(i)) != null; i = (i + 1) & mask) {
+            if (approval.id == criterion) {
+                return (Path<Space<P>>) approval.path;
             }
-            current = current.next;
         }
-
         return null;
     }
 
     @Override
-    public void approve(P p, Path<Space<P>> spaces) {
-        ApprovalNode current = head;
-
-        while(current != null) {
-            if(current.criterion.equals(p)) {
-                current.path = spaces;
-                return;
-            }
-            current = current.next;
+    public synchronized void approve(P p, Path<Space<P>> spaces) {
+        Object criterion = CriterionRegistry.canonical(p); // held by the approval, so the id is kept
+        int id = CriterionRegistry.idOf(criterion);
+        AtomicReferenceArray<Approval> approvals = this.approvals;
+        int slot = approvals == null ? -1 : find(approvals, id);
+        if (slot < 0 && spaces == null) {
+            return;
+        }
+        Approval approval = new Approval(id, spaces == null ? null : criterion, spaces);
+        if (slot >= 0) {
+            approvals.set(slot, approval);
+        } else if (approvals != null && 4 * (used + 1) <= 3 * approvals.length()) {
+            approvals.set(-1 - find(approvals, id), approval);
+            used++;
+        } else {
+            AtomicReferenceArray<Approval> grown = grow(approvals);
+            grown.set(-1 - find(grown, id), approval);
+            used++;
+            this.approvals = grown; // published with the new entry
         }
-
-        ApprovalNode newNode = new ApprovalNode(p, spaces);
-        newNode.next = head;
-        head = newNode; 
     }
 
     @Override
@@ -43,14 +99,46 @@ public class Space<P> implements Approvable<P, Path<Space<P>>> {
         return description;
     }
 
-    private class ApprovalNode {
-        P criterion;
-        Path<Space<P>> path;
-        ApprovalNode next;
+    /**
+     * Returns the slot of the entry with the id, or -1 - (the free slot it would be put into) if there is none.
+     */
+    private static int find(AtomicReferenceArray<Approval> approvals, int id) {
+        int mask = approvals.length() - 1;
+        int i = id & mask;
+        Approval approval;
+        while ((approval = approvals.get(i)) != null) {
+            if (approval.id == id) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1 - i;
+    }
 
-        ApprovalNode(P criterion, Path<Space<P>> path) {
-            this.criterion = criterion;
-            this.path = path;
+    /**
+     * Returns a table with the current approvals and room for one more; revoked approvals are left out. Sets used to
+     * the number of approvals in the new table.
+     */
+    private AtomicReferenceArray<Approval> grow(AtomicReferenceArray<Approval> approvals) {
+        int current = 0;
+        for (int i = 0; approvals != null && i < approvals.length(); i++) {
+            Approval approval = approvals.get(i);
+            if (approval != null && approval.path != null) {
+                current++;
+            }
+        }
+        int capacity = 2;
+        while (4 * (current + 1) > 3 * capacity) {
+            capacity *= 2;
+        }
+        AtomicReferenceArray<Approval> table = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; approvals != null && i < approvals.length(); i++) {
+            Approval approval = approvals.get(i);
+            if (approval != null && approval.path != null) {
+                table.set(-1 - find(table, approval.id), approval);
+            }
         }
+        used = current;
+        return table;
     }
 }
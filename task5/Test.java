@@ -1,3 +1,9 @@
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * NO subtype relationship between AdminSet and ApSet:
  *       AdminSet not a subtype of ApSet, because AdminSet has stricter constraints on T (must implemment Admin<X, T>) and
@@ -114,6 +120,159 @@ public class Test {
 
         System.out.println("\nAfter Re-Adding:");
         adminSetSpace.iteratorAll().forEachRemaining(System.out::println);
+
+        // Step 5: Test removal through the iterators and adding many entries
+        System.out.println("\nTesting Iterator Removal:");
+        for (Iterator<Space<String>> it = adminSetSpace.iteratorAll(); it.hasNext(); ) {
+            if (it.next() instanceof Interior) {
+                it.remove();
+            }
+        }
+        adminSetSpace.iteratorAll().forEachRemaining(System.out::println);
+        adminSetSpace.add(livingRoom); // the removed entries can be added again, the others are not added twice
+        adminSetSpace.add(garden);
+        int entries = 0;
+        for (Iterator<Space<String>> it = adminSetSpace.iteratorAll(); it.hasNext(); it.next()) {
+            entries++;
+        }
+        System.out.println(entries == 5 ? "Iterator removal test was successful." : "Iterator removal test was unsuccessful.");
+
+        ApSet<RCounter, RCounter, Path<RCounter>> manyCounters = new ApSet<>();
+        RCounter first = new RCounter();
+        manyCounters.add(first);
+        for (int i = 0; i < 100000; i++) {
+            manyCounters.add(new RCounter());
+            manyCounters.add(first);
+        }
+        entries = 0;
+        for (Iterator<RCounter> it = manyCounters.iteratorAll(); it.hasNext(); it.next()) {
+            entries++;
+        }
+        System.out.println(entries == 100001 ? "Large set test was successful." : "Large set test was unsuccessful.");
+
+        // Step 6: Test the bitmap index of the approved entries
+        apSetSpace.index();
+        apSetSpace.addCriterion("fire safety");
+        apSetSpace.approve(hallway, "fire safety", new Path<>());
+        garden.approve("fire safety", new Path<>()); // changed directly on the entry, so it must be reported
+        apSetSpace.reindex(garden);
+        Iterator<Space<String>> approved = apSetSpace.iterator();
+        Iterator<Space<String>> notApproved = apSetSpace.iteratorNot("fire safety");
+        System.out.println(approved.next() == hallway && approved.next() == garden && !approved.hasNext() && !notApproved.hasNext()
+                ? "Approval index test was successful." : "Approval index test was unsuccessful.");
+
+        Iterator<Space<String>> stale = apSetSpace.iterator(); // fails fast like the iterators without the index
+        apSetSpace.remove(garden);
+        apSetSpace.add(garden);
+        boolean failedFast = false;
+        try {
+            stale.next();
+        } catch (ConcurrentModificationException e) {
+            failedFast = true;
+        }
+        System.out.println(failedFast ? "Indexed iterator modification test was successful." : "Indexed iterator modification test was unsuccessful.");
+
+        // Step 7: Test the approvals stored by interned criterion id
+        int fireSafety = CriterionRegistry.intern("fire safety");
+        kitchen.approve("daylight", new Path<>());
+        kitchen.approve("daylight", null);
+        boolean tableCorrect = true;
+        for (int i = 0; i < 100; i++) { // grows the table of the kitchen, revoking every third criterion
+            kitchen.approve("criterion " + i, new Path<>());
+            if (i % 3 == 0) {
+                kitchen.approve("criterion " + i, null);
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            tableCorrect &= (kitchen.approved(new String("criterion " + i)) == null) == (i % 3 == 0);
+        }
+        System.out.println(hallway.approved(fireSafety) == hallway.approved("fire safety") && hallway.approved(fireSafety) != null
+                && kitchen.approved("daylight") == null && kitchen.approved("unknown") == null && tableCorrect
+                ? "Criterion id test was successful." : "Criterion id test was unsuccessful.");
+
+        // Step 8: Test the concurrent set with several threads changing and iterating it at once
+        ConcurrentApSet<Space<String>, String, Path<Space<String>>> concurrentSet = new ConcurrentApSet<>();
+        concurrentSet.addCriterion("fire safety");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    Space<String> space = new Interior<>("room " + id + "." + i, 10);
+                    concurrentSet.add(space);
+                    concurrentSet.approve(space, "fire safety", i % 2 == 0 ? new Path<>() : null);
+                    concurrentSet.iterator().forEachRemaining(s -> { });
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int approvedSpaces = 0;
+        for (Space<String> space : concurrentSet) {
+            approvedSpaces++;
+        }
+        entries = 0;
+        for (Iterator<Space<String>> it = concurrentSet.iteratorAll(); it.hasNext(); it.next()) {
+            entries++;
+        }
+        System.out.println(approvedSpaces == 2000 && entries == 4000
+                ? "Concurrent set test was successful." : "Concurrent set test was unsuccessful.");
+
+        // Step 9: Test the persistent path, extended and shortened by an AdminSet of many counters sharing one path
+        PersistentPath<Object> sharedPath = new PersistentPath<>().add("entrance");
+        AdminSet<Counter<PersistentPath<Object>>, Counter<PersistentPath<Object>>, PersistentPath<Object>> persistentSet = new AdminSet<>();
+        for (int i = 0; i < 10000; i++) {
+            persistentSet.add(new Counter<>(sharedPath));
+        }
+        Counter<PersistentPath<Object>> pathCriterion = new Counter<>(sharedPath);
+        persistentSet.addCriterion(pathCriterion);
+        persistentSet.extend();
+        boolean extended = sharedPath.size() == 1;
+        for (Counter<PersistentPath<Object>> counter : persistentSet) {
+            PersistentPath<Object> path = counter.approved(pathCriterion);
+            extended &= path.size() == 2 && path.contains(counter) && path.contains("entrance");
+        }
+        persistentSet.shorten();
+        for (Counter<PersistentPath<Object>> counter : persistentSet) {
+            PersistentPath<Object> path = counter.approved(pathCriterion);
+            extended &= path.size() == 1 && !path.contains(counter);
+        }
+        System.out.println(extended ? "Persistent path test was successful." : "Persistent path test was unsuccessful.");
+
+        // Step 10: Test the parallel bulk operations and spliterators against the sequential versions
+        AdminSet<Space<String>, String, Path<Space<String>>> sequentialSet = new AdminSet<>();
+        AdminSet<Space<String>, String, Path<Space<String>>> parallelSet = new AdminSet<>();
+        List<Space<String>> sequentialSpaces = new ArrayList<>();
+        List<Space<String>> parallelSpaces = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            Space<String> a = new Interior<>("room " + i, 10);
+            Space<String> b = new Interior<>("room " + i, 10);
+            if (i % 3 != 0) {
+                a.approve("fire safety", new Path<>());
+                b.approve("fire safety", new Path<>());
+            }
+            sequentialSet.add(a);
+            parallelSet.add(b);
+            sequentialSpaces.add(a);
+            parallelSpaces.add(b);
+        }
+        sequentialSet.addCriterion("fire safety");
+        parallelSet.addCriterion("fire safety");
+        sequentialSet.extend();
+        parallelSet.parallelExtend(ForkJoinPool.commonPool());
+        boolean same = parallelSet.parallelStream("fire safety").count() == 6666;
+        for (int i = 0; i < sequentialSpaces.size(); i++) {
+            Path<Space<String>> a = sequentialSpaces.get(i).approved("fire safety");
+            Path<Space<String>> b = parallelSpaces.get(i).approved("fire safety");
+            same &= a == null ? b == null : b != null && a.toString().equals(b.toString());
+        }
+        System.out.println(same ? "Parallel bulk test was successful." : "Parallel bulk test was unsuccessful.");
     }
 }
 
@@ -57,7 +57,7 @@ public class Building {
 
     public Building (Scenario scenario) {
 
-        material = MaterialsJsonParser.getRandomMaterial(MaterialsJsonParser.parseMaterials(),
+        material = MaterialsJsonParser.getRandomMaterial(MaterialsJsonParser.materials(),
                 scenario.getMaxMaterialPrice(), scenario.getMinMaterialEcologicalCoefficient(),
                 scenario.getMinMaterialQuality());
 
@@ -113,7 +113,7 @@ public class Building {
         // Supplier to fetch a new material with higher standards
         Supplier<Optional<Material>> newMaterialSupplier = () -> Optional.ofNullable(
                 MaterialsJsonParser.getRandomMaterial(
-                        MaterialsJsonParser.parseMaterials(),
+                        MaterialsJsonParser.materials(),
                         material.getCost() * 1.20,
                         material.getEcologicalCoefficient() * 1.05,
                         material.getQuality() * 1.05